@@ -21,6 +21,10 @@ public class Command
 	private String name;
 	/** List of arguments. */
 	private Argument[] arguments;
+	/** Script to read the line from, if it was not kept. */
+	private SimpleScript script;
+	/** Command index in the script. */
+	private int index;
 	
 	/**
 	 * Creates a new Command encapsulation.
@@ -35,11 +39,19 @@ public class Command
 		this.lineNumber = lineNumber;
 		this.name = name;
 		this.arguments = arguments;
+		this.script = null;
+		this.index = -1;
 	}
 	
-	/** Returns this command's original line as it appears in the script. */
+	/** 
+	 * Returns this command's original line as it appears in the script.
+	 * If this command is in a script that does not keep its lines, it is read from the script's line source. 
+	 * @return the line, or <code>null</code> if the line was not kept and cannot be read.
+	 */
 	public String getLine()
 	{
+		if (line == null && script != null)
+			return script.getLine(index);
 		return line;
 	}
 
@@ -55,6 +67,16 @@ public class Command
 		return name;
 	}
 
+	/**
+	 * Sets the script and command index that this command's line is read from.
+	 * @since 2.3.0
+	 */
+	void setSource(SimpleScript script, int index)
+	{
+		this.script = script;
+		this.index = index;
+	}
+
 	/** Gets this command's argument list. */
 	public Argument[] getArguments()
 	{
@@ -65,7 +87,11 @@ public class Command
 	public String toString()
 	{
 		StringBuilder sb = new StringBuilder();
-		sb.append(line.substring(0, line.length()-1));
+		String line = getLine();
+		if (line != null)
+			sb.append(line.substring(0, line.length()-1));
+		else
+			sb.append("Line ").append(lineNumber);
 		sb.append('\t');
 		sb.append("// ");
 		sb.append(name);
@@ -89,21 +115,126 @@ public class Command
 			IDENTIFIER,
 			INTEGER,
 			NUMBER,
-			STRING
+			STRING,
+			/** 
+			 * An identifier that names a label in the script. 
+			 * This is only used by {@link SimpleScriptDescriptor}s - parsed labels are still IDENTIFIERs.
+			 * @since 2.3.0
+			 */
+			LABEL
 		}
 		
 		/** Argument value/lexeme. */
 		private String value;
 		/** Argument type. */
 		private Type type;
+		/** Resolved label command index. */
+		private int labelIndex;
+		/** Identifier slot in its script. */
+		private int slot;
+		/** Long value, if numeric. */
+		private long longValue;
+		/** Double value, if numeric. */
+		private double doubleValue;
+		/** Float value, if numeric. */
+		private float floatValue;
 		
 		/**
 		 * Creates a new Argument.
+		 * Numeric values are parsed once, here.
 		 */
 		public Argument(String value, Type type)
 		{
-			this.value = value;
+			this.value = value != null ? value.intern() : null;
 			this.type = type;
+			this.labelIndex = -1;
+			this.slot = -1;
+			
+			if (isNumber())
+			{
+				longValue = parseLong(value);
+				doubleValue = parseDouble(value);
+				try { floatValue = Float.parseFloat(value); }
+				catch (NumberFormatException e) {floatValue = Float.NaN;}
+			}
+			else
+			{
+				longValue = 0L;
+				doubleValue = Double.NaN;
+				floatValue = Float.NaN;
+			}
+		}
+		
+		/**
+		 * Parses the long integer value of a numeric lexeme (decimal, or hexadecimal after an "x").
+		 * @return the value, or 0 if it is not an integer.
+		 * @since 2.3.0
+		 */
+		static long parseLong(String value)
+		{
+			try { 
+				if (value.contains("x"))
+					return Long.parseLong(value.substring(value.indexOf("x")+1), 16);
+				else
+					return Long.parseLong(value);
+			} catch (NumberFormatException e) {
+				return 0L;
+			}
+		}
+		
+		/**
+		 * Parses the double value of a numeric lexeme.
+		 * @return the value, or <code>Double.NaN</code> if it is not a number.
+		 * @since 2.3.0
+		 */
+		static double parseDouble(String value)
+		{
+			try { 
+				return Double.parseDouble(value); 
+			} catch (NumberFormatException e) {
+				return Double.NaN;
+			}
+		}
+		
+		/**
+		 * Returns the command index of the label that this argument names,
+		 * if it was resolved when its script was linked.
+		 * @return the command index, or -1 if not resolved.
+		 * @see SimpleScript#linkLabels(SimpleScriptDescriptor...)
+		 * @since 2.3.0
+		 */
+		public int getLabelIndex()
+		{
+			return labelIndex;
+		}
+		
+		/**
+		 * Sets the command index of the label that this argument names.
+		 * @since 2.3.0
+		 */
+		void setLabelIndex(int labelIndex)
+		{
+			this.labelIndex = labelIndex;
+		}
+		
+		/**
+		 * Returns the identifier slot of this argument in its script, if it is an identifier.
+		 * @return the slot, or -1 if not an identifier or not added to a script.
+		 * @see SimpleScript#getIdentifierSlot(String)
+		 * @since 2.3.0
+		 */
+		public int getSlot()
+		{
+			return slot;
+		}
+		
+		/**
+		 * Sets the identifier slot of this argument.
+		 * @since 2.3.0
+		 */
+		void setSlot(int slot)
+		{
+			this.slot = slot;
 		}
 		
 		/**
@@ -114,31 +245,43 @@ public class Command
 			return value;
 		}
 		
+		/**
+		 * Returns the type of this argument.
+		 * @since 2.3.0
+		 */
+		public Type getType()
+		{
+			return type;
+		}
+
 		/**
 		 * Returns the double value of this argument,
 		 * if its type is numeric. If not, this returns <code>Double.NaN</code>. 
 		 */
 		public double getDouble()
 		{
-			if (!isNumber())
-				return Double.NaN;
-			try { return Double.parseDouble(value); }
-			catch (NumberFormatException e) {return Double.NaN;}
+			return doubleValue;
 		}
 		
 		/**
 		 * Returns the integer value of this argument,
-		 * if its type is numeric. If not, this returns 0. 
+		 * if its type is numeric. If not, or if it does not fit in an integer, this returns 0. 
 		 */
 		public int getInt()
 		{
-			if (!isNumber())
+			if (longValue < Integer.MIN_VALUE || longValue > Integer.MAX_VALUE)
 				return 0;
-			try { 
-				if (value.contains("x"))
-					return Integer.parseInt(value.substring(value.indexOf("x")+1), 16);
-				return Integer.parseInt(value); 
-			} catch (NumberFormatException e) {return 0;}
+			return (int)longValue;
+		}
+		
+		/**
+		 * Returns the long integer value of this argument,
+		 * if its type is numeric. If not, this returns 0. 
+		 * @since 2.3.0
+		 */
+		public long getLong()
+		{
+			return longValue;
 		}
 		
 		/**
@@ -147,10 +290,7 @@ public class Command
 		 */
 		public float getFloat()
 		{
-			if (!isNumber())
-				return Float.NaN;
-			try { return Float.parseFloat(value); }
-			catch (NumberFormatException e) {return Float.NaN;}
+			return floatValue;
 		}
 		
 		/**
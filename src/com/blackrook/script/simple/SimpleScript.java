@@ -7,23 +7,102 @@
  ******************************************************************************/
 package com.blackrook.script.simple;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
 import com.blackrook.commons.hash.CaseInsensitiveHashMap;
+import com.blackrook.commons.hash.HashMap;
 import com.blackrook.commons.list.List;
+import com.blackrook.script.simple.Command.Argument;
+import com.blackrook.script.simple.Command.Argument.Type;
+import com.blackrook.script.simple.SimpleScriptDescriptor.Entry;
 
 /**
- * SimpleScript root class. 
+ * SimpleScript root class.
  * Contains all necessary elements of a script.
+ * <p>
+ * Commands are not stored as {@link Command} objects, but as a set of parallel arrays
+ * (names, argument offsets, line numbers), and each argument is an index into a
+ * constant pool shared by the whole script, so that interpreters can read them directly
+ * by command index and argument position. {@link #getCommand(int)} builds Command objects
+ * from them as they are asked for, and only keeps them if {@link #setCommandCaching(boolean)} is on.
  * @author Matthew Tropiano
  */
 public class SimpleScript
 {
+	/** Argument types, by ordinal. */
+	private static final Type[] TYPES = Type.values();
+	/** Initial array capacity. */
+	private static final int DEFAULT_CAPACITY = 16;
+	/** Maximum amount of command sets that resolved opcodes are kept for. */
+	private static final int MAX_OPCODE_TABLES = 8;
+	/** No resolved opcodes. */
+	private static final OpcodeTable[] NO_OPCODE_TABLES = new OpcodeTable[0];
+
 	/** Label to command index relationship table. */
 	protected CaseInsensitiveHashMap<Integer> labelTable;
-	/** List of script commands. */
-	protected List<Command> commands;
 	/** List of script metadata values. */
 	protected CaseInsensitiveHashMap<String> metaDataTable;
-	
+	/** 
+	 * Resolved opcodes, by command set, newest last. 
+	 * The array and its tables are replaced, never changed, so they can be read without locking. 
+	 */
+	private volatile OpcodeTable[] opcodeTables;
+	/** Are label arguments currently linked to command indices? */
+	protected boolean labelsLinked;
+	/** The descriptor that this script was last verified against, if it is still verified. */
+	protected volatile SimpleScriptDescriptor verifiedDescriptor;
+	/** Identifier to slot table. */
+	protected CaseInsensitiveHashMap<Integer> identifierSlotTable;
+	/** Identifiers, by slot. */
+	protected List<String> identifierList;
+
+	/** Amount of commands. */
+	protected int commandCount;
+	/** Command names, by command index. */
+	protected String[] commandNames;
+	/** Command argument offsets, by command index (plus one for the end of the last command's arguments). */
+	protected int[] commandArgumentOffsets;
+	/** Command source line numbers, by command index. */
+	protected int[] commandLineNumbers;
+	/** Command source lines, by command index (null if not kept). */
+	protected String[] commandLines;
+	/** Source of the lines that are not kept, if any. */
+	protected SimpleScriptLineSource lineSource;
+
+	/** Amount of arguments. */
+	protected int argumentCount;
+	/** Constant pool indices, by argument position. */
+	protected int[] argumentConstants;
+
+	/** Amount of constants. */
+	protected int constantCount;
+	/** Constant types (ordinals). */
+	protected byte[] constantTypes;
+	/** Constant lexemes. */
+	protected String[] constantValues;
+	/** Constant integer values, if numeric. */
+	protected long[] constantLongs;
+	/** Constant double values, if numeric. */
+	protected double[] constantDoubles;
+	/** Constant identifier slots, if identifiers. */
+	protected int[] constantSlots;
+	/** Constant label indices, if linked identifiers that name labels. */
+	protected int[] constantLabels;
+	/** Constant lexeme to constant index tables by type ordinal, used while adding commands. */
+	private HashMap<String, Integer>[] constantTables;
+
+	/** Are command views kept after they are created? */
+	private volatile boolean commandCaching;
+	/** Kept command views, if caching (created all at once, and replaced, never changed). */
+	private volatile Command[] commandViews;
+	/** Amount of changes to commands and labels. */
+	private int modificationCount;
+
 	/**
 	 * Creates a new SimpleScript object with no
 	 * commands nor labels.
@@ -31,10 +110,35 @@ public class SimpleScript
 	public SimpleScript()
 	{
 		labelTable = new CaseInsensitiveHashMap<Integer>();
-		commands = new List<Command>();
 		metaDataTable = new CaseInsensitiveHashMap<String>();
+		identifierSlotTable = new CaseInsensitiveHashMap<Integer>();
+		identifierList = new List<String>();
+
+		commandCount = 0;
+		commandNames = new String[DEFAULT_CAPACITY];
+		commandArgumentOffsets = new int[DEFAULT_CAPACITY + 1];
+		commandLineNumbers = new int[DEFAULT_CAPACITY];
+		commandLines = new String[DEFAULT_CAPACITY];
+		lineSource = null;
+		opcodeTables = NO_OPCODE_TABLES;
+
+		argumentCount = 0;
+		argumentConstants = new int[DEFAULT_CAPACITY];
+
+		constantCount = 0;
+		constantTypes = new byte[DEFAULT_CAPACITY];
+		constantValues = new String[DEFAULT_CAPACITY];
+		constantLongs = new long[DEFAULT_CAPACITY];
+		constantDoubles = new double[DEFAULT_CAPACITY];
+		constantSlots = new int[DEFAULT_CAPACITY];
+		constantLabels = new int[DEFAULT_CAPACITY];
+		constantTables = null;
+
+		commandCaching = false;
+		commandViews = null;
+		modificationCount = 0;
 	}
-	
+
 	/**
 	 * Creates a new SimpleScript object with a
 	 * set of commands, but no labels. Commands are added in the order
@@ -42,23 +146,23 @@ public class SimpleScript
 	 */
 	public SimpleScript(Command[] commandList)
 	{
-		labelTable = new CaseInsensitiveHashMap<Integer>();
-		commands = new List<Command>(commandList.length);
+		this();
 		for (Command c : commandList)
-			commands.add(c);
+			addCommand(c);
 	}
-	
+
 	/**
 	 * Returns the command index associated with a label.
 	 * @return the associated index or -1 if the label is not defined.
 	 */
 	public int getIndexByLabel(String label)
 	{
-		if (!labelTable.containsKey(label))
+		Integer index = labelTable.get(label);
+		if (index == null)
 			return -1;
-		return labelTable.get(label);
+		return index;
 	}
-	
+
 	/**
 	 * Sets metadata key and an associated value.
 	 * The key is case-insensitive.
@@ -73,7 +177,7 @@ public class SimpleScript
 		else
 			metaDataTable.put(key, value);
 	}
-	
+
 	/**
 	 * Gets an associated value from a desired key.
 	 * The key is case-insensitive.
@@ -82,7 +186,7 @@ public class SimpleScript
 	{
 		return metaDataTable.get(key);
 	}
-	
+
 	/**
 	 * Sets a label and its associated command index.
 	 * If the label is already defined, it is replaced with
@@ -91,9 +195,11 @@ public class SimpleScript
 	 */
 	public void setLabel(String label, int index)
 	{
+		unlinkLabels();
 		labelTable.put(label, index);
+		modificationCount++;
 	}
-	
+
 	/**
 	 * Removes a label and its associated command index.
 	 * If the label does not exist, this does nothing.
@@ -101,17 +207,416 @@ public class SimpleScript
 	 */
 	public void clearLabel(String label)
 	{
+		unlinkLabels();
 		labelTable.removeUsingKey(label);
+		modificationCount++;
+	}
+
+	/**
+	 * Resolves the label arguments of every command to the command indices of the
+	 * labels that they name, so that interpreters can jump using {@link #getArgumentLabelIndex(int)}
+	 * instead of looking up the label. Label arguments are the ones whose types are
+	 * {@link Argument.Type#LABEL} in the command's descriptor entry.
+	 * <p>
+	 * Changing a label after this is called clears all resolved label indices.
+	 * @param descriptors the command descriptors to use.
+	 * @throws SimpleScriptParseException if a label argument names a label that is not defined.
+	 * @since 2.3.0
+	 */
+	public void linkLabels(SimpleScriptDescriptor ... descriptors)
+	{
+		verifiedDescriptor = null;
+		StringBuilder errors = null;
+		for (int c = 0; c < commandCount; c++)
+		{
+			Entry entry = null;
+			for (SimpleScriptDescriptor desc : descriptors)
+			{
+				entry = desc.getCommandEntry(commandNames[c]);
+				if (entry != null)
+					break;
+			}
+			if (entry == null)
+				continue;
+
+			Type[] types = entry.getArgumentTypes();
+			int offset = commandArgumentOffsets[c];
+			int count = commandArgumentOffsets[c + 1] - offset;
+			for (int i = 0; i < types.length && i < count; i++)
+			{
+				if (types[i] != Type.LABEL)
+					continue;
+
+				int constant = argumentConstants[offset + i];
+				int index = getIndexByLabel(constantValues[constant]);
+				if (index == -1)
+				{
+					if (errors == null)
+						errors = new StringBuilder();
+					else
+						errors.append('\n');
+					errors.append("Line "+commandLineNumbers[c]+": Label '"+constantValues[constant]+"' is not defined.");
+				}
+				constantLabels[constant] = index;
+			}
+		}
+
+		commandViews = null;
+		if (errors != null)
+		{
+			labelsLinked = true;
+			unlinkLabels();
+			throw new SimpleScriptParseException(errors.toString());
+		}
+		labelsLinked = true;
+	}
+
+	/**
+	 * Verifies this script against a descriptor, checking everything that an interpreter
+	 * would otherwise have to check each time that it runs a command: that every command is
+	 * in the descriptor, that it has the amount of arguments that its entry requires
+	 * (exactly, if strict, or at least), that each argument has the type that its entry
+	 * requires, and that every label argument names a label in this script. 
+	 * Label arguments are linked, if they are not already. Script images cannot be linked, 
+	 * so their label arguments are checked against the label indices that they were written with, if any.
+	 * <p>
+	 * If nothing is wrong, the script is marked as verified against the descriptor, and 
+	 * interpreters that use the same descriptor may skip those checks (see {@link #isVerified(SimpleScriptDescriptor)}).
+	 * Changing this script's commands or labels, or linking its labels again, clears the mark.
+	 * Use a {@link SimpleScriptDescriptorSet} to verify against several descriptors.
+	 * @param descriptor the descriptor to verify against.
+	 * @throws SimpleScriptParseException if anything is wrong, listing every problem by line.
+	 * @since 2.3.0
+	 */
+	public void verify(SimpleScriptDescriptor descriptor)
+	{
+		verifiedDescriptor = null;
+		StringBuilder errors = new StringBuilder();
+		boolean linkable = canLinkLabels();
+		boolean relink = linkable && !areLabelsLinked();
+		int commands = getCommandCount();
+		for (int c = 0; c < commands; c++)
+		{
+			String name = getCommandName(c);
+			Entry entry = descriptor.getCommandEntry(name);
+			if (entry == null)
+			{
+				verifyError(errors, c, "Unknown command '"+name+"'.");
+				continue;
+			}
+
+			int offset = getArgumentOffset(c);
+			int count = getArgumentCount(c);
+			int length = entry.getArgumentLength();
+			if (entry.isStrict() ? count != length : count < length)
+			{
+				verifyError(errors, c, (entry.isStrict() ? "Expected " : "Expected at least ")+length+" arguments for command '"+name+"', got "+count+".");
+				continue;
+			}
+
+			Type[] types = entry.getArgumentTypes();
+			for (int i = 0; i < types.length && i < count; i++)
+			{
+				if (types[i] == null)
+					continue;
+				Type type = getArgumentType(offset + i);
+				String value = getArgumentValue(offset + i);
+				switch (types[i])
+				{
+					case INTEGER:
+						if (type != Type.INTEGER)
+							verifyError(errors, c, "Expected integer numeric argument "+(i+1)+" for command '"+name+"'.");
+						break;
+					case NUMBER:
+						if (type != Type.INTEGER && type != Type.NUMBER)
+							verifyError(errors, c, "Expected numeric argument "+(i+1)+" for command '"+name+"'.");
+						break;
+					case STRING:
+						if (type != Type.STRING)
+							verifyError(errors, c, "Expected string argument "+(i+1)+" for command '"+name+"'.");
+						break;
+					case IDENTIFIER:
+						if (type != Type.IDENTIFIER)
+							verifyError(errors, c, "Expected identifier argument "+(i+1)+" for command '"+name+"'.");
+						break;
+					case LABEL:
+					{
+						int index = getIndexByLabel(value);
+						if (type != Type.IDENTIFIER)
+							verifyError(errors, c, "Expected label argument "+(i+1)+" for command '"+name+"'.");
+						else if (index == -1)
+							verifyError(errors, c, "Label '"+value+"' is not defined.");
+						else if (getArgumentLabelIndex(offset + i) != index)
+						{
+							if (linkable)
+								relink = true;
+							else if (getArgumentLabelIndex(offset + i) >= 0)
+								verifyError(errors, c, "Label '"+value+"' is linked to the wrong command.");
+						}
+						break;
+					}
+				}
+			}
+		}
+
+		if (errors.length() > 0)
+			throw new SimpleScriptParseException(errors.toString());
+		if (relink)
+			linkLabels(descriptor);
+		verifiedDescriptor = descriptor;
+	}
+
+	/** Adds a verification error message for a command. */
+	private void verifyError(StringBuilder errors, int index, String message)
+	{
+		if (errors.length() > 0)
+			errors.append('\n');
+		errors.append("Line "+getLineNumber(index)+": "+message);
+	}
+
+	/**
+	 * Returns true if this script was verified against a descriptor (the same instance), 
+	 * and has not been changed since.
+	 * @param descriptor the descriptor.
+	 * @see #verify(SimpleScriptDescriptor)
+	 * @since 2.3.0
+	 */
+	public boolean isVerified(SimpleScriptDescriptor descriptor)
+	{
+		return descriptor != null && verifiedDescriptor == descriptor;
 	}
-	
+
+	/** Returns true if {@link #linkLabels(SimpleScriptDescriptor...)} can be called on this script. */
+	boolean canLinkLabels()
+	{
+		return true;
+	}
+
+	/** Clears all resolved label indices, if any. */
+	private void unlinkLabels()
+	{
+		verifiedDescriptor = null;
+		if (!labelsLinked)
+			return;
+		for (int i = 0; i < constantCount; i++)
+			constantLabels[i] = -1;
+		commandViews = null;
+		labelsLinked = false;
+	}
+
+	/**
+	 * Resolves the opcodes of every command in this script against a command set,
+	 * so that interpreters can dispatch on {@link #getOpcode(int, String[])} instead of
+	 * looking up the command name. A command's opcode is the index of its name
+	 * in the command set, or -1 if it is not in the set.
+	 * Command names are NOT case-sensitive.
+	 * <p>
+	 * Opcodes are kept for each command set (by array instance) that they are resolved against,
+	 * so interpreters with different command sets can share a script. Opcodes are resolved as they 
+	 * are asked for anyway: calling this resolves them ahead of time.
+	 * Changing this script's commands drops all resolved opcodes.
+	 * @param commandSet the command names, in opcode order.
+	 * @since 2.3.0
+	 */
+	public void resolveOpcodes(String[] commandSet)
+	{
+		getOpcodes(commandSet);
+	}
+
+	/**
+	 * Returns true if this script's command opcodes were resolved
+	 * against the provided command set (the same array instance).
+	 * @param commandSet the command set.
+	 * @since 2.3.0
+	 */
+	public boolean hasOpcodes(String[] commandSet)
+	{
+		return findOpcodes(commandSet) != null;
+	}
+
+	/**
+	 * Returns the opcode of the command at a specific index, resolved against a command set.
+	 * The script's opcodes are resolved against the command set first, if they were not already.
+	 * @param index the command index (must be valid).
+	 * @param commandSet the command set.
+	 * @return the opcode, or -1 if the command is not in the command set.
+	 * @see #resolveOpcodes(String[])
+	 * @since 2.3.0
+	 */
+	public int getOpcode(int index, String[] commandSet)
+	{
+		return getOpcodes(commandSet)[index];
+	}
+
+	/** 
+	 * Gets the opcodes resolved against a command set, resolving them if they were not. 
+	 * The returned array must not be changed. 
+	 */
+	final int[] getOpcodes(String[] commandSet)
+	{
+		int[] out = findOpcodes(commandSet);
+		return out != null ? out : addOpcodes(commandSet);
+	}
+
+	/** Finds the opcodes resolved against a command set, or null if they were not resolved. */
+	private int[] findOpcodes(String[] commandSet)
+	{
+		OpcodeTable[] tables = opcodeTables;
+		for (int i = tables.length - 1; i >= 0; i--)
+			if (tables[i].commandSet == commandSet)
+				return tables[i].opcodes;
+		return null;
+	}
+
+	/** Resolves opcodes against a command set, and keeps them (dropping the oldest if there are too many). */
+	private synchronized int[] addOpcodes(String[] commandSet)
+	{
+		int[] out = findOpcodes(commandSet);
+		if (out != null)
+			return out;
+
+		out = resolveOpcodeTable(SimpleScriptNameIndex.forCommandSet(commandSet));
+		OpcodeTable[] tables = opcodeTables;
+		int kept = Math.min(tables.length, MAX_OPCODE_TABLES - 1);
+		OpcodeTable[] newTables = new OpcodeTable[kept + 1];
+		System.arraycopy(tables, tables.length - kept, newTables, 0, kept);
+		newTables[kept] = new OpcodeTable(commandSet, out);
+		opcodeTables = newTables;
+		return out;
+	}
+
+	/** 
+	 * Resolves the opcodes of this script's commands against a command set's index.
+	 * @return the opcodes, by command index.
+	 */
+	int[] resolveOpcodeTable(SimpleScriptNameIndex index)
+	{
+		int[] out = new int[commandCount];
+		for (int i = 0; i < commandCount; i++)
+			out[i] = index.get(commandNames[i]);
+		return out;
+	}
+
+	/** Drops all resolved opcodes. */
+	void clearOpcodes()
+	{
+		opcodeTables = NO_OPCODE_TABLES;
+	}
+
+	/**
+	 * Returns a count that changes each time that this script's commands or labels are changed,
+	 * so that data derived from this script can tell if it is out of date.
+	 * @since 2.3.0
+	 */
+	public int getModificationCount()
+	{
+		return modificationCount;
+	}
+
+	/**
+	 * Returns the amount of distinct identifiers used as arguments in this script.
+	 * Identifier slots are numbered from 0 to this amount, minus 1.
+	 * @since 2.3.0
+	 */
+	public int getIdentifierCount()
+	{
+		return identifierList.size();
+	}
+
+	/**
+	 * Returns the slot of an identifier used as an argument in this script.
+	 * Each distinct identifier is assigned a slot when the first command that uses it is added.
+	 * Identifiers are NOT case-sensitive.
+	 * @param identifier the identifier.
+	 * @return the slot, or -1 if the identifier is not used in this script.
+	 * @see #getArgumentSlot(int)
+	 * @since 2.3.0
+	 */
+	public int getIdentifierSlot(String identifier)
+	{
+		Integer slot = identifierSlotTable.get(identifier);
+		return slot != null ? slot : -1;
+	}
+
+	/**
+	 * Returns the identifier assigned to a slot.
+	 * @param slot the slot.
+	 * @return the identifier, as it first appeared in the script, or null if no such slot.
+	 * @since 2.3.0
+	 */
+	public String getIdentifier(int slot)
+	{
+		return identifierList.getByIndex(slot);
+	}
+
+	/** Gets the slot for an identifier, assigning a new one if it is not used yet. */
+	private int resolveSlot(String identifier)
+	{
+		Integer slot = identifierSlotTable.get(identifier);
+		if (slot == null)
+		{
+			slot = identifierList.size();
+			identifierList.add(identifier);
+			identifierSlotTable.put(identifier, slot);
+		}
+		return slot;
+	}
+
+	/**
+	 * Gets the constant pool index for an argument value, adding it to the pool if it is not in it.
+	 * Numeric values are parsed when they are added.
+	 * @param type the argument type.
+	 * @param value the argument lexeme.
+	 * @return the constant index.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	int addConstant(Type type, String value)
+	{
+		if (constantTables == null)
+		{
+			constantTables = new HashMap[TYPES.length];
+			for (int i = 0; i < constantTables.length; i++)
+				constantTables[i] = new HashMap<String, Integer>();
+			for (int i = 0; i < constantCount; i++)
+				constantTables[constantTypes[i]].put(constantValues[i], i);
+		}
+
+		HashMap<String, Integer> table = constantTables[type.ordinal()];
+		Integer index = table.get(value);
+		if (index != null)
+			return index;
+
+		if (constantCount == constantTypes.length)
+		{
+			int capacity = Math.max(DEFAULT_CAPACITY, constantCount * 2);
+			constantTypes = Arrays.copyOf(constantTypes, capacity);
+			constantValues = Arrays.copyOf(constantValues, capacity);
+			constantLongs = Arrays.copyOf(constantLongs, capacity);
+			constantDoubles = Arrays.copyOf(constantDoubles, capacity);
+			constantSlots = Arrays.copyOf(constantSlots, capacity);
+			constantLabels = Arrays.copyOf(constantLabels, capacity);
+		}
+
+		boolean numeric = type == Type.INTEGER || type == Type.NUMBER;
+		int out = constantCount++;
+		constantTypes[out] = (byte)type.ordinal();
+		constantValues[out] = value.intern();
+		constantLongs[out] = numeric ? Argument.parseLong(value) : 0L;
+		constantDoubles[out] = numeric ? Argument.parseDouble(value) : Double.NaN;
+		constantSlots[out] = type == Type.IDENTIFIER ? resolveSlot(value) : -1;
+		constantLabels[out] = -1;
+		table.put(constantValues[out], out);
+		return out;
+	}
+
 	/**
 	 * Adds a command to the end of this script.
 	 */
 	public void addCommand(Command command)
 	{
-		commands.add(command);
+		addCommand(commandCount, command);
 	}
-	
+
 	/**
 	 * Adds a command to a specific index in this script.
 	 * This puts the commands at the selected index after
@@ -119,27 +624,824 @@ public class SimpleScript
 	 */
 	public void addCommand(int index, Command command)
 	{
-		commands.add(index, command);
+		if (index < 0 || index > commandCount)
+			throw new IndexOutOfBoundsException("Index "+index+" is out of range.");
+
+		Argument[] args = command.getArguments();
+		int argOffset = insertCommand(index, command.getName(), args.length, command.getLine(), command.getLineNumber());
+		for (int i = 0; i < args.length; i++)
+			argumentConstants[argOffset + i] = addConstant(args[i].getType(), args[i].getValue());
 	}
-	
+
+	/**
+	 * Adds a command to the end of this script, using arguments that are already in the constant pool.
+	 * @param name the command name.
+	 * @param constants the constant indices of the arguments (see {@link #addConstant(Type, String)}).
+	 * @param count the amount of arguments.
+	 * @param line the source line.
+	 * @param lineNumber the source line number.
+	 */
+	void addCommand(String name, int[] constants, int count, String line, int lineNumber)
+	{
+		int argOffset = insertCommand(commandCount, name, count, line, lineNumber);
+		System.arraycopy(constants, 0, argumentConstants, argOffset, count);
+	}
+
+	/** 
+	 * Makes room for a command and sets everything but its arguments. 
+	 * @return the position of its first argument.
+	 */
+	private int insertCommand(int index, String name, int argCount, String line, int lineNumber)
+	{
+		if (commandCount == commandNames.length)
+		{
+			int capacity = Math.max(DEFAULT_CAPACITY, commandCount * 2);
+			commandNames = Arrays.copyOf(commandNames, capacity);
+			commandArgumentOffsets = Arrays.copyOf(commandArgumentOffsets, capacity + 1);
+			commandLineNumbers = Arrays.copyOf(commandLineNumbers, capacity);
+			commandLines = Arrays.copyOf(commandLines, capacity);
+		}
+		if (argumentCount + argCount > argumentConstants.length)
+			argumentConstants = Arrays.copyOf(argumentConstants, Math.max(argumentConstants.length * 2, argumentCount + argCount));
+
+		int argOffset = commandArgumentOffsets[index];
+
+		// make room.
+		int moved = commandCount - index;
+		System.arraycopy(commandNames, index, commandNames, index + 1, moved);
+		System.arraycopy(commandArgumentOffsets, index, commandArgumentOffsets, index + 1, moved + 1);
+		System.arraycopy(commandLineNumbers, index, commandLineNumbers, index + 1, moved);
+		System.arraycopy(commandLines, index, commandLines, index + 1, moved);
+		System.arraycopy(argumentConstants, argOffset, argumentConstants, argOffset + argCount, argumentCount - argOffset);
+		for (int i = index + 1; i <= commandCount + 1; i++)
+			commandArgumentOffsets[i] += argCount;
+
+		commandNames[index] = name.intern();
+		commandArgumentOffsets[index] = argOffset;
+		commandLineNumbers[index] = lineNumber;
+		commandLines[index] = line;
+
+		commandCount++;
+		argumentCount += argCount;
+		clearOpcodes();
+		commandViews = null;
+		verifiedDescriptor = null;
+		modificationCount++;
+		return argOffset;
+	}
+
 	/**
 	 * Removes a command from a specific index in this script.
 	 */
 	public void removeCommand(int index, Command command)
 	{
-		commands.removeIndex(index);
+		if (index < 0 || index >= commandCount)
+			throw new IndexOutOfBoundsException("Index "+index+" is out of range.");
+
+		int argOffset = commandArgumentOffsets[index];
+		int args = commandArgumentOffsets[index + 1] - argOffset;
+		int moved = commandCount - index - 1;
+		System.arraycopy(commandNames, index + 1, commandNames, index, moved);
+		System.arraycopy(commandArgumentOffsets, index + 1, commandArgumentOffsets, index, moved + 1);
+		System.arraycopy(commandLineNumbers, index + 1, commandLineNumbers, index, moved);
+		System.arraycopy(commandLines, index + 1, commandLines, index, moved);
+		System.arraycopy(argumentConstants, argOffset + args, argumentConstants, argOffset, argumentCount - argOffset - args);
+		for (int i = index; i < commandCount; i++)
+			commandArgumentOffsets[i] -= args;
+
+		commandCount--;
+		argumentCount -= args;
+		commandNames[commandCount] = null;
+		commandLines[commandCount] = null;
+		clearOpcodes();
+		commandViews = null;
+		verifiedDescriptor = null;
+		modificationCount++;
 	}
-	
+
 	/**
-	 * Gets the command at a specific index in the script. 
+	 * Trims this script's storage to its current size, and discards the
+	 * tables used only while adding commands. This is called by
+	 * {@link SimpleScriptFactory} once a script is read.
+	 * @since 2.3.0
+	 */
+	public void trim()
+	{
+		commandNames = Arrays.copyOf(commandNames, commandCount);
+		commandArgumentOffsets = Arrays.copyOf(commandArgumentOffsets, commandCount + 1);
+		commandLineNumbers = Arrays.copyOf(commandLineNumbers, commandCount);
+		commandLines = Arrays.copyOf(commandLines, commandCount);
+		argumentConstants = Arrays.copyOf(argumentConstants, argumentCount);
+		constantTypes = Arrays.copyOf(constantTypes, constantCount);
+		constantValues = Arrays.copyOf(constantValues, constantCount);
+		constantLongs = Arrays.copyOf(constantLongs, constantCount);
+		constantDoubles = Arrays.copyOf(constantDoubles, constantCount);
+		constantSlots = Arrays.copyOf(constantSlots, constantCount);
+		constantLabels = Arrays.copyOf(constantLabels, constantCount);
+		constantTables = null;
+	}
+
+	/**
+	 * Gets the command at a specific index in the script.
+	 * The Command is created from this script's storage each time it is requested,
+	 * unless command caching is on.
 	 * @return the command at the desired index or <code>null</code>
 	 * 			if no such command at that index.
+	 * @see #setCommandCaching(boolean)
 	 */
 	public Command getCommand(int index)
 	{
-		if (index < 0 || index >= commands.size())
+		if (index < 0 || index >= getCommandCount())
 			return null;
-		return commands.getByIndex(index);
+		if (!commandCaching)
+			return createCommand(index);
+
+		Command[] views = commandViews;
+		if (views == null)
+			views = createCommandViews();
+		return views[index];
+	}
+
+	/**
+	 * Sets if the Commands returned by {@link #getCommand(int)} are kept, so that
+	 * asking for the same command again does not create a new one.
+	 * This is off by default. Turn it on for scripts that are run by interpreters that 
+	 * execute Command objects, at the cost of keeping a Command for each command in the script.
+	 * @since 2.3.0
+	 */
+	public void setCommandCaching(boolean caching)
+	{
+		commandCaching = caching;
+		if (!caching)
+			commandViews = null;
+	}
+
+	/**
+	 * Returns true if the Commands returned by {@link #getCommand(int)} are kept.
+	 * @since 2.3.0
+	 */
+	public boolean isCommandCaching()
+	{
+		return commandCaching;
+	}
+
+	/**
+	 * Creates the kept command views, if they were not created by another thread already.
+	 */
+	private synchronized Command[] createCommandViews()
+	{
+		Command[] views = commandViews;
+		if (views == null)
+		{
+			views = new Command[getCommandCount()];
+			for (int i = 0; i < views.length; i++)
+				views[i] = createCommand(i);
+			commandViews = views;
+		}
+		return views;
 	}
-	
+
+	/**
+	 * Creates the kept command views ahead of time, if command caching is on and they were not created already.
+	 */
+	void prepareCommandViews()
+	{
+		if (commandCaching && commandViews == null)
+			createCommandViews();
+	}
+
+	/**
+	 * Creates a new Command from the command at a specific index.
+	 */
+	private Command createCommand(int index)
+	{
+		int offset = getArgumentOffset(index);
+		Argument[] args = new Argument[getArgumentCount(index)];
+		for (int i = 0; i < args.length; i++)
+		{
+			args[i] = new Argument(getArgumentValue(offset + i), getArgumentType(offset + i));
+			args[i].setSlot(getArgumentSlot(offset + i));
+			args[i].setLabelIndex(getArgumentLabelIndex(offset + i));
+		}
+		Command out = new Command(getCommandName(index), args, null, getLineNumber(index));
+		out.setSource(this, index);
+		return out;
+	}
+
+	/**
+	 * Returns a list of this script's commands, like the "commands" field used to hold.
+	 * Changing the list does not change this script.
+	 * @return a new list of new commands.
+	 * @deprecated Since 2.3.0, commands are not kept as a list of Command objects, 
+	 * so this creates all of them. Use {@link #getCommandCount()} and {@link #getCommand(int)}.
+	 */
+	@Deprecated
+	protected List<Command> getCommands()
+	{
+		int count = getCommandCount();
+		List<Command> out = new List<Command>(Math.max(count, 1));
+		for (int i = 0; i < count; i++)
+			out.add(createCommand(i));
+		return out;
+	}
+
+	/**
+	 * Returns the amount of commands in this script.
+	 * @since 2.3.0
+	 */
+	public int getCommandCount()
+	{
+		return commandCount;
+	}
+
+	/**
+	 * Returns the name of the command at a specific index.
+	 * @param index the command index (must be valid).
+	 * @since 2.3.0
+	 */
+	public String getCommandName(int index)
+	{
+		return commandNames[index];
+	}
+
+	/**
+	 * Returns the source line number of the command at a specific index.
+	 * @param index the command index (must be valid).
+	 * @since 2.3.0
+	 */
+	public int getLineNumber(int index)
+	{
+		return commandLineNumbers[index];
+	}
+
+	/**
+	 * Returns the source line of the command at a specific index.
+	 * If the line was not kept, it is read from this script's line source, if any.
+	 * @param index the command index (must be valid).
+	 * @return the line, or <code>null</code> if it was not kept and cannot be read.
+	 * @see #setLineSource(SimpleScriptLineSource)
+	 * @since 2.3.0
+	 */
+	public String getLine(int index)
+	{
+		String out = commandLines[index];
+		if (out == null && lineSource != null)
+			out = lineSource.getLine(getLineNumber(index));
+		return out;
+	}
+
+	/**
+	 * Sets the source of the lines of the commands that do not keep their source lines.
+	 * Lines are read from it by line number, as they are asked for.
+	 * @param lineSource the line source, or <code>null</code> for none.
+	 * @see SimpleScriptFactory#mapLineTable(java.io.File)
+	 * @see SimpleScriptFactory#mapSourceLines(java.io.File)
+	 * @since 2.3.0
+	 */
+	public void setLineSource(SimpleScriptLineSource lineSource)
+	{
+		this.lineSource = lineSource;
+	}
+
+	/**
+	 * Gets the source of the lines of the commands that do not keep their source lines.
+	 * @return the line source, or <code>null</code> for none.
+	 * @since 2.3.0
+	 */
+	public SimpleScriptLineSource getLineSource()
+	{
+		return lineSource;
+	}
+
+	/**
+	 * Discards the source lines kept by this script's commands.
+	 * Line numbers are kept, and lines are read from the line source afterward, if one is set.
+	 * @since 2.3.0
+	 */
+	public void stripLines()
+	{
+		for (int i = 0; i < commandCount; i++)
+			commandLines[i] = null;
+	}
+
+	/**
+	 * Returns the amount of arguments of the command at a specific index.
+	 * @param index the command index (must be valid).
+	 * @since 2.3.0
+	 */
+	public int getArgumentCount(int index)
+	{
+		return commandArgumentOffsets[index + 1] - commandArgumentOffsets[index];
+	}
+
+	/**
+	 * Returns the argument position of the first argument of the command at a specific index.
+	 * The command's arguments are at this position and the ones after it.
+	 * @param index the command index (must be valid).
+	 * @since 2.3.0
+	 */
+	public int getArgumentOffset(int index)
+	{
+		return commandArgumentOffsets[index];
+	}
+
+	/**
+	 * Returns the type of the argument at a specific argument position.
+	 * @param position the argument position (must be valid).
+	 * @see #getArgumentOffset(int)
+	 * @since 2.3.0
+	 */
+	public Type getArgumentType(int position)
+	{
+		return TYPES[constantTypes[argumentConstants[position]]];
+	}
+
+	/**
+	 * Returns the lexeme of the argument at a specific argument position.
+	 * @param position the argument position (must be valid).
+	 * @see #getArgumentOffset(int)
+	 * @since 2.3.0
+	 */
+	public String getArgumentValue(int position)
+	{
+		return constantValues[argumentConstants[position]];
+	}
+
+	/**
+	 * Returns the long integer value of the argument at a specific argument position.
+	 * @param position the argument position (must be valid).
+	 * @see Argument#getLong()
+	 * @since 2.3.0
+	 */
+	public long getArgumentLong(int position)
+	{
+		return constantLongs[argumentConstants[position]];
+	}
+
+	/**
+	 * Returns the double value of the argument at a specific argument position.
+	 * @param position the argument position (must be valid).
+	 * @see Argument#getDouble()
+	 * @since 2.3.0
+	 */
+	public double getArgumentDouble(int position)
+	{
+		return constantDoubles[argumentConstants[position]];
+	}
+
+	/**
+	 * Returns the identifier slot of the argument at a specific argument position.
+	 * @param position the argument position (must be valid).
+	 * @return the slot, or -1 if not an identifier.
+	 * @see #getIdentifierSlot(String)
+	 * @since 2.3.0
+	 */
+	public int getArgumentSlot(int position)
+	{
+		return constantSlots[argumentConstants[position]];
+	}
+
+	/**
+	 * Returns the command index of the label named by the argument at a specific argument position,
+	 * if it was resolved when this script was linked.
+	 * @param position the argument position (must be valid).
+	 * @return the command index, or -1 if not resolved.
+	 * @see #linkLabels(SimpleScriptDescriptor...)
+	 * @since 2.3.0
+	 */
+	public int getArgumentLabelIndex(int position)
+	{
+		return constantLabels[argumentConstants[position]];
+	}
+
+	/** Returns the amount of metadata keys. */
+	int getMetaDataCount()
+	{
+		return metaDataTable.size();
+	}
+
+	/** 
+	 * Returns the metadata keys. 
+	 * @since 2.3.0
+	 */
+	public Iterator<String> getMetaDataKeys()
+	{
+		return metaDataTable.keyIterator();
+	}
+
+	/** Returns the amount of labels. */
+	int getLabelCount()
+	{
+		return labelTable.size();
+	}
+
+	/** 
+	 * Returns the label names. 
+	 * @since 2.3.0
+	 */
+	public Iterator<String> getLabelNames()
+	{
+		return labelTable.keyIterator();
+	}
+
+	/** Returns true if label arguments are linked. */
+	boolean areLabelsLinked()
+	{
+		return labelsLinked;
+	}
+
+	/** Returns the constant pool index of the argument at a specific argument position. */
+	int getArgumentConstant(int position)
+	{
+		return argumentConstants[position];
+	}
+
+	/** Returns the amount of constants in the constant pool. */
+	int getConstantCount()
+	{
+		return constantCount;
+	}
+
+	/** Returns the type ordinal of a constant. */
+	int getConstantType(int constant)
+	{
+		return constantTypes[constant];
+	}
+
+	/** Returns the lexeme of a constant. */
+	String getConstantValue(int constant)
+	{
+		return constantValues[constant];
+	}
+
+	/** Returns the long integer value of a constant. */
+	long getConstantLong(int constant)
+	{
+		return constantLongs[constant];
+	}
+
+	/** Returns the double value of a constant. */
+	double getConstantDouble(int constant)
+	{
+		return constantDoubles[constant];
+	}
+
+	/** Returns the identifier slot of a constant. */
+	int getConstantSlot(int constant)
+	{
+		return constantSlots[constant];
+	}
+
+	/** Returns the linked label index of a constant. */
+	int getConstantLabelIndex(int constant)
+	{
+		return constantLabels[constant];
+	}
+
+	/**
+	 * Writes this script's contents (metadata, labels, identifiers, constants and commands) 
+	 * to a data stream. Opcodes are not written.
+	 * @see SimpleScriptFactory#writeBinaryScript(java.io.OutputStream, SimpleScript)
+	 */
+	void writeData(DataOutputStream out) throws IOException
+	{
+		out.writeInt(getMetaDataCount());
+		Iterator<String> it = getMetaDataKeys();
+		while (it.hasNext())
+		{
+			String key = it.next();
+			writeString(out, key);
+			writeString(out, getMetaData(key));
+		}
+
+		out.writeInt(getLabelCount());
+		it = getLabelNames();
+		while (it.hasNext())
+		{
+			String label = it.next();
+			writeString(out, label);
+			out.writeInt(getIndexByLabel(label));
+		}
+
+		int identifierCount = getIdentifierCount();
+		out.writeInt(identifierCount);
+		for (int i = 0; i < identifierCount; i++)
+			writeString(out, getIdentifier(i));
+
+		int constants = getConstantCount();
+		out.writeInt(constants);
+		for (int i = 0; i < constants; i++)
+		{
+			out.writeByte(getConstantType(i));
+			writeString(out, getConstantValue(i));
+			out.writeLong(getConstantLong(i));
+			out.writeDouble(getConstantDouble(i));
+			out.writeInt(getConstantSlot(i));
+			out.writeInt(getConstantLabelIndex(i));
+		}
+		out.writeBoolean(areLabelsLinked());
+
+		int commands = getCommandCount();
+		out.writeInt(commands);
+		for (int i = 0; i < commands; i++)
+		{
+			String line = getLine(i);
+			writeString(out, getCommandName(i));
+			out.writeInt(getLineNumber(i));
+			out.writeBoolean(line != null);
+			if (line != null)
+				writeString(out, line);
+			int offset = getArgumentOffset(i);
+			int count = getArgumentCount(i);
+			out.writeInt(count);
+			for (int a = 0; a < count; a++)
+				out.writeInt(getArgumentConstant(offset + a));
+		}
+	}
+
+	/**
+	 * Reads a script written by {@link #writeData(DataOutputStream)}.
+	 * @throws IOException if a read error occurs or the data is not valid.
+	 */
+	static SimpleScript readData(DataInputStream in) throws IOException
+	{
+		SimpleScript out = new SimpleScript();
+
+		int count = readCount(in);
+		for (int i = 0; i < count; i++)
+			out.metaDataTable.put(readString(in), readString(in));
+
+		count = readCount(in);
+		for (int i = 0; i < count; i++)
+			out.labelTable.put(readString(in), in.readInt());
+
+		count = readCount(in);
+		for (int i = 0; i < count; i++)
+		{
+			String identifier = readString(in).intern();
+			out.identifierList.add(identifier);
+			out.identifierSlotTable.put(identifier, i);
+		}
+
+		count = readCount(in);
+		out.constantCount = count;
+		out.constantTypes = new byte[count];
+		out.constantValues = new String[count];
+		out.constantLongs = new long[count];
+		out.constantDoubles = new double[count];
+		out.constantSlots = new int[count];
+		out.constantLabels = new int[count];
+		for (int i = 0; i < count; i++)
+		{
+			byte type = in.readByte();
+			if (type < 0 || type >= TYPES.length)
+				throw new IOException("Bad argument type: "+type);
+			out.constantTypes[i] = type;
+			out.constantValues[i] = readString(in).intern();
+			out.constantLongs[i] = in.readLong();
+			out.constantDoubles[i] = in.readDouble();
+			out.constantSlots[i] = in.readInt();
+			out.constantLabels[i] = in.readInt();
+			if (out.constantSlots[i] >= out.identifierList.size())
+				throw new IOException("Bad identifier slot: "+out.constantSlots[i]);
+		}
+		out.labelsLinked = in.readBoolean();
+
+		count = readCount(in);
+		out.commandCount = count;
+		out.commandNames = new String[count];
+		out.commandArgumentOffsets = new int[count + 1];
+		out.commandLineNumbers = new int[count];
+		out.commandLines = new String[count];
+		for (int i = 0; i < count; i++)
+		{
+			out.commandNames[i] = readString(in).intern();
+			out.commandLineNumbers[i] = in.readInt();
+			out.commandLines[i] = in.readBoolean() ? readString(in) : null;
+
+			int args = readCount(in);
+			int offset = out.argumentCount;
+			if (offset + args > out.argumentConstants.length)
+				out.argumentConstants = Arrays.copyOf(out.argumentConstants, Math.max(out.argumentConstants.length * 2, offset + args));
+			for (int a = 0; a < args; a++)
+			{
+				int constant = in.readInt();
+				if (constant < 0 || constant >= out.constantCount)
+					throw new IOException("Bad constant index: "+constant);
+				out.argumentConstants[offset + a] = constant;
+			}
+			out.commandArgumentOffsets[i] = offset;
+			out.argumentCount += args;
+			out.commandArgumentOffsets[i + 1] = out.argumentCount;
+		}
+		out.argumentConstants = Arrays.copyOf(out.argumentConstants, out.argumentCount);
+
+		return out;
+	}
+
+	/**
+	 * Writes this script as a script image (see {@link SimpleScriptImage}).
+	 * Opcodes are not written.
+	 * @see SimpleScriptFactory#writeScriptImage(java.io.OutputStream, SimpleScript)
+	 */
+	void writeImage(DataOutputStream out) throws IOException
+	{
+		HashMap<String, Integer> stringTable = new HashMap<String, Integer>();
+		ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+		DataOutputStream strings = new DataOutputStream(stringBytes);
+
+		int commands = getCommandCount();
+		int arguments = commands > 0 ? getArgumentOffset(commands - 1) + getArgumentCount(commands - 1) : 0;
+		int constants = getConstantCount();
+		int identifiers = getIdentifierCount();
+		int labels = getLabelCount();
+		int metaData = getMetaDataCount();
+
+		// command names
+		HashMap<String, Integer> nameTable = new HashMap<String, Integer>();
+		List<String> names = new List<String>();
+		int[] commandNameIndices = new int[commands];
+		for (int i = 0; i < commands; i++)
+		{
+			String name = getCommandName(i);
+			Integer n = nameTable.get(name);
+			if (n == null)
+			{
+				n = names.size();
+				names.add(name);
+				nameTable.put(name, n);
+			}
+			commandNameIndices[i] = n;
+		}
+
+		int offset = SimpleScriptImage.HEADER_SIZE;
+		int commandsOffset = offset;
+		offset += commands * SimpleScriptImage.COMMAND_SIZE;
+		int argumentsOffset = offset;
+		offset += arguments * 4;
+		int constantsOffset = offset;
+		offset += constants * SimpleScriptImage.CONSTANT_SIZE;
+		int namesOffset = offset;
+		offset += names.size() * 4;
+		int identifiersOffset = offset;
+		offset += identifiers * 4;
+		int labelsOffset = offset;
+		offset += labels * 8;
+		int metaOffset = offset;
+		offset += metaData * 8;
+		int stringsOffset = offset;
+
+		out.writeInt(SimpleScriptImage.MAGIC);
+		out.writeInt(SimpleScriptImage.VERSION);
+		out.writeInt(commands);
+		out.writeInt(arguments);
+		out.writeInt(constants);
+		out.writeInt(names.size());
+		out.writeInt(identifiers);
+		out.writeInt(labels);
+		out.writeInt(metaData);
+		out.writeInt(commandsOffset);
+		out.writeInt(argumentsOffset);
+		out.writeInt(constantsOffset);
+		out.writeInt(namesOffset);
+		out.writeInt(identifiersOffset);
+		out.writeInt(labelsOffset);
+		out.writeInt(metaOffset);
+		out.writeInt(stringsOffset);
+		out.writeInt(areLabelsLinked() ? 1 : 0);
+
+		for (int i = 0; i < commands; i++)
+		{
+			String line = getLine(i);
+			out.writeInt(commandNameIndices[i]);
+			out.writeInt(getArgumentOffset(i));
+			out.writeInt(getLineNumber(i));
+			out.writeInt(line != null ? imageString(stringTable, strings, line) : -1);
+		}
+		for (int i = 0; i < arguments; i++)
+			out.writeInt(getArgumentConstant(i));
+		for (int i = 0; i < constants; i++)
+		{
+			out.writeInt(getConstantType(i));
+			out.writeInt(imageString(stringTable, strings, getConstantValue(i)));
+			out.writeLong(getConstantLong(i));
+			out.writeDouble(getConstantDouble(i));
+			out.writeInt(getConstantSlot(i));
+			out.writeInt(getConstantLabelIndex(i));
+		}
+		for (int i = 0; i < names.size(); i++)
+			out.writeInt(imageString(stringTable, strings, names.getByIndex(i)));
+		for (int i = 0; i < identifiers; i++)
+			out.writeInt(imageString(stringTable, strings, getIdentifier(i)));
+		Iterator<String> it = getLabelNames();
+		while (it.hasNext())
+		{
+			String label = it.next();
+			out.writeInt(imageString(stringTable, strings, label));
+			out.writeInt(getIndexByLabel(label));
+		}
+		it = getMetaDataKeys();
+		while (it.hasNext())
+		{
+			String key = it.next();
+			out.writeInt(imageString(stringTable, strings, key));
+			out.writeInt(imageString(stringTable, strings, getMetaData(key)));
+		}
+		strings.flush();
+		stringBytes.writeTo(out);
+	}
+
+	/**
+	 * Writes the source lines of this script's commands as a line table (see {@link SimpleScriptLineTable}).
+	 * @see SimpleScriptFactory#writeLineTable(java.io.OutputStream, SimpleScript)
+	 */
+	void writeLineTable(DataOutputStream out) throws IOException
+	{
+		HashMap<String, Integer> stringTable = new HashMap<String, Integer>();
+		ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+		DataOutputStream strings = new DataOutputStream(stringBytes);
+
+		// lines by line number (each is line number and string offset), in order.
+		int commands = getCommandCount();
+		long[] records = new long[commands];
+		int count = 0;
+		for (int i = 0; i < commands; i++)
+		{
+			String line = getLine(i);
+			if (line != null)
+				records[count++] = ((long)getLineNumber(i) << 32) | imageString(stringTable, strings, line);
+		}
+		Arrays.sort(records, 0, count);
+
+		// more than one command can be on a line.
+		int lines = 0;
+		for (int i = 0; i < count; i++)
+			if (lines == 0 || (int)(records[lines - 1] >>> 32) != (int)(records[i] >>> 32))
+				records[lines++] = records[i];
+
+		out.writeInt(SimpleScriptLineTable.MAGIC);
+		out.writeInt(SimpleScriptLineTable.VERSION);
+		out.writeInt(lines);
+		for (int i = 0; i < lines; i++)
+		{
+			out.writeInt((int)(records[i] >>> 32));
+			out.writeInt((int)records[i]);
+		}
+		strings.flush();
+		stringBytes.writeTo(out);
+	}
+
+	/** Adds a string to an image's string section, if it is not there already, and returns its offset in the section. */
+	private static int imageString(HashMap<String, Integer> table, DataOutputStream strings, String s) throws IOException
+	{
+		Integer offset = table.get(s);
+		if (offset == null)
+		{
+			offset = strings.size();
+			writeString(strings, s);
+			table.put(s, offset);
+		}
+		return offset;
+	}
+
+	/** Writes a length-prefixed UTF-8 string. */
+	private static void writeString(DataOutputStream out, String s) throws IOException
+	{
+		byte[] b = s.getBytes("UTF-8");
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	/** Reads a length-prefixed UTF-8 string. */
+	private static String readString(DataInputStream in) throws IOException
+	{
+		byte[] b = new byte[readCount(in)];
+		in.readFully(b);
+		return new String(b, "UTF-8");
+	}
+
+	/** Reads a count or length, which cannot be negative. */
+	private static int readCount(DataInputStream in) throws IOException
+	{
+		int count = in.readInt();
+		if (count < 0)
+			throw new IOException("Bad length: "+count);
+		return count;
+	}
+
+	/** Opcodes resolved against a command set. */
+	private static final class OpcodeTable
+	{
+		/** The command set. */
+		private String[] commandSet;
+		/** The opcodes. */
+		private int[] opcodes;
+
+		OpcodeTable(String[] commandSet, int[] opcodes)
+		{
+			this.commandSet = commandSet;
+			this.opcodes = opcodes;
+		}
+	}
+
 }
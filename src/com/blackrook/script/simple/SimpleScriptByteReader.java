@@ -0,0 +1,745 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.simple;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import com.blackrook.commons.list.List;
+import com.blackrook.script.simple.Command.Argument.Type;
+import com.blackrook.script.simple.SimpleScriptDescriptor.Entry;
+
+/**
+ * Reads SimpleScripts straight from UTF-8 bytes, for {@link SimpleScriptFactory#readScript(String, ByteBuffer, SimpleScriptDescriptor...)}.
+ * <p>
+ * This is a lexer and parser for the SimpleScript grammar only. Tokens are kept as offsets into
+ * the buffer, and strings are only created for the identifiers, numbers and string literals
+ * that end up in the script (once per distinct lexeme, using a symbol table), and for the
+ * source line of each command, if lines are kept. Text that is all ASCII is turned into strings without decoding.
+ * <p>
+ * The buffer's position and limit are not changed.
+ * @author Matthew Tropiano
+ * @since 2.3.0
+ */
+final class SimpleScriptByteReader
+{
+	private static final Charset ASCII = Charset.forName("ISO-8859-1");
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int
+	TOKEN_END = 0,
+	TOKEN_NEWLINE = 1,
+	TOKEN_COLON = 2,
+	TOKEN_EXPOINT = 3,
+	TOKEN_IDENTIFIER = 4,
+	TOKEN_NUMBER = 5,
+	TOKEN_STRING = 6,
+	TOKEN_ILLEGAL = 7;
+
+	/** Stream name for error messages. */
+	private String streamName;
+	/** Source data. */
+	private ByteBuffer data;
+	/** Source data end offset. */
+	private int end;
+	/** Scratch array for decoding text from buffers without arrays. */
+	private byte[] scratch;
+
+	/** Current scan offset. */
+	private int position;
+	/** Current scan line number. */
+	private int lineNumber;
+	/** Offset of the start of the current scan line. */
+	private int lineStart;
+	/** Is the scanner in a block comment? */
+	private boolean inComment;
+	/** Has the end been reached? */
+	private boolean ended;
+
+	/** Current token type. */
+	private int tokenType;
+	/** Current token start offset. */
+	private int tokenStart;
+	/** Current token end offset. */
+	private int tokenEnd;
+	/** Current token line number. */
+	private int tokenLine;
+	/** Offset of the start of the current token's line. */
+	private int tokenLineStart;
+	/** Does the current string token contain escapes or non-ASCII characters? */
+	private boolean tokenComplex;
+
+	/** Symbol table strings. */
+	private String[] symbols;
+	/** Symbol table hashes. */
+	private int[] symbolHashes;
+	/** Amount of symbols. */
+	private int symbolCount;
+
+	/** Keep the source line of each command? */
+	private boolean keepLines;
+	/** Descriptors. */
+	private SimpleScriptDescriptor[] descriptors;
+	/** The script being read. */
+	private SimpleScript script;
+	/** Error messages. */
+	private List<String> errors;
+
+	/** Current command name. */
+	private String currentCommand;
+	/** Current command entry. */
+	private Entry currentCommandEntry;
+	/** Current command argument constants. */
+	private int[] currentArguments;
+	/** Current command argument count. */
+	private int currentArgumentCount;
+
+	/**
+	 * Creates a new reader.
+	 * @param streamName the name of the stream, for error messages.
+	 * @param data the script data, from its position to its limit.
+	 * @param keepLines if true, the source line of each command is kept in the script.
+	 * @param descriptors the descriptors to check commands against, if any.
+	 */
+	SimpleScriptByteReader(String streamName, ByteBuffer data, boolean keepLines, SimpleScriptDescriptor ... descriptors)
+	{
+		this.streamName = streamName;
+		this.data = data;
+		this.end = data.limit();
+		this.scratch = new byte[64];
+
+		this.position = data.position();
+		this.lineNumber = 1;
+		this.lineStart = position;
+		this.inComment = false;
+		this.ended = false;
+
+		this.symbols = new String[256];
+		this.symbolHashes = new int[256];
+		this.symbolCount = 0;
+
+		this.keepLines = keepLines;
+		this.descriptors = descriptors;
+		this.script = new SimpleScript();
+		this.errors = new List<String>();
+		this.currentArguments = new int[8];
+
+		// skip UTF-8 byte order mark.
+		if (end - position >= 3 && data.get(position) == (byte)0xEF && data.get(position + 1) == (byte)0xBB && data.get(position + 2) == (byte)0xBF)
+		{
+			position += 3;
+			lineStart = position;
+		}
+	}
+
+	/**
+	 * Reads the script.
+	 * @return the script.
+	 * @throws SimpleScriptParseException if a parsing error occurs.
+	 */
+	SimpleScript read()
+	{
+		parse();
+		if (errors.size() > 0)
+		{
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < errors.size(); i++)
+			{
+				sb.append(errors.getByIndex(i));
+				if (i < errors.size()-1)
+					sb.append('\n');
+			}
+			throw new SimpleScriptParseException(sb.toString());
+		}
+		return script;
+	}
+
+	/** Parses the whole script. */
+	private void parse()
+	{
+		nextToken();
+		while (tokenType != TOKEN_END)
+		{
+			switch (tokenType)
+			{
+				case TOKEN_NEWLINE:
+					nextToken();
+					break;
+				case TOKEN_COLON:
+					nextToken();
+					if (!parseLabel())
+						return;
+					break;
+				case TOKEN_EXPOINT:
+					nextToken();
+					if (!parseMetaData())
+						return;
+					break;
+				case TOKEN_IDENTIFIER:
+					if (!parseCommand())
+						return;
+					break;
+				default:
+					addErrorMessage("Expected command or label declaration.");
+					return;
+			}
+		}
+	}
+
+	/** Parses a label: saw colon, need label, then newline. */
+	private boolean parseLabel()
+	{
+		if (tokenType != TOKEN_IDENTIFIER)
+		{
+			addErrorMessage("Expected identifier type for label declaration.");
+			return false;
+		}
+		script.setLabel(symbol(tokenStart, tokenEnd), script.getCommandCount());
+		nextToken();
+
+		if (tokenType != TOKEN_NEWLINE)
+		{
+			addErrorMessage("Expected end-of-line after label.");
+			return false;
+		}
+		nextToken();
+		return true;
+	}
+
+	/** Parses metadata: saw exclamation point, need key, colon, value, then newline. */
+	private boolean parseMetaData()
+	{
+		if (tokenType != TOKEN_IDENTIFIER)
+		{
+			addErrorMessage("Expected identifier for key.");
+			return false;
+		}
+		String key = symbol(tokenStart, tokenEnd);
+		nextToken();
+
+		if (tokenType != TOKEN_COLON)
+		{
+			addErrorMessage("Expected ':' after key.");
+			return false;
+		}
+		nextToken();
+
+		if (tokenType != TOKEN_IDENTIFIER && tokenType != TOKEN_STRING && tokenType != TOKEN_NUMBER)
+		{
+			addErrorMessage("Expected identifier, string, or numeric value.");
+			return false;
+		}
+		String value = tokenType == TOKEN_STRING ? stringValue() : symbol(tokenStart, tokenEnd);
+		nextToken();
+
+		if (tokenType != TOKEN_NEWLINE)
+		{
+			addErrorMessage("Expected end-of-line.");
+			return false;
+		}
+		nextToken();
+
+		script.setMetaData(key, value);
+		return true;
+	}
+
+	/** Parses a command: its name, arguments, then newline. */
+	private boolean parseCommand()
+	{
+		currentCommand = symbol(tokenStart, tokenEnd);
+		currentCommandEntry = null;
+		currentArgumentCount = 0;
+		if (descriptors.length > 0)
+		{
+			Entry entry = null;
+			for (SimpleScriptDescriptor desc : descriptors)
+			{
+				entry = desc.getCommandEntry(currentCommand);
+				if (entry != null)
+					break;
+			}
+			if (entry == null)
+			{
+				addErrorMessage("Expected valid command.");
+				return false;
+			}
+			currentCommandEntry = entry;
+		}
+		nextToken();
+
+		while (true) switch (tokenType)
+		{
+			case TOKEN_NUMBER:
+			{
+				if (!checkArgument())
+					return false;
+				String lexeme = symbol(tokenStart, tokenEnd);
+				addArgument(isInteger(lexeme) ? Type.INTEGER : Type.NUMBER, lexeme);
+				nextToken();
+				break;
+			}
+			case TOKEN_STRING:
+				if (!checkArgument())
+					return false;
+				addArgument(Type.STRING, stringValue());
+				nextToken();
+				break;
+			case TOKEN_IDENTIFIER:
+				if (!checkArgument())
+					return false;
+				addArgument(Type.IDENTIFIER, symbol(tokenStart, tokenEnd));
+				nextToken();
+				break;
+			case TOKEN_NEWLINE:
+			{
+				if (currentCommandEntry != null)
+				{
+					boolean str = currentCommandEntry.isStrict();
+					int len = currentCommandEntry.getArgumentLength();
+					int args = currentArgumentCount;
+					if ((str && len != args) || (!str && len < args))
+					{
+						if (str)
+							addErrorMessage("Expected "+len+" arguments for command '"+currentCommand+"'.");
+						else
+							addErrorMessage("Expected at least "+len+" arguments for command '"+currentCommand+"'.");
+						return false;
+					}
+				}
+
+				script.addCommand(currentCommand, currentArguments, currentArgumentCount, keepLines ? lineText() : null, tokenLine);
+				nextToken();
+				return true;
+			}
+			default:
+				addErrorMessage("Expected valid argument token.");
+				return false;
+		}
+	}
+
+	/** Adds an argument to the current command. */
+	private void addArgument(Type type, String value)
+	{
+		if (currentArgumentCount == currentArguments.length)
+		{
+			int[] newArray = new int[currentArguments.length * 2];
+			System.arraycopy(currentArguments, 0, newArray, 0, currentArgumentCount);
+			currentArguments = newArray;
+		}
+		currentArguments[currentArgumentCount++] = script.addConstant(type, value);
+	}
+
+	/** 
+	 * Checks the current argument token against the current command's entry, if any. 
+	 * @return false if the argument is the wrong type (and an error was added).
+	 */
+	private boolean checkArgument()
+	{
+		if (currentCommandEntry == null)
+			return true;
+
+		Type[] aTypes = currentCommandEntry.getArgumentTypes();
+		if (currentArgumentCount >= aTypes.length || aTypes[currentArgumentCount] == null)
+			return true;
+
+		String message = null;
+		switch (aTypes[currentArgumentCount])
+		{
+			case INTEGER:
+				if (tokenType != TOKEN_NUMBER || !isInteger(symbol(tokenStart, tokenEnd)))
+					message = "Expected integer numeric argument for command '"+currentCommand+"'.";
+				break;
+			case NUMBER:
+				if (tokenType != TOKEN_NUMBER)
+					message = "Expected numeric argument for command '"+currentCommand+"'.";
+				break;
+			case IDENTIFIER:
+				if (tokenType != TOKEN_IDENTIFIER)
+					message = "Expected identifier argument for command '"+currentCommand+"'.";
+				break;
+			case LABEL:
+				if (tokenType != TOKEN_IDENTIFIER)
+					message = "Expected label argument for command '"+currentCommand+"'.";
+				break;
+			case STRING:
+				if (tokenType != TOKEN_STRING)
+					message = "Expected string argument for command '"+currentCommand+"'.";
+				break;
+		}
+
+		if (message == null)
+			return true;
+		addErrorMessage(message);
+		return false;
+	}
+
+	/** Returns true if a numeric lexeme is a long integer. */
+	private static boolean isInteger(String lexeme)
+	{
+		int i = lexeme.charAt(0) == '-' ? 1 : 0;
+		if (lexeme.length() - i > 18)
+		{
+			try {
+				Long.parseLong(lexeme);
+				return true;
+			} catch (NumberFormatException e) {
+				return false;
+			}
+		}
+		for (; i < lexeme.length(); i++)
+		{
+			char c = lexeme.charAt(i);
+			if (c < '0' || c > '9')
+				return false;
+		}
+		return true;
+	}
+
+	/** Adds an error message for the current token. */
+	private void addErrorMessage(String message)
+	{
+		errors.add("("+streamName+") Line "+tokenLine+": "+message);
+	}
+
+	/** Scans the next token. */
+	private void nextToken()
+	{
+		while (true)
+		{
+			if (position >= end)
+			{
+				// end the last line if it has no newline.
+				if (!ended && tokenType != TOKEN_NEWLINE && tokenType != TOKEN_END)
+					setToken(TOKEN_NEWLINE, position, position);
+				else
+					setToken(TOKEN_END, position, position);
+				ended = true;
+				return;
+			}
+
+			byte b = data.get(position);
+
+			// newlines in block comments are not tokens.
+			if (inComment)
+			{
+				if (b == '*' && position + 1 < end && data.get(position + 1) == '/')
+				{
+					inComment = false;
+					position += 2;
+				}
+				else
+				{
+					position++;
+					if (b == '\n')
+					{
+						lineNumber++;
+						lineStart = position;
+					}
+				}
+				continue;
+			}
+
+			if (b == '\n')
+			{
+				setToken(TOKEN_NEWLINE, position, position + 1);
+				position++;
+				lineNumber++;
+				lineStart = position;
+				return;
+			}
+
+			if (b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B)
+			{
+				position++;
+				continue;
+			}
+
+			if (b == '/' && position + 1 < end)
+			{
+				byte b2 = data.get(position + 1);
+				if (b2 == '/')
+				{
+					while (position < end && data.get(position) != '\n')
+						position++;
+					continue;
+				}
+				else if (b2 == '*')
+				{
+					inComment = true;
+					position += 2;
+					continue;
+				}
+			}
+
+			int start = position;
+			if (b == ':')
+			{
+				position++;
+				setToken(TOKEN_COLON, start, position);
+			}
+			else if (b == '!')
+			{
+				position++;
+				setToken(TOKEN_EXPOINT, start, position);
+			}
+			else if (b == '"' || b == '\'')
+				scanString(b);
+			else if (isDigit(b) || ((b == '-' || b == '.') && position + 1 < end && isDigit(data.get(position + 1))))
+				scanNumber();
+			else if (isIdentifierStart(b))
+			{
+				position++;
+				while (position < end && isIdentifierPart(data.get(position)))
+					position++;
+				setToken(TOKEN_IDENTIFIER, start, position);
+			}
+			else
+			{
+				position++;
+				setToken(TOKEN_ILLEGAL, start, position);
+			}
+			return;
+		}
+	}
+
+	/** Scans a string token. The token's offsets are the string's contents, without quotes. */
+	private void scanString(byte quote)
+	{
+		int start = ++position;
+		boolean complex = false;
+		while (position < end)
+		{
+			byte b = data.get(position);
+			if (b == quote)
+			{
+				setToken(TOKEN_STRING, start, position);
+				tokenComplex = complex;
+				position++;
+				return;
+			}
+			else if (b == '\n')
+				break;
+			else if (b == '\\')
+			{
+				complex = true;
+				position += position + 1 < end && data.get(position + 1) != '\n' ? 2 : 1;
+			}
+			else
+			{
+				if (b < 0)
+					complex = true;
+				position++;
+			}
+		}
+		// unterminated.
+		if (position > end)
+			position = end;
+		setToken(TOKEN_ILLEGAL, start - 1, position);
+	}
+
+	/** Scans a number token: decimal, with optional fraction and exponent, or hexadecimal. */
+	private void scanNumber()
+	{
+		int start = position;
+		if (data.get(position) == '-')
+			position++;
+
+		if (data.get(position) == '0' && position + 1 < end && (data.get(position + 1) == 'x' || data.get(position + 1) == 'X'))
+		{
+			position += 2;
+			while (position < end && isHexDigit(data.get(position)))
+				position++;
+		}
+		else
+		{
+			while (position < end && isDigit(data.get(position)))
+				position++;
+			if (position < end && data.get(position) == '.')
+			{
+				position++;
+				while (position < end && isDigit(data.get(position)))
+					position++;
+			}
+			if (position < end && (data.get(position) == 'e' || data.get(position) == 'E'))
+			{
+				int p = position + 1;
+				if (p < end && (data.get(p) == '+' || data.get(p) == '-'))
+					p++;
+				if (p < end && isDigit(data.get(p)))
+				{
+					position = p;
+					while (position < end && isDigit(data.get(position)))
+						position++;
+				}
+			}
+		}
+		setToken(TOKEN_NUMBER, start, position);
+	}
+
+	/** Sets the current token. */
+	private void setToken(int type, int start, int end)
+	{
+		tokenType = type;
+		tokenStart = start;
+		tokenEnd = end;
+		tokenLine = lineNumber;
+		tokenLineStart = lineStart;
+		tokenComplex = false;
+	}
+
+	private static boolean isDigit(byte b)
+	{
+		return b >= '0' && b <= '9';
+	}
+
+	private static boolean isHexDigit(byte b)
+	{
+		return (b >= '0' && b <= '9') || (b >= 'a' && b <= 'f') || (b >= 'A' && b <= 'F');
+	}
+
+	/** Bytes outside of ASCII are parts of UTF-8 characters, which are treated as letters. */
+	private static boolean isIdentifierStart(byte b)
+	{
+		return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || b == '_' || b < 0;
+	}
+
+	private static boolean isIdentifierPart(byte b)
+	{
+		return isIdentifierStart(b) || isDigit(b);
+	}
+
+	/** Gets the value of the current string token, processing escapes. */
+	private String stringValue()
+	{
+		if (!tokenComplex)
+			return symbol(tokenStart, tokenEnd);
+
+		String raw = decode(tokenStart, tokenEnd);
+		if (raw.indexOf('\\') < 0)
+			return raw;
+
+		StringBuilder sb = new StringBuilder(raw.length());
+		for (int i = 0; i < raw.length(); i++)
+		{
+			char c = raw.charAt(i);
+			if (c != '\\' || i + 1 == raw.length())
+			{
+				sb.append(c);
+				continue;
+			}
+			c = raw.charAt(++i);
+			switch (c)
+			{
+				case 'n': sb.append('\n'); break;
+				case 't': sb.append('\t'); break;
+				case 'r': sb.append('\r'); break;
+				case 'b': sb.append('\b'); break;
+				case 'f': sb.append('\f'); break;
+				case '0': sb.append('\0'); break;
+				default: sb.append(c); break;
+			}
+		}
+		return sb.toString();
+	}
+
+	/** Gets the source line of the current token, including its newline. */
+	private String lineText()
+	{
+		int lineEnd = tokenEnd;
+		if (lineEnd == tokenStart)
+			return decode(tokenLineStart, lineEnd) + "\n";
+		return decode(tokenLineStart, lineEnd);
+	}
+
+	/**
+	 * Gets the string for a range of bytes, using the symbol table so that each
+	 * distinct lexeme only creates one string.
+	 */
+	private String symbol(int start, int end)
+	{
+		int hash = 0;
+		boolean ascii = true;
+		for (int i = start; i < end; i++)
+		{
+			byte b = data.get(i);
+			ascii &= b >= 0;
+			hash = 31 * hash + b;
+		}
+		if (!ascii)
+			return decode(start, end);
+
+		int mask = symbols.length - 1;
+		int i = (hash ^ (hash >>> 16)) & mask;
+		String s;
+		while ((s = symbols[i]) != null)
+		{
+			if (symbolHashes[i] == hash && matches(s, start, end))
+				return s;
+			i = (i + 1) & mask;
+		}
+
+		s = decode(start, end);
+		symbols[i] = s;
+		symbolHashes[i] = hash;
+		if (++symbolCount * 2 > symbols.length)
+			growSymbols();
+		return s;
+	}
+
+	/** Returns true if an ASCII string matches a range of bytes. */
+	private boolean matches(String s, int start, int end)
+	{
+		if (s.length() != end - start)
+			return false;
+		for (int i = 0; i < s.length(); i++)
+			if (s.charAt(i) != data.get(start + i))
+				return false;
+		return true;
+	}
+
+	/** Doubles the symbol table size. */
+	private void growSymbols()
+	{
+		String[] oldSymbols = symbols;
+		int[] oldHashes = symbolHashes;
+		symbols = new String[oldSymbols.length * 2];
+		symbolHashes = new int[oldSymbols.length * 2];
+		int mask = symbols.length - 1;
+		for (int n = 0; n < oldSymbols.length; n++)
+		{
+			if (oldSymbols[n] == null)
+				continue;
+			int hash = oldHashes[n];
+			int i = (hash ^ (hash >>> 16)) & mask;
+			while (symbols[i] != null)
+				i = (i + 1) & mask;
+			symbols[i] = oldSymbols[n];
+			symbolHashes[i] = hash;
+		}
+	}
+
+	/** Decodes a range of bytes, skipping UTF-8 decoding if they are all ASCII. */
+	private String decode(int start, int end)
+	{
+		boolean ascii = true;
+		for (int i = start; ascii && i < end; i++)
+			ascii = data.get(i) >= 0;
+		Charset charset = ascii ? ASCII : UTF8;
+
+		if (data.hasArray())
+			return new String(data.array(), data.arrayOffset() + start, end - start, charset);
+
+		int length = end - start;
+		if (scratch.length < length)
+			scratch = new byte[Math.max(length, scratch.length * 2)];
+		for (int i = 0; i < length; i++)
+			scratch[i] = data.get(start + i);
+		return new String(scratch, 0, length, charset);
+	}
+
+}
@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.simple;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A cache of parsed SimpleScripts in front of {@link SimpleScriptFactory#readScript(String, byte[], SimpleScriptDescriptor...)},
+ * keyed by a digest of the script's source bytes and the descriptors used to read it, so
+ * reading the same source with the same descriptors returns the same SimpleScript instance
+ * instead of parsing it again.
+ * <p>
+ * Each entry weighs as much as its source, in bytes. Once the total weight is over the
+ * maximum, the least-recently used entries are evicted until it is not. Sources that weigh
+ * more than the maximum by themselves are parsed, but not cached.
+ * <p>
+ * Cached scripts are not copied: every read of the same source returns the same instance.
+ * Anything that changes a script (like {@link SimpleScript#setLabel(String, int)}, 
+ * {@link SimpleScript#setMetaData(String, String)}, {@link SimpleScript#addCommand(Command)},
+ * {@link SimpleScript#linkLabels(SimpleScriptDescriptor...)} or {@link SimpleScript#trim()}) 
+ * changes it for every reader, so cached scripts must not be changed.
+ * The cache is thread-safe. Parsing happens outside of its lock, so two threads reading
+ * the same uncached source at once may both parse it, and one of the results is kept.
+ * @author Matthew Tropiano
+ * @since 2.3.0
+ */
+public class SimpleScriptCache
+{
+	/** Digest algorithm for source keys. */
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+
+	/** The cached scripts, in least-to-most recently used order. */
+	private LinkedHashMap<Key, Entry> entries;
+	/** Maximum total weight. */
+	private long maxWeight;
+	/** Current total weight. */
+	private long weight;
+
+	/** Amount of cache hits. */
+	private long hitCount;
+	/** Amount of cache misses. */
+	private long missCount;
+	/** Amount of evicted entries. */
+	private long evictionCount;
+
+	/**
+	 * Creates a new cache.
+	 * @param maxWeight the maximum total size of the cached scripts' source, in bytes.
+	 */
+	public SimpleScriptCache(long maxWeight)
+	{
+		this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+		this.maxWeight = maxWeight;
+		this.weight = 0L;
+	}
+
+	/**
+	 * Reads a SimpleScript, or gets the cached one read from the same source with the same descriptors.
+	 * This will read until the end of the stream is reached.
+	 * Does not close the InputStream at the end of the read.
+	 * @param streamName the name of stream that is being read (only used if the script is parsed).
+	 * @param in the InputStream to read from.
+	 * @param descriptors the command descriptors to use, if any. These are compared by identity.
+	 * @return the script, which may be shared with other readers, and must not be changed.
+	 * @throws IOException if an error occurs during the read.
+	 * @throws SimpleScriptParseException if a parsing error occurs.
+	 * @see SimpleScriptFactory#readScript(String, InputStream, SimpleScriptDescriptor...)
+	 */
+	public SimpleScript readScript(String streamName, InputStream in, SimpleScriptDescriptor ... descriptors) throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = in.read(buffer)) > 0)
+			bos.write(buffer, 0, n);
+		return readScript(streamName, bos.toByteArray(), descriptors);
+	}
+
+	/**
+	 * Reads a SimpleScript, or gets the cached one read from the same source with the same descriptors.
+	 * @param streamName the name of stream that is being read (only used if the script is parsed).
+	 * @param data the script source.
+	 * @param descriptors the command descriptors to use, if any. These are compared by identity.
+	 * @return the script, which may be shared with other readers, and must not be changed.
+	 * @throws SimpleScriptParseException if a parsing error occurs.
+	 * @see SimpleScriptFactory#readScript(String, byte[], SimpleScriptDescriptor...)
+	 */
+	public SimpleScript readScript(String streamName, byte[] data, SimpleScriptDescriptor ... descriptors)
+	{
+		boolean oversize;
+		synchronized (this)
+		{
+			oversize = data.length > maxWeight;
+			if (oversize)
+				missCount++;
+		}
+		if (oversize)
+			return SimpleScriptFactory.readScript(streamName, data, descriptors);
+
+		Key key = new Key(digest(data), descriptors);
+		synchronized (this)
+		{
+			Entry entry = entries.get(key);
+			if (entry != null)
+			{
+				hitCount++;
+				return entry.script;
+			}
+			missCount++;
+		}
+
+		SimpleScript script = SimpleScriptFactory.readScript(streamName, data, descriptors);
+
+		synchronized (this)
+		{
+			Entry entry = entries.get(key);
+			if (entry != null)
+				return entry.script;
+			if (data.length > maxWeight)
+				return script;
+			entries.put(key, new Entry(script, data.length));
+			weight += data.length;
+			evict();
+		}
+		return script;
+	}
+
+	/** Evicts least-recently used entries until the weight is under the maximum. */
+	private void evict()
+	{
+		Iterator<Entry> it = entries.values().iterator();
+		while (weight > maxWeight && it.hasNext())
+		{
+			Entry entry = it.next();
+			weight -= entry.weight;
+			evictionCount++;
+			it.remove();
+		}
+	}
+
+	/**
+	 * Sets the maximum total size of the cached scripts' source, in bytes,
+	 * evicting entries if the cache is now over it.
+	 */
+	public synchronized void setMaxWeight(long maxWeight)
+	{
+		this.maxWeight = maxWeight;
+		evict();
+	}
+
+	/** Returns the maximum total size of the cached scripts' source, in bytes. */
+	public synchronized long getMaxWeight()
+	{
+		return maxWeight;
+	}
+
+	/** Returns the total size of the cached scripts' source, in bytes. */
+	public synchronized long getWeight()
+	{
+		return weight;
+	}
+
+	/** Returns the amount of cached scripts. */
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+
+	/** Returns the amount of reads that returned a cached script. */
+	public synchronized long getHitCount()
+	{
+		return hitCount;
+	}
+
+	/** Returns the amount of reads that had to parse a script. */
+	public synchronized long getMissCount()
+	{
+		return missCount;
+	}
+
+	/** Returns the amount of scripts that were evicted to stay under the maximum weight. */
+	public synchronized long getEvictionCount()
+	{
+		return evictionCount;
+	}
+
+	/** Removes all cached scripts. Does not reset the statistics. */
+	public synchronized void clear()
+	{
+		entries.clear();
+		weight = 0L;
+	}
+
+	/** Resets the hit, miss, and eviction counts. */
+	public synchronized void resetStatistics()
+	{
+		hitCount = 0L;
+		missCount = 0L;
+		evictionCount = 0L;
+	}
+
+	/** Digests source bytes. */
+	private static byte[] digest(byte[] data)
+	{
+		try {
+			return MessageDigest.getInstance(DIGEST_ALGORITHM).digest(data);
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to have SHA-256.
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Cache key: source digest and descriptors. */
+	private static class Key
+	{
+		private byte[] digest;
+		private SimpleScriptDescriptor[] descriptors;
+		private int hash;
+
+		Key(byte[] digest, SimpleScriptDescriptor[] descriptors)
+		{
+			this.digest = digest;
+			this.descriptors = descriptors.clone();
+			int h = Arrays.hashCode(digest);
+			for (SimpleScriptDescriptor d : descriptors)
+				h = 31 * h + System.identityHashCode(d);
+			this.hash = h;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof Key))
+				return false;
+			Key k = (Key)obj;
+			if (hash != k.hash || descriptors.length != k.descriptors.length || !Arrays.equals(digest, k.digest))
+				return false;
+			for (int i = 0; i < descriptors.length; i++)
+				if (descriptors[i] != k.descriptors[i])
+					return false;
+			return true;
+		}
+	}
+
+	/** Cache entry. */
+	private static class Entry
+	{
+		private SimpleScript script;
+		private long weight;
+
+		Entry(SimpleScript script, long weight)
+		{
+			this.script = script;
+			this.weight = weight;
+		}
+	}
+
+}
@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.simple;
+
+/**
+ * Executes a single command for a {@link SimpleScriptHandlerInterpreter}.
+ * Handlers are kept by command name in a {@link SimpleScriptHandlerRegistry}.
+ * @author Matthew Tropiano
+ * @since 2.3.0
+ */
+@FunctionalInterface
+public interface SimpleScriptCommandHandler
+{
+	/**
+	 * Executes a command. Arguments can be read straight from the script's storage,
+	 * starting at {@link SimpleScript#getArgumentOffset(int)}.
+	 * May throw SimpleScriptRuntimeException if something goes wrong.
+	 * @param interpreter	the interpreter that is executing the command.
+	 * @param script		the script that contains the command.
+	 * @param index			the index of the command in the script.
+	 */
+	public void execute(SimpleScriptInterpreter interpreter, SimpleScript script, int index);
+
+}
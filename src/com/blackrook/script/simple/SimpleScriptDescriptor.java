@@ -7,18 +7,25 @@
  ******************************************************************************/
 package com.blackrook.script.simple;
 
+import java.util.Iterator;
+
 import com.blackrook.commons.hash.CaseInsensitiveHashMap;
 import com.blackrook.script.simple.Command.Argument.Type;
 
 /**
  * A script descriptor for catching pre-runtime errors
  * when the script is read. 
+ * <p>
+ * Several descriptors can be merged into one {@link SimpleScriptDescriptorSet},
+ * which is faster to look commands up in.
  * @author Matthew Tropiano
  */
 public class SimpleScriptDescriptor
 {
 	/** The command to entry table. */
 	private CaseInsensitiveHashMap<Entry> entryTable;
+	/** Amount of changes made to this descriptor, so merged sets know when they are out of date. */
+	volatile int changeCount;
 	
 	/**
 	 * Creates a new ScriptDescriptor.
@@ -26,6 +33,7 @@ public class SimpleScriptDescriptor
 	public SimpleScriptDescriptor()
 	{
 		entryTable = new CaseInsensitiveHashMap<Entry>();
+		changeCount = 0;
 	}
 	
 	/**
@@ -43,6 +51,7 @@ public class SimpleScriptDescriptor
 	public void setCommandEntry(String command, int arguments, boolean strict, Type ... argTypes)
 	{
 		entryTable.put(command, new Entry(arguments, strict, argTypes));
+		changeCount++;
 	}
 	
 	/**
@@ -53,6 +62,7 @@ public class SimpleScriptDescriptor
 	public void removeCommandEntry(String command)
 	{
 		entryTable.removeUsingKey(command);
+		changeCount++;
 	}
 	
 	/**
@@ -66,6 +76,15 @@ public class SimpleScriptDescriptor
 		return entryTable.get(command);
 	}
 	
+	/**
+	 * Returns an iterator over the names of the commands in this ScriptDescriptor, in no particular order.
+	 * @since 2.3.0
+	 */
+	public Iterator<String> getCommandNames()
+	{
+		return entryTable.keyIterator();
+	}
+	
 	/**
 	 * A descriptor entry.
 	 */
@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.simple;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import com.blackrook.commons.hash.CaseInsensitiveHashMap;
+import com.blackrook.commons.list.List;
+
+/**
+ * An immutable merge of several {@link SimpleScriptDescriptor}s, with all of their command 
+ * entries in one perfect-hashed lookup table. Since it is a descriptor, it can be passed 
+ * to anything that takes descriptors in place of the ones that it merges, like 
+ * {@link SimpleScriptFactory#readScript(String, java.io.InputStream, SimpleScriptDescriptor...)} or 
+ * {@link SimpleScript#linkLabels(SimpleScriptDescriptor...)}, and looking up a command 
+ * is one table lookup instead of one per descriptor.
+ * <p>
+ * Each command also has an index in the set, and {@link #getCommandSet()} lists the names
+ * in index order, so the array that it returns can be used as an interpreter's command set
+ * (see {@link SimpleScript#resolveOpcodes(String[])}).
+ * <p>
+ * Descriptors that describe the same command (NOT case-sensitive) must describe it
+ * the same way, or the set cannot be created.
+ * @author Matthew Tropiano
+ * @since 2.3.0
+ */
+public final class SimpleScriptDescriptorSet extends SimpleScriptDescriptor
+{
+	/** Command names, by index. */
+	private String[] names;
+	/** Command entries, by index. */
+	private Entry[] entries;
+	/** Name index. */
+	private SimpleScriptNameIndex index;
+	/** The merged descriptors. */
+	private SimpleScriptDescriptor[] sources;
+	/** The change count of each merged descriptor when it was merged. */
+	private int[] sourceChangeCounts;
+
+	/**
+	 * Creates a new descriptor set.
+	 * The commands of each descriptor are added in name order, and the descriptors in the order given.
+	 * @param descriptors the descriptors to merge.
+	 * @throws IllegalArgumentException if two descriptors describe the same command differently.
+	 */
+	public SimpleScriptDescriptorSet(SimpleScriptDescriptor ... descriptors)
+	{
+		sources = Arrays.copyOf(descriptors, descriptors.length);
+		sourceChangeCounts = new int[descriptors.length];
+		for (int d = 0; d < descriptors.length; d++)
+			sourceChangeCounts[d] = descriptors[d].changeCount;
+		
+		List<String> nameList = new List<String>();
+		List<Entry> entryList = new List<Entry>();
+		List<Integer> sourceList = new List<Integer>();
+		CaseInsensitiveHashMap<Integer> indexTable = new CaseInsensitiveHashMap<Integer>();
+		StringBuilder conflicts = null;
+
+		for (int d = 0; d < descriptors.length; d++)
+		{
+			List<String> descriptorNames = new List<String>();
+			Iterator<String> it = descriptors[d].getCommandNames();
+			while (it.hasNext())
+				descriptorNames.add(it.next());
+			String[] sorted = new String[descriptorNames.size()];
+			for (int i = 0; i < sorted.length; i++)
+				sorted[i] = descriptorNames.getByIndex(i);
+			Arrays.sort(sorted, String.CASE_INSENSITIVE_ORDER);
+
+			for (String name : sorted)
+			{
+				Entry entry = descriptors[d].getCommandEntry(name);
+				Integer existing = indexTable.get(name);
+				if (existing == null)
+				{
+					indexTable.put(name, nameList.size());
+					nameList.add(name);
+					entryList.add(entry);
+					sourceList.add(d);
+				}
+				else if (!sameEntry(entryList.getByIndex(existing), entry))
+				{
+					if (conflicts == null)
+						conflicts = new StringBuilder();
+					else
+						conflicts.append('\n');
+					conflicts.append("Command '"+name+"' is described differently by descriptors "+sourceList.getByIndex(existing)+" and "+d+".");
+				}
+			}
+		}
+
+		if (conflicts != null)
+			throw new IllegalArgumentException(conflicts.toString());
+
+		names = new String[nameList.size()];
+		entries = new Entry[names.length];
+		for (int i = 0; i < names.length; i++)
+		{
+			names[i] = nameList.getByIndex(i);
+			entries[i] = entryList.getByIndex(i);
+		}
+		index = new SimpleScriptNameIndex(names);
+	}
+
+	/** 
+	 * Returns true if this set was merged from the same descriptors, in the same order, 
+	 * and none of them were changed since. 
+	 */
+	boolean isMergeOf(SimpleScriptDescriptor[] descriptors)
+	{
+		if (descriptors.length != sources.length)
+			return false;
+		for (int d = 0; d < descriptors.length; d++)
+			if (descriptors[d] != sources[d] || descriptors[d].changeCount != sourceChangeCounts[d])
+				return false;
+		return true;
+	}
+
+	/** Returns true if two entries describe a command the same way. */
+	private static boolean sameEntry(Entry a, Entry b)
+	{
+		return a == b || (a.getArgumentLength() == b.getArgumentLength() 
+			&& a.isStrict() == b.isStrict() 
+			&& Arrays.equals(a.getArgumentTypes(), b.getArgumentTypes()));
+	}
+
+	/**
+	 * Throws UnsupportedOperationException: descriptor sets cannot be changed.
+	 */
+	@Override
+	public void setCommandEntry(String command, int arguments, boolean strict, Command.Argument.Type ... argTypes)
+	{
+		throw new UnsupportedOperationException("Descriptor sets cannot be changed.");
+	}
+
+	/**
+	 * Throws UnsupportedOperationException: descriptor sets cannot be changed.
+	 */
+	@Override
+	public void removeCommandEntry(String command)
+	{
+		throw new UnsupportedOperationException("Descriptor sets cannot be changed.");
+	}
+
+	@Override
+	public Entry getCommandEntry(String command)
+	{
+		int i = index.get(command);
+		return i >= 0 ? entries[i] : null;
+	}
+
+	/**
+	 * Gets the index of a command in this set.
+	 * @param command the command name (NOT case-sensitive).
+	 * @return the index, or -1 if the command is not in this set.
+	 */
+	public int getCommandIndex(String command)
+	{
+		return index.get(command);
+	}
+
+	/**
+	 * Returns the amount of commands in this set.
+	 */
+	public int getCommandCount()
+	{
+		return names.length;
+	}
+
+	/**
+	 * Returns the names of the commands in this set, in index order.
+	 * This is the same array instance every time, and must not be altered.
+	 */
+	public String[] getCommandSet()
+	{
+		return names;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * The names are returned in index order.
+	 */
+	@Override
+	public Iterator<String> getCommandNames()
+	{
+		return Arrays.asList(names).iterator();
+	}
+
+}
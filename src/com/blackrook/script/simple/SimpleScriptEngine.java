@@ -9,7 +9,11 @@ package com.blackrook.script.simple;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
 
 import com.blackrook.commons.hash.CaseInsensitiveHashMap;
 import com.blackrook.commons.linkedlist.Queue;
@@ -19,6 +23,15 @@ import com.blackrook.commons.linkedlist.Queue;
  * A conglomeration of loaded scripts and mappings to Interpreter
  * classes. Scripts are bound to interpreters using metadata clauses
  * inside the scripts.
+ * <p>
+ * Each call to go() reads the engine's clock once, and supplies that time
+ * to every interpreter that it runs (see {@link SimpleScriptInterpreter#setTime(long)}).
+ * The clock is monotonic, or virtual: virtual time only moves when it is advanced, 
+ * so hours of script time can be run in moments (see {@link #fastForward(long, long)}).
+ * <p>
+ * Interpreters are created by a {@link SimpleScriptInterpreterFactory} or a class bound to the
+ * script type. Each type can keep a pool of freed interpreters, which are reset and reused by 
+ * callScript() instead of creating new ones.
  * @author Matthew Tropiano
  */
 public class SimpleScriptEngine
@@ -26,12 +39,47 @@ public class SimpleScriptEngine
 	/** Metadata key for deciding what interpreter to use. */
 	public static final String METADATA_KEY = "type";
 	
+	/** Tick outcome: still running. */
+	private static final int TICK_RUNNING = 0;
+	/** Tick outcome: ran out of budget. */
+	private static final int TICK_PREEMPTED = 1;
+	/** Tick outcome: ended. */
+	private static final int TICK_FREED = 2;
+	/** Tick outcome: waiting until a certain time. */
+	private static final int TICK_WAITING = 3;
+	/** Tick outcome: died on an exception. */
+	private static final int TICK_ERROR = 4;
+	/** Tick outcome: threw something that isn't an exception, so it is left as it is. */
+	private static final int TICK_THROWN = 5;
+	/** No tick interpreters. */
+	private static final SimpleScriptInterpreter[] NO_INTERPRETERS = new SimpleScriptInterpreter[0];
+	
 	/** Table of script files/resource paths to read scripts. */
 	private CaseInsensitiveHashMap<SimpleScript> scriptTable;
-	/** Table of types to interpreter classes. */
-	private CaseInsensitiveHashMap<Class<? extends SimpleScriptInterpreter>> scriptInterpreterTable;
+	/** Table of types to interpreter bindings. */
+	private CaseInsensitiveHashMap<InterpreterType> scriptInterpreterTable;
 	/** List of active interpreters. */
 	private Queue<SimpleScriptInterpreter> activeInterpreters; 
+	/** Interpreters that are waiting until a certain time (see {@link SimpleScriptInterpreter#getWaitDeadline()}). */
+	private SimpleScriptTimerWheel waitingInterpreters; 
+	/** Is the clock virtual? */
+	private volatile boolean virtualClock;
+	/** The virtual time, in milliseconds. */
+	private volatile long virtualTime;
+	/** How far ahead of the monotonic clock this engine's clock is, after the virtual clock is turned off. */
+	private volatile long clockOffset;
+	/** The pool for parallel ticks (null if ticks are not parallel). */
+	private volatile ForkJoinPool tickPool;
+	/** The thread that is running a parallel tick (null if there isn't one). */
+	private volatile Thread tickThread;
+	/** Amount of scripts run by each task in a parallel tick. */
+	private int tickChunkSize;
+	/** The scripts in a parallel tick, in order. */
+	private SimpleScriptInterpreter[] tickInterpreters;
+	/** What became of each script in a parallel tick. */
+	private int[] tickOutcomes;
+	/** What killed each script in a parallel tick, if anything. */
+	private Throwable[] tickErrors;
 	
 	/**
 	 * Creates a new simple script engine.
@@ -39,8 +87,167 @@ public class SimpleScriptEngine
 	public SimpleScriptEngine()
 	{
 		scriptTable = new CaseInsensitiveHashMap<SimpleScript>();
-		scriptInterpreterTable = new CaseInsensitiveHashMap<Class<? extends SimpleScriptInterpreter>>();
+		scriptInterpreterTable = new CaseInsensitiveHashMap<InterpreterType>();
 		activeInterpreters = new Queue<SimpleScriptInterpreter>();
+		virtualClock = false;
+		virtualTime = 0L;
+		clockOffset = 0L;
+		tickPool = null;
+		tickChunkSize = 0;
+		tickInterpreters = NO_INTERPRETERS;
+		tickOutcomes = new int[0];
+		tickThread = null;
+		tickErrors = new Throwable[0];
+		waitingInterpreters = new SimpleScriptTimerWheel(getTime());
+	}
+	
+	/**
+	 * Returns the time of this engine's clock, in milliseconds.
+	 * This is {@link SimpleScriptInterpreter#getMonotonicTime()}, or the virtual time if the clock is virtual.
+	 * If the virtual clock ran ahead of the monotonic clock before it was turned off, this stays that far ahead.
+	 * @since 2.3.0
+	 */
+	public long getTime()
+	{
+		return virtualClock ? virtualTime : SimpleScriptInterpreter.getMonotonicTime() + clockOffset;
+	}
+	
+	/**
+	 * Sets if this engine's clock is virtual. A virtual clock starts at the current time
+	 * and only moves when {@link #advanceTime(long)} or {@link #fastForward(long, long)} is called. 
+	 * Turning it off goes back to the monotonic clock, so that time never moves backward: if the virtual 
+	 * time is ahead of the monotonic clock, this engine's clock stays that far ahead of it from then on.
+	 * @param virtualClock true for a virtual clock, false for the monotonic clock.
+	 * @since 2.3.0
+	 */
+	public void setVirtualClock(boolean virtualClock)
+	{
+		checkParallelTick();
+		synchronized (this)
+		{
+			if (virtualClock && !this.virtualClock)
+				virtualTime = getTime();
+			else if (!virtualClock && this.virtualClock)
+				clockOffset = Math.max(clockOffset, virtualTime - SimpleScriptInterpreter.getMonotonicTime());
+			this.virtualClock = virtualClock;
+		}
+	}
+	
+	/**
+	 * Returns true if this engine's clock is virtual.
+	 * @since 2.3.0
+	 */
+	public boolean isVirtualClock()
+	{
+		return virtualClock;
+	}
+	
+	/**
+	 * Moves the virtual clock forward. 
+	 * This does not run any scripts: the next call to go() sees the new time.
+	 * @param millis the amount of milliseconds to move forward.
+	 * @throws IllegalStateException if the clock is not virtual.
+	 * @throws IllegalArgumentException if millis is negative.
+	 * @since 2.3.0
+	 */
+	public void advanceTime(long millis)
+	{
+		checkParallelTick();
+		synchronized (this)
+		{
+			if (!virtualClock)
+				throw new IllegalStateException("The engine's clock is not virtual.");
+			if (millis < 0)
+				throw new IllegalArgumentException("Time cannot move backward.");
+			virtualTime += millis;
+		}
+	}
+	
+	/**
+	 * Runs this engine for an amount of virtual time, calling go() once per tick.
+	 * Stretches of time with no runnable scripts are skipped over, up to the next
+	 * time that a waiting script wakes up, so mostly idle scripts run much faster than real time.
+	 * @param millis the amount of milliseconds to run for.
+	 * @param tickMillis the amount of milliseconds per tick (at least 1).
+	 * @throws IllegalStateException if the clock is not virtual.
+	 * @throws IllegalArgumentException if millis is negative.
+	 * @since 2.3.0
+	 */
+	public void fastForward(long millis, long tickMillis)
+	{
+		checkParallelTick();
+		synchronized (this)
+		{
+			if (!virtualClock)
+				throw new IllegalStateException("The engine's clock is not virtual.");
+			if (millis < 0)
+				throw new IllegalArgumentException("Time cannot move backward.");
+		
+			tickMillis = Math.max(tickMillis, 1L);
+			long end = virtualTime + millis;
+			while (virtualTime < end)
+			{
+				long next = virtualTime + tickMillis;
+				if (activeInterpreters.isEmpty())
+				{
+					long wake = waitingInterpreters.getNextDeadline();
+					if (wake < 0)
+					{
+						virtualTime = end;
+						break;
+					}
+					next = Math.max(next, wake);
+				}
+				virtualTime = Math.min(next, end);
+				go();
+			}
+		}
+	}
+	
+	/**
+	 * Sets if go() runs scripts in parallel, on a {@link ForkJoinPool}. 
+	 * The active scripts are split into chunks, which the pool's threads share out among themselves.
+	 * Once all scripts have run, what became of each one is handled on the calling thread
+	 * in the order that they were in, so that {@link #freedScript(SimpleScriptInterpreter)} and the 
+	 * error callbacks are called in the same order as they are in a sequential go().
+	 * <p>
+	 * Scripts run at the same time as each other, so interpreters, their commands, and
+	 * any listeners that they have must not share unguarded state. If there are no more
+	 * active scripts than the chunk size, go() runs them in sequence on the calling thread. 
+	 * <p>
+	 * <b>Scripts must not call this engine during a parallel tick.</b> The calling thread keeps this engine's 
+	 * lock until the tick is done, so a command or listener that calls a method that needs the lock (like callScript()) 
+	 * would deadlock: instead, that method throws an {@link IllegalStateException}. Only {@link #getTime()}, 
+	 * {@link #isVirtualClock()}, {@link #isParallelTick()}, and the script table methods may be called.
+	 * The callbacks are called on the calling thread after the tick, and may call anything.
+	 * @param pool the pool to run scripts on (if null, go() runs scripts in sequence on the calling thread).
+	 * @param chunkSize the amount of scripts that each task runs (at least 1).
+	 * @since 2.3.0
+	 */
+	public void setParallelTick(ForkJoinPool pool, int chunkSize)
+	{
+		checkParallelTick();
+		synchronized (this)
+		{
+			tickPool = pool;
+			tickChunkSize = Math.max(chunkSize, 1);
+			if (pool == null)
+			{
+				tickInterpreters = NO_INTERPRETERS;
+				tickOutcomes = new int[0];
+				tickErrors = new Throwable[0];
+			}
+		}
+	}
+	
+	/**
+	 * Returns true if go() runs scripts in parallel.
+	 * @see #setParallelTick(ForkJoinPool, int)
+	 * @since 2.3.0
+	 */
+	public boolean isParallelTick()
+	{
+		return tickPool != null;
 	}
 	
 	/**
@@ -77,16 +284,67 @@ public class SimpleScriptEngine
 	 * If the type is already bound to a particular interpreter, its binding
 	 * is replaced by the new class.
 	 * The interpreter class to use MUST contain a constructor that takes
-	 * a SimpleScript as an argument.
+	 * a SimpleScript as an argument. The constructor is looked up once, on first use.
 	 * @param type the script type to link to a particular interpreter.
 	 * @param interpClass the interpreter class type to use (if null, it will be unbound from the type).
+	 * @see #setInterpreterFactory(String, SimpleScriptInterpreterFactory)
 	 */
 	public void setInterpreterType(String type, Class<? extends SimpleScriptInterpreter> interpClass)
 	{
-		if (interpClass == null)
-			scriptInterpreterTable.removeUsingKey(type);
-		else
-			scriptInterpreterTable.put(type, interpClass);
+		checkParallelTick();
+		synchronized (this)
+		{
+			if (interpClass == null)
+				scriptInterpreterTable.removeUsingKey(type);
+			else
+				scriptInterpreterTable.put(type, new InterpreterType(interpClass, null));
+		}
+	}
+	
+	/**
+	 * Sets the factory that creates interpreters for scripts of a certain type,
+	 * like <code>ControlInterpreter::new</code>. Unlike {@link #setInterpreterType(String, Class)}, 
+	 * no reflection is used. If the type is already bound to a particular interpreter, 
+	 * its binding (and pool) is replaced.
+	 * @param type the script type to link to a particular interpreter.
+	 * @param factory the interpreter factory to use (if null, the type is unbound).
+	 * @since 2.3.0
+	 */
+	public void setInterpreterFactory(String type, SimpleScriptInterpreterFactory factory)
+	{
+		checkParallelTick();
+		synchronized (this)
+		{
+			if (factory == null)
+				scriptInterpreterTable.removeUsingKey(type);
+			else
+				scriptInterpreterTable.put(type, new InterpreterType(null, factory));
+		}
+	}
+	
+	/**
+	 * Sets the maximum amount of freed interpreters to keep for reuse, for scripts of a certain type.
+	 * Once a script ends or dies (after {@link #freedScript(SimpleScriptInterpreter)} is called), 
+	 * its interpreter is {@link SimpleScriptInterpreter#reset() reset} and put in the pool, if there is room,
+	 * and later calls to callScript() take interpreters from the pool before creating new ones.
+	 * Hosts must not keep using interpreters after they are freed if their type is pooled.
+	 * <p>
+	 * The pool size is 0 (no pool) by default, and is dropped if the type is bound again.
+	 * @param type the script type.
+	 * @param size the maximum amount of interpreters to keep (0 or less is none).
+	 * @throws IllegalArgumentException if no interpreter is bound to the type.
+	 * @since 2.3.0
+	 */
+	public void setInterpreterPoolSize(String type, int size)
+	{
+		checkParallelTick();
+		synchronized (this)
+		{
+			InterpreterType binding = scriptInterpreterTable.get(type);
+			if (binding == null)
+				throw new IllegalArgumentException("No interpreter is bound to script type \""+type+"\".");
+			binding.setPoolSize(Math.max(size, 0));
+		}
 	}
 	
 	/**
@@ -100,8 +358,9 @@ public class SimpleScriptEngine
 	 * @throws InvocationTargetException if an exception occurs upon the calling of the constructor.
 	 * @throws IllegalAccessException if there is no permission to call the constructor.
 	 * @throws InstantiationException if the class could not be instantiated.
+	 * @throws IllegalStateException if this is called by a script during a parallel tick (see {@link #setParallelTick(ForkJoinPool, int)}).
 	 */
-	public synchronized boolean callScript(String name) throws NoSuchMethodException, 
+	public boolean callScript(String name) throws NoSuchMethodException, 
 		InvocationTargetException, InstantiationException, IllegalAccessException
 	{
 		return callScript(name, null);
@@ -118,61 +377,332 @@ public class SimpleScriptEngine
 	 * @throws InvocationTargetException if an exception occurs upon the calling of the constructor.
 	 * @throws IllegalAccessException if there is no permission to call the constructor.
 	 * @throws InstantiationException if the class could not be instantiated.
+	 * @throws IllegalStateException if this is called by a script during a parallel tick (see {@link #setParallelTick(ForkJoinPool, int)}).
 	 */
-	public synchronized boolean callScript(String name, String startLabel) throws NoSuchMethodException, 
+	public boolean callScript(String name, String startLabel) throws NoSuchMethodException, 
 		InvocationTargetException, InstantiationException, IllegalAccessException
 	{
-		SimpleScript script = scriptTable.get(name);
-		if (script == null) return false;
+		checkParallelTick();
+		synchronized (this)
+		{
+			SimpleScript script = scriptTable.get(name);
+			if (script == null) return false;
 
-		String type = script.getMetaData(METADATA_KEY);
-		Class<? extends SimpleScriptInterpreter> c = scriptInterpreterTable.get(type);
-		if (c == null) return false;
+			String type = script.getMetaData(METADATA_KEY);
+			InterpreterType binding = scriptInterpreterTable.get(type);
+			if (binding == null) return false;
 		
-		Constructor<? extends SimpleScriptInterpreter> constr = c.getConstructor(SimpleScript.class);
-		SimpleScriptInterpreter interp = constr.newInstance(script);
-		if (startLabel != null)
-			interp.setNextCommandIndexByLabel(startLabel);
-		activeInterpreters.add(interp);
-		instantiatedScript(interp);
-		return true;
+			SimpleScriptInterpreter interp = binding.create(script);
+			if (startLabel != null)
+				interp.setNextCommandIndexByLabel(startLabel);
+			activeInterpreters.add(interp);
+			instantiatedScript(interp);
+			return true;
+		}
 	}
 	
 	/**
 	 * Calls go() on each active script.
 	 */
-	public synchronized void go()
+	public void go()
+	{
+		checkParallelTick();
+		synchronized (this)
+		{
+			go(0, 0L, false);
+		}
+	}
+	
+	/**
+	 * Calls go() on each active script, with a budget of steps for each one.
+	 * Scripts that run out of steps are preempted, carry on where they left off 
+	 * on the next call, and are moved to the back of the list of active scripts.
+	 * @param maxSteps the maximum amount of steps for each script (0 or less is no limit).
+	 * @see SimpleScriptInterpreter#go(int)
+	 * @since 2.3.0
+	 */
+	public void go(int maxSteps)
+	{
+		checkParallelTick();
+		synchronized (this)
+		{
+			go(maxSteps, 0L, false);
+		}
+	}
+	
+	/**
+	 * Calls go() on each active script until a deadline passes. 
+	 * Scripts that are still running at the deadline are preempted, carry on where they left off
+	 * on the next call, and are moved to the back of the list of active scripts, so that one 
+	 * heavy script does not starve the others. Each script takes at least one step.
+	 * @param deadline the deadline, in {@link System#nanoTime()} time.
+	 * @see SimpleScriptInterpreter#goUntil(long)
+	 * @since 2.3.0
+	 */
+	public void goUntil(long deadline)
+	{
+		checkParallelTick();
+		synchronized (this)
+		{
+			go(0, deadline, true);
+		}
+	}
+	
+	/**
+	 * Calls go() on each active script until a deadline passes, with a budget of steps for each one.
+	 * @param maxSteps the maximum amount of steps for each script (0 or less is no limit).
+	 * @param deadline the deadline, in {@link System#nanoTime()} time.
+	 * @see #go(int)
+	 * @see #goUntil(long)
+	 * @since 2.3.0
+	 */
+	public void goUntil(int maxSteps, long deadline)
+	{
+		checkParallelTick();
+		synchronized (this)
+		{
+			go(maxSteps, deadline, true);
+		}
+	}
+	
+	/**
+	 * Returns the earliest time that a waiting script wakes up.
+	 * Scripts that are waiting until a certain time (see {@link SimpleScriptInterpreter#getWaitDeadline()})
+	 * are set aside, and are not touched by go() until then. If there are no other active scripts,
+	 * nothing happens on go() before this time, so a host can sleep until then.
+	 * @return the time in milliseconds (see {@link #getTime()}), or -1 if no scripts are waiting.
+	 * @since 2.3.0
+	 */
+	public long getNextWakeTime()
+	{
+		checkParallelTick();
+		synchronized (this)
+		{
+			return waitingInterpreters.getNextDeadline();
+		}
+	}
+	
+	/**
+	 * Returns the amount of active scripts that go() runs, not counting the waiting ones.
+	 * @since 2.3.0
+	 */
+	public int getRunnableScriptCount()
+	{
+		checkParallelTick();
+		synchronized (this)
+		{
+			return activeInterpreters.size();
+		}
+	}
+	
+	/**
+	 * Returns the amount of active scripts that are waiting until a certain time.
+	 * @see #getNextWakeTime()
+	 * @since 2.3.0
+	 */
+	public int getWaitingScriptCount()
 	{
+		checkParallelTick();
+		synchronized (this)
+		{
+			return waitingInterpreters.size();
+		}
+	}
+	
+	/** Calls go() on each active script, within a budget. */
+	private void go(int maxSteps, long deadline, boolean timed)
+	{
+		long now = getTime();
+		if (waitingInterpreters.size() > 0)
+			waitingInterpreters.advance(now, activeInterpreters);
+		
 		// don't bother doing all that crap if it's empty.
 		if (activeInterpreters.isEmpty())
 			return;
 		
+		if (tickPool != null && activeInterpreters.size() > tickChunkSize)
+		{
+			goParallel(now, maxSteps, deadline, timed);
+			return;
+		}
+		
+		Queue<SimpleScriptInterpreter> preempted = null;
 		Iterator<SimpleScriptInterpreter> it = activeInterpreters.iterator();
 		SimpleScriptInterpreter interp = null;
 		while (it.hasNext())
 		{
 			interp = it.next();
 			try {
-				interp.go();
-				if (!interp.isActive())
+				switch (tick(interp, now, maxSteps, deadline, timed))
 				{
-					freedScript(interp);
-					it.remove();
+					case TICK_PREEMPTED:
+						if (preempted == null)
+							preempted = new Queue<SimpleScriptInterpreter>();
+						preempted.add(interp);
+						it.remove();
+						break;
+					case TICK_FREED:
+						free(interp);
+						it.remove();
+						break;
+					case TICK_WAITING:
+						waitingInterpreters.add(interp, interp.getWaitDeadline());
+						it.remove();
+						break;
 				}
-			} catch (SimpleScriptRunawayException exception) {
-				errorRunawayScript(exception);
-				freedScript(interp);
-				it.remove();
-			} catch (SimpleScriptRuntimeException exception) {
-				errorRuntimeScript(exception);
-				freedScript(interp);
-				it.remove();
 			} catch (Exception exception) {
-				errorScript(exception);
-				freedScript(interp);
+				error(exception);
+				free(interp);
 				it.remove();
 			}
 		}
+		
+		if (preempted != null)
+			for (SimpleScriptInterpreter p : preempted)
+				activeInterpreters.add(p);
+	}
+	
+	/** 
+	 * Calls go() on each active script on the tick pool, then handles what became 
+	 * of each one (and calls the callbacks) in order, on this thread. 
+	 */
+	private void goParallel(long now, int maxSteps, long deadline, boolean timed)
+	{
+		int count = activeInterpreters.size();
+		if (tickInterpreters.length < count)
+		{
+			tickInterpreters = new SimpleScriptInterpreter[count];
+			tickOutcomes = new int[count];
+			tickErrors = new Throwable[count];
+		}
+		
+		// the active scripts are left in place until the tick is done, in case it fails.
+		try {
+			int n = 0;
+			for (SimpleScriptInterpreter interp : activeInterpreters)
+			{
+				// build what shared scripts build as needed here, before it can be built on many threads at once.
+				interp.prepareScripts();
+				tickInterpreters[n++] = interp;
+			}
+			tickThread = Thread.currentThread();
+			tickPool.invoke(new TickTask(0, count, now, maxSteps, deadline, timed));
+		} catch (Throwable throwable) {
+			clearTick(count);
+			throw throwable;
+		} finally {
+			tickThread = null;
+		}
+		
+		activeInterpreters.clear();
+		Queue<SimpleScriptInterpreter> preempted = null;
+		Throwable thrown = null;
+		int i = 0;
+		try {
+			for (; i < count; i++)
+			{
+				SimpleScriptInterpreter interp = tickInterpreters[i];
+				switch (tickOutcomes[i])
+				{
+					case TICK_RUNNING:
+						activeInterpreters.add(interp);
+						break;
+					case TICK_PREEMPTED:
+						if (preempted == null)
+							preempted = new Queue<SimpleScriptInterpreter>();
+						preempted.add(interp);
+						break;
+					case TICK_FREED:
+						free(interp);
+						break;
+					case TICK_WAITING:
+						waitingInterpreters.add(interp, interp.getWaitDeadline());
+						break;
+					case TICK_ERROR:
+						error((Exception)tickErrors[i]);
+						free(interp);
+						break;
+					case TICK_THROWN:
+						activeInterpreters.add(interp);
+						if (thrown == null)
+							thrown = tickErrors[i];
+						break;
+				}
+			}
+		} finally {
+			// if a callback throws, the scripts that are left stay active, like in a sequential go().
+			for (; i < count; i++)
+				activeInterpreters.add(tickInterpreters[i]);
+			if (preempted != null)
+				for (SimpleScriptInterpreter p : preempted)
+					activeInterpreters.add(p);
+			clearTick(count);
+		}
+		
+		// like in a sequential go(), errors are thrown to the caller.
+		if (thrown instanceof Error)
+			throw (Error)thrown;
+		else if (thrown != null)
+			throw new RuntimeException(thrown);
+	}
+	
+	/** Drops the references to the scripts in a parallel tick. */
+	private void clearTick(int count)
+	{
+		Arrays.fill(tickInterpreters, 0, count, null);
+		Arrays.fill(tickErrors, 0, count, null);
+	}
+	
+	/** 
+	 * Throws an exception if the current thread is running scripts in a parallel tick,
+	 * since waiting on the engine's lock would deadlock. 
+	 */
+	private void checkParallelTick()
+	{
+		Thread thread = tickThread;
+		if (thread == null)
+			return;
+		Thread current = Thread.currentThread();
+		if (current == thread || (current instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread)current).getPool() == tickPool))
+			throw new IllegalStateException("The engine cannot be called by scripts during a parallel tick.");
+	}
+	
+	/** Calls go() on one script for a tick, and returns what became of it. */
+	private static int tick(SimpleScriptInterpreter interp, long now, int maxSteps, long deadline, boolean timed)
+	{
+		interp.setTime(now);
+		if (timed || maxSteps > 0)
+		{
+			if (interp.go(maxSteps, deadline, timed))
+				return TICK_PREEMPTED;
+		}
+		else
+			interp.go();
+		
+		if (!interp.isActive())
+			return TICK_FREED;
+		else if (interp.getWaitDeadline() > now)
+			return TICK_WAITING;
+		return TICK_RUNNING;
+	}
+	
+	/** Calls the callback for an exception that killed a script. */
+	private void error(Exception exception)
+	{
+		if (exception instanceof SimpleScriptRunawayException)
+			errorRunawayScript((SimpleScriptRunawayException)exception);
+		else if (exception instanceof SimpleScriptRuntimeException)
+			errorRuntimeScript((SimpleScriptRuntimeException)exception);
+		else
+			errorScript(exception);
+	}
+	
+	/** Frees an interpreter, and puts it back in its type's pool, if there is room. */
+	private void free(SimpleScriptInterpreter interp)
+	{
+		freedScript(interp);
+		if (interp.engineType != null)
+			interp.engineType.release(interp);
 	}
 	
 	/**
@@ -222,4 +752,130 @@ public class SimpleScriptEngine
 	}
 	
 	
+	/** Runs a span of the scripts in a parallel tick, splitting it up if it is bigger than a chunk. */
+	private final class TickTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private int start;
+		private int end;
+		private long now;
+		private int maxSteps;
+		private long deadline;
+		private boolean timed;
+		
+		TickTask(int start, int end, long now, int maxSteps, long deadline, boolean timed)
+		{
+			this.start = start;
+			this.end = end;
+			this.now = now;
+			this.maxSteps = maxSteps;
+			this.deadline = deadline;
+			this.timed = timed;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if (end - start <= tickChunkSize)
+			{
+				for (int i = start; i < end; i++)
+				{
+					try {
+						tickOutcomes[i] = tick(tickInterpreters[i], now, maxSteps, deadline, timed);
+					} catch (Exception exception) {
+						tickOutcomes[i] = TICK_ERROR;
+						tickErrors[i] = exception;
+					} catch (Throwable throwable) {
+						tickOutcomes[i] = TICK_THROWN;
+						tickErrors[i] = throwable;
+					}
+				}
+			}
+			else
+			{
+				int mid = (start + end) >>> 1;
+				invokeAll(
+					new TickTask(start, mid, now, maxSteps, deadline, timed), 
+					new TickTask(mid, end, now, maxSteps, deadline, timed)
+				);
+			}
+		}
+	}
+	
+	/** 
+	 * An interpreter type binding: how to create interpreters for the type,
+	 * and the pool of freed ones to reuse. 
+	 */
+	static final class InterpreterType
+	{
+		/** No pooled interpreters. */
+		private static final SimpleScriptInterpreter[] NO_INTERPRETERS = new SimpleScriptInterpreter[0];
+		
+		/** The interpreter class, if bound by class. */
+		private Class<? extends SimpleScriptInterpreter> interpClass;
+		/** The interpreter class's constructor, once it is looked up. */
+		private Constructor<? extends SimpleScriptInterpreter> constructor;
+		/** The interpreter factory, if bound by factory. */
+		private SimpleScriptInterpreterFactory factory;
+		/** Freed interpreters, ready for reuse. */
+		private SimpleScriptInterpreter[] pool;
+		/** The amount of interpreters in the pool. */
+		private int poolCount;
+		
+		InterpreterType(Class<? extends SimpleScriptInterpreter> interpClass, SimpleScriptInterpreterFactory factory)
+		{
+			this.interpClass = interpClass;
+			this.constructor = null;
+			this.factory = factory;
+			this.pool = NO_INTERPRETERS;
+			this.poolCount = 0;
+		}
+		
+		/** Sets the pool size, dropping interpreters that no longer fit. */
+		void setPoolSize(int size)
+		{
+			SimpleScriptInterpreter[] newPool = size > 0 ? new SimpleScriptInterpreter[size] : NO_INTERPRETERS;
+			poolCount = Math.min(poolCount, size);
+			System.arraycopy(pool, 0, newPool, 0, poolCount);
+			pool = newPool;
+		}
+		
+		/** Takes an interpreter from the pool, or creates one, set to start a script. */
+		SimpleScriptInterpreter create(SimpleScript script) throws NoSuchMethodException, 
+			InvocationTargetException, InstantiationException, IllegalAccessException
+		{
+			SimpleScriptInterpreter out;
+			if (poolCount > 0)
+			{
+				out = pool[--poolCount];
+				pool[poolCount] = null;
+				out.setScript(script);
+				return out;
+			}
+			
+			if (factory != null)
+				out = factory.create(script);
+			else
+			{
+				if (constructor == null)
+					constructor = interpClass.getConstructor(SimpleScript.class);
+				out = constructor.newInstance(script);
+			}
+			out.engineType = this;
+			return out;
+		}
+		
+		/** Resets an interpreter and puts it in the pool, if there is room. */
+		void release(SimpleScriptInterpreter interp)
+		{
+			if (poolCount < pool.length)
+			{
+				interp.reset();
+				pool[poolCount++] = interp;
+			}
+		}
+	}
+	
+
 }
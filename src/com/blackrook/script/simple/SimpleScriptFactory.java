@@ -7,10 +7,19 @@
  ******************************************************************************/
 package com.blackrook.script.simple;
 
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 import com.blackrook.commons.linkedlist.Queue;
 import com.blackrook.lang.Lexer;
@@ -69,6 +78,37 @@ import com.blackrook.script.simple.SimpleScriptDescriptor.Entry;
  */
 public final class SimpleScriptFactory
 {
+	/** Binary script header. */
+	private static final byte[] BINARY_MAGIC = {'B', 'R', 'S', 'S'};
+	/** Binary script format version. */
+	private static final int BINARY_VERSION = 1;
+	
+	/** The last descriptors that a script was read with, if there were several, merged. */
+	private static volatile SimpleScriptDescriptorSet mergedDescriptors = null;
+
+	/**
+	 * What scripts read from bytes keep of the source lines of their commands.
+	 * Line numbers are always kept.
+	 * @since 2.3.0
+	 * @see SimpleScript#getLine(int)
+	 */
+	public static enum LineMode
+	{
+		/** Each command keeps its source line. */
+		KEEP,
+		/** 
+		 * Commands do not keep their source lines: they are read out of the source data 
+		 * (which the script holds on to) as they are asked for.
+		 */
+		SOURCE,
+		/** 
+		 * Commands do not keep their source lines, and the source data is not held on to. 
+		 * Lines can be read from a line table or source file afterward by setting the script's 
+		 * line source (see {@link SimpleScript#setLineSource(SimpleScriptLineSource)}).
+		 */
+		NONE;
+	}
+	
 	// Not instantiable.
 	private SimpleScriptFactory() {}
 
@@ -78,20 +118,260 @@ public final class SimpleScriptFactory
 	 * Does not close the InputStream at the end of the read.
 	 * <p>
 	 * If no descriptors are supplied, it will blindly accept anything as a valid command.
-	 * If at least one descriptor is supplied, it rigidly checks for valid commands.
+	 * If at least one descriptor is supplied, it rigidly checks for valid commands,
+	 * and links label arguments to their labels (see {@link SimpleScript#linkLabels(SimpleScriptDescriptor...)}).
+	 * Several descriptors are merged into one {@link SimpleScriptDescriptorSet}, so each command is 
+	 * looked up once. The merged set is kept for the next script read with the same descriptors, 
+	 * until one of them is changed.
+	 * <p>
+	 * This can be called by many threads at once: each call uses its own lexer and parser,
+	 * and the lexer kernel and descriptors that they share are only read from.
 	 * @param streamName the name of stream that is being read.
 	 * @param in the InputStream to read from.
 	 * @param descriptors the command descriptors to use, if any.
 	 * @throws IOException if an error occurs during the read.
 	 * @throws SimpleScriptParseException if a parsing error occurs.
+	 * @throws IllegalArgumentException if two of the descriptors describe the same command differently.
 	 */
 	public static SimpleScript readScript(String streamName, InputStream in, SimpleScriptDescriptor ... descriptors) throws IOException
 	{
+		descriptors = mergeDescriptors(descriptors);
 		SLexer lexer = new SLexer(streamName, new InputStreamReader(in, "UTF8"));
 		SParser parser = new SParser(lexer, descriptors);
-		return parser.getScript();
+		return finishScript(parser.getScript(), descriptors);
+	}
+	
+	/**
+	 * Reads SimpleScript UTF-8 text data and turns it into a SimpleScript.
+	 * This is the same as {@link #readScript(String, ByteBuffer, SimpleScriptDescriptor...)},
+	 * using the whole array.
+	 * @param streamName the name of the data that is being read.
+	 * @param data the script data.
+	 * @param descriptors the command descriptors to use, if any.
+	 * @throws SimpleScriptParseException if a parsing error occurs.
+	 * @throws IllegalArgumentException if two of the descriptors describe the same command differently.
+	 * @since 2.3.0
+	 */
+	public static SimpleScript readScript(String streamName, byte[] data, SimpleScriptDescriptor ... descriptors)
+	{
+		return readScript(streamName, ByteBuffer.wrap(data), LineMode.KEEP, descriptors);
+	}
+	
+	/**
+	 * Reads SimpleScript UTF-8 text data and turns it into a SimpleScript.
+	 * This is the same as {@link #readScript(String, ByteBuffer, LineMode, SimpleScriptDescriptor...)},
+	 * using the whole array.
+	 * @param streamName the name of the data that is being read.
+	 * @param data the script data. If the line mode is {@link LineMode#SOURCE}, the script holds on to this.
+	 * @param lineMode what the script keeps of its source lines.
+	 * @param descriptors the command descriptors to use, if any.
+	 * @throws SimpleScriptParseException if a parsing error occurs.
+	 * @throws IllegalArgumentException if two of the descriptors describe the same command differently.
+	 * @since 2.3.0
+	 */
+	public static SimpleScript readScript(String streamName, byte[] data, LineMode lineMode, SimpleScriptDescriptor ... descriptors)
+	{
+		return readScript(streamName, ByteBuffer.wrap(data), lineMode, descriptors);
+	}
+	
+	/**
+	 * Reads SimpleScript UTF-8 text data, from a buffer's position to its limit, and turns it into a SimpleScript.
+	 * The buffer's position and limit are not changed.
+	 * <p>
+	 * This reads the same way as {@link #readScript(String, InputStream, SimpleScriptDescriptor...)}, but
+	 * scans the bytes directly instead of decoding them to characters first, and only creates strings 
+	 * for the names, arguments, and lines that are kept in the script. String literals may contain
+	 * the escapes <code>\n \t \r \b \f \0</code>, and a backslash before any other character is that character.
+	 * <p>
+	 * This can be called by many threads at once.
+	 * @param streamName the name of the data that is being read.
+	 * @param data the script data.
+	 * @param descriptors the command descriptors to use, if any.
+	 * @throws SimpleScriptParseException if a parsing error occurs.
+	 * @throws IllegalArgumentException if two of the descriptors describe the same command differently.
+	 * @since 2.3.0
+	 */
+	public static SimpleScript readScript(String streamName, ByteBuffer data, SimpleScriptDescriptor ... descriptors)
+	{
+		return readScript(streamName, data, LineMode.KEEP, descriptors);
+	}
+	
+	/**
+	 * Reads SimpleScript UTF-8 text data, from a buffer's position to its limit, and turns it into a SimpleScript.
+	 * This is the same as {@link #readScript(String, ByteBuffer, SimpleScriptDescriptor...)}, but lets the
+	 * caller choose what the script keeps of its source lines.
+	 * @param streamName the name of the data that is being read.
+	 * @param data the script data. If the line mode is {@link LineMode#SOURCE}, the script holds on to this,
+	 * 		and its contents should not be changed afterward.
+	 * @param lineMode what the script keeps of its source lines.
+	 * @param descriptors the command descriptors to use, if any.
+	 * @throws SimpleScriptParseException if a parsing error occurs.
+	 * @throws IllegalArgumentException if two of the descriptors describe the same command differently.
+	 * @since 2.3.0
+	 */
+	public static SimpleScript readScript(String streamName, ByteBuffer data, LineMode lineMode, SimpleScriptDescriptor ... descriptors)
+	{
+		descriptors = mergeDescriptors(descriptors);
+		SimpleScript script = new SimpleScriptByteReader(streamName, data, lineMode == LineMode.KEEP, descriptors).read();
+		if (lineMode == LineMode.SOURCE)
+			script.setLineSource(new SimpleScriptSourceBuffer(data));
+		return finishScript(script, descriptors);
 	}
 	
+	/** 
+	 * Returns the descriptors to read a script with: if there are several, they are merged 
+	 * into one set, which is kept for the next script read with the same descriptors.
+	 */
+	private static SimpleScriptDescriptor[] mergeDescriptors(SimpleScriptDescriptor[] descriptors)
+	{
+		if (descriptors.length < 2)
+			return descriptors;
+		SimpleScriptDescriptorSet set = mergedDescriptors;
+		if (set == null || !set.isMergeOf(descriptors))
+			mergedDescriptors = set = new SimpleScriptDescriptorSet(descriptors);
+		return new SimpleScriptDescriptor[]{set};
+	}
+	
+	/** Trims a read script, and links its labels if there are descriptors. */
+	private static SimpleScript finishScript(SimpleScript script, SimpleScriptDescriptor[] descriptors)
+	{
+		script.trim();
+		if (descriptors.length > 0)
+			script.linkLabels(descriptors);
+		return script;
+	}
+	
+	/**
+	 * Writes a SimpleScript to an OutputStream in binary form, so that it can be
+	 * read by {@link #readBinaryScript(InputStream)} without being parsed again.
+	 * Everything about the script is written except its resolved opcodes,
+	 * which are resolved again by the interpreters that use it.
+	 * Does not close the OutputStream at the end of the write.
+	 * @param out the OutputStream to write to.
+	 * @param script the script to write.
+	 * @throws IOException if an error occurs during the write.
+	 * @since 2.3.0
+	 */
+	public static void writeBinaryScript(OutputStream out, SimpleScript script) throws IOException
+	{
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+		dos.write(BINARY_MAGIC);
+		dos.writeShort(BINARY_VERSION);
+		script.writeData(dos);
+		dos.flush();
+	}
+
+	/**
+	 * Reads a SimpleScript written by {@link #writeBinaryScript(OutputStream, SimpleScript)}.
+	 * Scripts written with descriptors have their labels linked already.
+	 * Does not close the InputStream at the end of the read.
+	 * @param in the InputStream to read from.
+	 * @return the script that was read.
+	 * @throws IOException if an error occurs during the read, or the data is not 
+	 * 		a binary script of a version that this can read.
+	 * @since 2.3.0
+	 */
+	public static SimpleScript readBinaryScript(InputStream in) throws IOException
+	{
+		DataInputStream dis = new DataInputStream(in);
+		byte[] magic = new byte[BINARY_MAGIC.length];
+		dis.readFully(magic);
+		if (!Arrays.equals(magic, BINARY_MAGIC))
+			throw new IOException("Not a binary SimpleScript.");
+		int version = dis.readUnsignedShort();
+		if (version != BINARY_VERSION)
+			throw new IOException("Unsupported binary SimpleScript version: "+version);
+		return SimpleScript.readData(dis);
+	}
+
+	/**
+	 * Writes a SimpleScript as a script image, which can be mapped into memory and run
+	 * in place by {@link #mapScriptImage(File)} or a {@link SimpleScriptImage}.
+	 * Does not close the OutputStream at the end of the write.
+	 * @param out the OutputStream to write to.
+	 * @param script the script to write.
+	 * @throws IOException if an error occurs during the write.
+	 * @since 2.3.0
+	 */
+	public static void writeScriptImage(OutputStream out, SimpleScript script) throws IOException
+	{
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+		script.writeImage(dos);
+		dos.flush();
+	}
+
+	/**
+	 * Maps a script image file written by {@link #writeScriptImage(OutputStream, SimpleScript)}
+	 * into memory, read-only, and returns a script that reads from it in place.
+	 * The file should not be changed while the script is in use.
+	 * @param file the image file.
+	 * @return the script.
+	 * @throws IOException if the file cannot be mapped, or it is not a script image of a version that this can read.
+	 * @since 2.3.0
+	 */
+	public static SimpleScriptImage mapScriptImage(File file) throws IOException
+	{
+		return new SimpleScriptImage(mapFile(file));
+	}
+
+	/**
+	 * Writes the source lines of a SimpleScript's commands as a line table, so that the
+	 * script can discard them (see {@link SimpleScript#stripLines()}) and read them from
+	 * the table as they are asked for, with {@link #mapLineTable(File)}.
+	 * Does not close the OutputStream at the end of the write.
+	 * @param out the OutputStream to write to.
+	 * @param script the script to write the lines of.
+	 * @throws IOException if an error occurs during the write.
+	 * @since 2.3.0
+	 */
+	public static void writeLineTable(OutputStream out, SimpleScript script) throws IOException
+	{
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+		script.writeLineTable(dos);
+		dos.flush();
+	}
+
+	/**
+	 * Maps a line table file written by {@link #writeLineTable(OutputStream, SimpleScript)}
+	 * into memory, read-only, for use as a script's line source.
+	 * @param file the line table file.
+	 * @return the line source.
+	 * @throws IOException if the file cannot be mapped, or it is not a line table of a version that this can read.
+	 * @see SimpleScript#setLineSource(SimpleScriptLineSource)
+	 * @since 2.3.0
+	 */
+	public static SimpleScriptLineSource mapLineTable(File file) throws IOException
+	{
+		return new SimpleScriptLineTable(mapFile(file));
+	}
+
+	/**
+	 * Maps a script's UTF-8 source file into memory, read-only, for use as the script's line source.
+	 * Lines are found in the file the first time that one is asked for.
+	 * @param file the script source file.
+	 * @return the line source.
+	 * @throws IOException if the file cannot be mapped.
+	 * @see SimpleScript#setLineSource(SimpleScriptLineSource)
+	 * @since 2.3.0
+	 */
+	public static SimpleScriptLineSource mapSourceLines(File file) throws IOException
+	{
+		return new SimpleScriptSourceBuffer(mapFile(file));
+	}
+
+	/** Maps a whole file into memory, read-only. */
+	private static ByteBuffer mapFile(File file) throws IOException
+	{
+		FileChannel channel = null;
+		try {
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			// the mapping stays valid after the channel is closed.
+			if (channel != null) channel.close();
+		}
+	}
+
 	private static class SKernel extends LexerKernel
 	{
 		public static final int TYPE_COMMENT = 0;
@@ -111,6 +391,13 @@ public final class SimpleScriptFactory
 		}
 	}
 	
+	/** 
+	 * The lexer kernel shared by all script lexers.
+	 * It is only set up in its constructor, and lexers only read from it, 
+	 * so it is safe to share among threads (see ParseConcurrencyTest in the tests).
+	 * Scripts read from bytes, like the ones read by the {@link SimpleScriptLoader}, 
+	 * do not use it: they are read by the {@link SimpleScriptByteReader}.
+	 */
 	private static final SKernel KERNEL = new SKernel();
 
 	/** The lexer that reads script text. */
@@ -393,6 +680,9 @@ public final class SimpleScriptFactory
 		/** Checks the argument type. */
 		protected boolean checkArgument()
 		{
+			if (currentCommandEntry == null)
+				return true;
+			
 			int type = currentToken().getType();
 			int aIndex = currentArguments.size();
 			Type[] aTypes = currentCommandEntry.getArgumentTypes();
@@ -404,27 +694,47 @@ public final class SimpleScriptFactory
 			{
 				case INTEGER:
 					if (type != SKernel.TYPE_NUMBER)
+					{
 						addErrorMessage("Expected integer numeric argument for command '"+currentCommand+"'.");
+						return false;
+					}
 					else
 					{
 						try {
 							Long.parseLong(currentToken().getLexeme());
 						} catch (NumberFormatException e) {
 							addErrorMessage("Expected integer numeric argument for command '"+currentCommand+"'.");
+							return false;
 						}
 					}
 					break;
 				case NUMBER:
 					if (type != SKernel.TYPE_NUMBER)
+					{
 						addErrorMessage("Expected numeric argument for command '"+currentCommand+"'.");
+						return false;
+					}
 					break;
 				case IDENTIFIER:
 					if (type != SKernel.TYPE_IDENTIFIER)
+					{
 						addErrorMessage("Expected identifier argument for command '"+currentCommand+"'.");
+						return false;
+					}
+					break;
+				case LABEL:
+					if (type != SKernel.TYPE_IDENTIFIER)
+					{
+						addErrorMessage("Expected label argument for command '"+currentCommand+"'.");
+						return false;
+					}
 					break;
 				case STRING:
 					if (type != SKernel.TYPE_STRING)
+					{
 						addErrorMessage("Expected string argument for command '"+currentCommand+"'.");
+						return false;
+					}
 					break;
 				default:
 					addErrorMessage("An internal error has occurred. You should not even be seeing this.");					
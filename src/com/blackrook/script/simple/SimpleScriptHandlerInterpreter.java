@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.simple;
+
+/**
+ * An interpreter that executes commands with the {@link SimpleScriptCommandHandler}s
+ * in a {@link SimpleScriptHandlerRegistry}, so that command sets can be put together 
+ * without writing an interpreter for them.
+ * <p>
+ * Each script is bound to the registry when it is first executed, and again if it is changed (see {@link SimpleScriptHandlerRegistry#bind(SimpleScript)}),
+ * so each step is a call to the command's handler, without looking up its name.
+ * Commands that have no handler are passed to {@link #executeCommand(Command)}, which returns false
+ * unless a subclass overrides it.
+ * @author Matthew Tropiano
+ * @since 2.3.0
+ */
+public class SimpleScriptHandlerInterpreter extends SimpleScriptInterpreter
+{
+	/** The handler registry. */
+	protected SimpleScriptHandlerRegistry registry;
+	
+	/** The script that the handlers are bound to. */
+	private SimpleScript boundScript;
+	/** The bound handlers, parallel to the bound script's commands. */
+	private SimpleScriptCommandHandler[] boundHandlers;
+	/** The registry's change count when the handlers were bound. */
+	private int boundChangeCount;
+	/** The bound script's modification count when the handlers were bound. */
+	private int boundModificationCount;
+	
+	/**
+	 * Creates a new interpreter with no script.
+	 * @param registry the registry of command handlers.
+	 */
+	public SimpleScriptHandlerInterpreter(SimpleScriptHandlerRegistry registry)
+	{
+		super();
+		this.registry = registry;
+		this.boundScript = null;
+		this.boundHandlers = null;
+		this.boundChangeCount = 0;
+		this.boundModificationCount = 0;
+	}
+	
+	/**
+	 * Creates a new interpreter.
+	 * @param registry the registry of command handlers.
+	 * @param script the script to start the interpreter with.
+	 */
+	public SimpleScriptHandlerInterpreter(SimpleScriptHandlerRegistry registry, SimpleScript script)
+	{
+		this(registry);
+		setScript(script);
+	}
+	
+	/**
+	 * Returns the registry of command handlers.
+	 */
+	public SimpleScriptHandlerRegistry getRegistry()
+	{
+		return registry;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This is only called with commands that have no handler, and returns false.
+	 * Subclasses can override this to execute them.
+	 */
+	@Override
+	public boolean executeCommand(Command command)
+	{
+		return false;
+	}
+	
+	@Override
+	protected boolean executeCommand(SimpleScript script, int index)
+	{
+		SimpleScriptCommandHandler[] handlers = boundHandlers;
+		if (script != boundScript || boundModificationCount != script.getModificationCount() || boundChangeCount != registry.changeCount)
+		{
+			boundChangeCount = registry.changeCount;
+			boundModificationCount = script.getModificationCount();
+			boundHandlers = handlers = registry.bind(script);
+			boundScript = script;
+		}
+		
+		SimpleScriptCommandHandler handler = handlers[index];
+		if (handler == null)
+			return executeCommand(script.getCommand(index));
+		handler.execute(this, script, index);
+		return true;
+	}
+	
+}
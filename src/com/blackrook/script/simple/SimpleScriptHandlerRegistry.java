@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.simple;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.blackrook.commons.hash.CaseInsensitiveHashMap;
+
+/**
+ * A set of {@link SimpleScriptCommandHandler}s, by command name, for {@link SimpleScriptHandlerInterpreter}s.
+ * Command sets can be put together from other registries, without subclassing an interpreter.
+ * <p>
+ * Scripts are bound to a registry once: each command gets its handler in an array parallel 
+ * to the script's commands, which is cached until the script is no longer referenced, so 
+ * interpreters never look up command names while running. Changing the registry drops the
+ * cached bindings, and scripts that are changed after they are bound are bound again.
+ * <p>
+ * Registries are thread-safe, and can be shared by many interpreters.
+ * @author Matthew Tropiano
+ * @since 2.3.0
+ */
+public class SimpleScriptHandlerRegistry
+{
+	/** Handlers, by command name. */
+	private CaseInsensitiveHashMap<SimpleScriptCommandHandler> handlerTable;
+	/** Cache of bound scripts. */
+	private Map<SimpleScript, Binding> bindingCache;
+	/** Amount of changes made to this registry, so interpreters know to bind their script again. */
+	volatile int changeCount;
+
+	/**
+	 * Creates a new, empty registry.
+	 */
+	public SimpleScriptHandlerRegistry()
+	{
+		handlerTable = new CaseInsensitiveHashMap<SimpleScriptCommandHandler>();
+		bindingCache = new WeakHashMap<SimpleScript, Binding>();
+		changeCount = 0;
+	}
+
+	/**
+	 * Creates a new registry with all of the handlers in other registries.
+	 * @param registries the registries to copy the handlers of, in order (later ones replace earlier ones).
+	 * @see #setHandlers(SimpleScriptHandlerRegistry)
+	 */
+	public SimpleScriptHandlerRegistry(SimpleScriptHandlerRegistry ... registries)
+	{
+		this();
+		for (SimpleScriptHandlerRegistry registry : registries)
+			setHandlers(registry);
+	}
+
+	/**
+	 * Sets the handler for a command.
+	 * Command names are NOT case-sensitive.
+	 * If the command already has a handler, it is replaced.
+	 * If the handler is null, the command's handler is removed.
+	 * @param name the command name.
+	 * @param handler the handler.
+	 */
+	public synchronized void setHandler(String name, SimpleScriptCommandHandler handler)
+	{
+		if (handler == null)
+			handlerTable.removeUsingKey(name);
+		else
+			handlerTable.put(name, handler);
+		changed();
+	}
+
+	/**
+	 * Sets the handlers for all of the commands in another registry, 
+	 * replacing the handlers of commands that have one already.
+	 * @param registry the registry to copy the handlers of.
+	 */
+	public void setHandlers(SimpleScriptHandlerRegistry registry)
+	{
+		CaseInsensitiveHashMap<SimpleScriptCommandHandler> handlers = new CaseInsensitiveHashMap<SimpleScriptCommandHandler>();
+		synchronized (registry)
+		{
+			Iterator<String> it = registry.handlerTable.keyIterator();
+			while (it.hasNext())
+			{
+				String name = it.next();
+				handlers.put(name, registry.handlerTable.get(name));
+			}
+		}
+		synchronized (this)
+		{
+			Iterator<String> it = handlers.keyIterator();
+			while (it.hasNext())
+			{
+				String name = it.next();
+				handlerTable.put(name, handlers.get(name));
+			}
+			changed();
+		}
+	}
+
+	/**
+	 * Gets the handler for a command.
+	 * Command names are NOT case-sensitive.
+	 * @param name the command name.
+	 * @return the handler, or null if the command has no handler.
+	 */
+	public synchronized SimpleScriptCommandHandler getHandler(String name)
+	{
+		return handlerTable.get(name);
+	}
+
+	/**
+	 * Returns the names of the commands that have handlers.
+	 */
+	public synchronized Iterator<String> getCommandNames()
+	{
+		return handlerTable.keyIterator();
+	}
+
+	/**
+	 * Returns the amount of commands that have handlers.
+	 */
+	public synchronized int size()
+	{
+		return handlerTable.size();
+	}
+
+	/**
+	 * Gets the handlers for a script's commands, binding them if they were not bound already,
+	 * or if the script was changed since (see {@link SimpleScript#getModificationCount()}).
+	 * @param script the script.
+	 * @return an array parallel to the script's commands, with null for commands that have no handler.
+	 * This must not be altered.
+	 */
+	public synchronized SimpleScriptCommandHandler[] bind(SimpleScript script)
+	{
+		int modificationCount = script.getModificationCount();
+		Binding binding = bindingCache.get(script);
+		if (binding == null || binding.modificationCount != modificationCount)
+		{
+			SimpleScriptCommandHandler[] handlers = new SimpleScriptCommandHandler[script.getCommandCount()];
+			for (int i = 0; i < handlers.length; i++)
+				handlers[i] = handlerTable.get(script.getCommandName(i));
+			binding = new Binding(handlers, modificationCount);
+			bindingCache.put(script, binding);
+		}
+		return binding.handlers;
+	}
+
+	/** Drops the bound scripts after a change. */
+	private void changed()
+	{
+		bindingCache.clear();
+		changeCount++;
+	}
+
+	/** A script's bound handlers, and the script's modification count when they were bound. */
+	private static final class Binding
+	{
+		private SimpleScriptCommandHandler[] handlers;
+		private int modificationCount;
+		
+		Binding(SimpleScriptCommandHandler[] handlers, int modificationCount)
+		{
+			this.handlers = handlers;
+			this.modificationCount = modificationCount;
+		}
+	}
+
+}
@@ -0,0 +1,434 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.simple;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+import com.blackrook.script.simple.Command.Argument.Type;
+
+/**
+ * A read-only SimpleScript that reads its commands, arguments and constants
+ * straight out of a script image in a {@link ByteBuffer}, usually a file mapped
+ * into memory by {@link SimpleScriptFactory#mapScriptImage(java.io.File)}.
+ * Script images are written by {@link SimpleScriptFactory#writeScriptImage(java.io.OutputStream, SimpleScript)}.
+ * <p>
+ * Interpreters that execute commands by index (like the
+ * {@link com.blackrook.script.simple.control.ControlInterpreter}) run these like any other script.
+ * Only the labels, metadata, identifiers, command opcodes (one per distinct command name, for each command set), and
+ * the string values of constants that have been read are kept on the heap.
+ * Commands returned by {@link #getCommand(int)} are created as they are requested, like any other script.
+ * <p>
+ * Commands and labels cannot be changed. Images of scripts read with descriptors have their labels
+ * linked already.
+ * @author Matthew Tropiano
+ * @since 2.3.0
+ */
+public class SimpleScriptImage extends SimpleScript
+{
+	/** Image header magic number ("BRSI"). */
+	static final int MAGIC = 0x42525349;
+	/** Image format version. */
+	static final int VERSION = 1;
+	/** Image header size in bytes. */
+	static final int HEADER_SIZE = 18 * 4;
+	/** Command record size in bytes. */
+	static final int COMMAND_SIZE = 4 * 4;
+	/** Constant record size in bytes. */
+	static final int CONSTANT_SIZE = 6 * 4 + 8;
+
+	private static final Type[] TYPES = Type.values();
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The image data. */
+	private ByteBuffer image;
+
+	private int imageCommandCount;
+	private int imageArgumentCount;
+	private int imageConstantCount;
+	private int imageNameCount;
+	private boolean imageLabelsLinked;
+
+	private int commandsOffset;
+	private int argumentsOffset;
+	private int constantsOffset;
+	private int namesOffset;
+	private int stringsOffset;
+
+	/** Constant string values, as they are read. */
+	private String[] constantStrings;
+	/** Command names, by name index, as they are read. */
+	private String[] nameStrings;
+
+	/**
+	 * Creates a script from a script image, from the buffer's position to its limit.
+	 * The buffer's position, limit and contents must not be changed afterward.
+	 * @param buffer the buffer that contains the image.
+	 * The image's records and strings are checked against its bounds here, so that a damaged image
+	 * fails now rather than while it runs.
+	 * @throws IOException if the buffer does not contain a script image of a version that this can read,
+	 * 		or the image is damaged.
+	 */
+	public SimpleScriptImage(ByteBuffer buffer) throws IOException
+	{
+		super();
+		image = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+		if (image.capacity() < HEADER_SIZE || image.getInt(0) != MAGIC)
+			throw new IOException("Not a SimpleScript image.");
+		int version = image.getInt(4);
+		if (version != VERSION)
+			throw new IOException("Unsupported SimpleScript image version: "+version);
+
+		imageCommandCount = checkCount(image.getInt(8));
+		imageArgumentCount = checkCount(image.getInt(12));
+		imageConstantCount = checkCount(image.getInt(16));
+		imageNameCount = checkCount(image.getInt(20));
+		int identifierCount = checkCount(image.getInt(24));
+		int labelCount = checkCount(image.getInt(28));
+		int metaCount = checkCount(image.getInt(32));
+		commandsOffset = checkOffset(image.getInt(36), imageCommandCount * COMMAND_SIZE);
+		argumentsOffset = checkOffset(image.getInt(40), imageArgumentCount * 4);
+		constantsOffset = checkOffset(image.getInt(44), imageConstantCount * CONSTANT_SIZE);
+		namesOffset = checkOffset(image.getInt(48), imageNameCount * 4);
+		int identifiersOffset = checkOffset(image.getInt(52), identifierCount * 4);
+		int labelsOffset = checkOffset(image.getInt(56), labelCount * 8);
+		int metaOffset = checkOffset(image.getInt(60), metaCount * 8);
+		stringsOffset = checkOffset(image.getInt(64), 0);
+		imageLabelsLinked = image.getInt(68) != 0;
+
+		constantStrings = new String[imageConstantCount];
+		nameStrings = new String[imageNameCount];
+
+		checkRecords();
+		for (int i = 0; i < identifierCount; i++)
+		{
+			String identifier = readString(checkString(image.getInt(identifiersOffset + i * 4))).intern();
+			identifierList.add(identifier);
+			identifierSlotTable.put(identifier, i);
+		}
+		for (int i = 0; i < labelCount; i++)
+			labelTable.put(readString(checkString(image.getInt(labelsOffset + i * 8))), image.getInt(labelsOffset + i * 8 + 4));
+		for (int i = 0; i < metaCount; i++)
+			metaDataTable.put(readString(checkString(image.getInt(metaOffset + i * 8))), readString(checkString(image.getInt(metaOffset + i * 8 + 4))));
+	}
+
+	/** 
+	 * Checks that the command, argument, constant and name records only refer to 
+	 * records and strings that are in the image, since they are read without checks later. 
+	 */
+	private void checkRecords() throws IOException
+	{
+		for (int i = 0; i < imageNameCount; i++)
+			checkString(image.getInt(namesOffset + i * 4));
+
+		int lastArgument = 0;
+		for (int i = 0; i < imageCommandCount; i++)
+		{
+			int name = nameIndex(i);
+			if (name < 0 || name >= imageNameCount)
+				throw new IOException("Bad SimpleScript image command name index: "+name);
+			int argument = getArgumentOffset(i);
+			if (argument < lastArgument || argument > imageArgumentCount)
+				throw new IOException("Bad SimpleScript image command argument offset: "+argument);
+			lastArgument = argument;
+			int line = image.getInt(commandsOffset + i * COMMAND_SIZE + 12);
+			if (line >= 0)
+				checkString(line);
+		}
+
+		for (int i = 0; i < imageArgumentCount; i++)
+		{
+			int constant = getArgumentConstant(i);
+			if (constant < 0 || constant >= imageConstantCount)
+				throw new IOException("Bad SimpleScript image argument constant: "+constant);
+		}
+
+		for (int i = 0; i < imageConstantCount; i++)
+		{
+			int type = getConstantType(i);
+			if (type < 0 || type >= TYPES.length)
+				throw new IOException("Bad SimpleScript image constant type: "+type);
+			checkString(image.getInt(constantsOffset + i * CONSTANT_SIZE + 4));
+		}
+	}
+
+	/** Checks a count read from the header. */
+	private static int checkCount(int count) throws IOException
+	{
+		if (count < 0)
+			throw new IOException("Bad SimpleScript image count: "+count);
+		return count;
+	}
+
+	/** Checks that a section read from the header is in the image. */
+	private int checkOffset(int offset, int length) throws IOException
+	{
+		if (offset < HEADER_SIZE || length < 0 || offset > image.capacity() - length)
+			throw new IOException("Bad SimpleScript image section offset: "+offset);
+		return offset;
+	}
+
+	/** 
+	 * Checks that a string is in the string section. 
+	 * @return the string offset.
+	 */
+	private int checkString(int offset) throws IOException
+	{
+		int position = stringsOffset + offset;
+		if (offset < 0 || position < stringsOffset || position > image.capacity() - 4)
+			throw new IOException("Bad SimpleScript image string offset: "+offset);
+		int length = image.getInt(position);
+		if (length < 0 || length > image.capacity() - position - 4)
+			throw new IOException("Bad SimpleScript image string length: "+length);
+		return offset;
+	}
+
+	/** Reads a string from the string section (checked when the image was opened). */
+	private String readString(int offset)
+	{
+		int position = stringsOffset + offset;
+		int length = image.getInt(position);
+		byte[] b = new byte[length];
+		for (int i = 0; i < length; i++)
+			b[i] = image.get(position + 4 + i);
+		return new String(b, UTF8);
+	}
+
+	/** Gets a command name by name index. */
+	private String nameString(int name)
+	{
+		String out = nameStrings[name];
+		if (out == null)
+			nameStrings[name] = out = readString(image.getInt(namesOffset + name * 4)).intern();
+		return out;
+	}
+
+	/** Gets a command's name index. */
+	private int nameIndex(int index)
+	{
+		return image.getInt(commandsOffset + index * COMMAND_SIZE);
+	}
+
+	@Override
+	public void setLabel(String label, int index)
+	{
+		throw new UnsupportedOperationException("Script image labels cannot be changed.");
+	}
+
+	@Override
+	public void clearLabel(String label)
+	{
+		throw new UnsupportedOperationException("Script image labels cannot be changed.");
+	}
+
+	@Override
+	public void linkLabels(SimpleScriptDescriptor ... descriptors)
+	{
+		throw new UnsupportedOperationException("Script image labels cannot be changed.");
+	}
+
+	@Override
+	boolean canLinkLabels()
+	{
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @return the opcodes, by name index.
+	 */
+	@Override
+	int[] resolveOpcodeTable(SimpleScriptNameIndex index)
+	{
+		int[] out = new int[imageNameCount];
+		for (int i = 0; i < imageNameCount; i++)
+			out[i] = index.get(nameString(i));
+		return out;
+	}
+
+	@Override
+	public void addCommand(Command command)
+	{
+		throw new UnsupportedOperationException("Script image commands cannot be changed.");
+	}
+
+	@Override
+	public void addCommand(int index, Command command)
+	{
+		throw new UnsupportedOperationException("Script image commands cannot be changed.");
+	}
+
+	@Override
+	void addCommand(String name, int[] constants, int count, String line, int lineNumber)
+	{
+		throw new UnsupportedOperationException("Script image commands cannot be changed.");
+	}
+
+	@Override
+	public void removeCommand(int index, Command command)
+	{
+		throw new UnsupportedOperationException("Script image commands cannot be changed.");
+	}
+
+	@Override
+	public void trim()
+	{
+		// Nothing to trim.
+	}
+
+	/**
+	 * Does nothing: the lines in a script image are not on the heap.
+	 */
+	@Override
+	public void stripLines()
+	{
+		// Nothing to strip.
+	}
+
+	@Override
+	public int getCommandCount()
+	{
+		return imageCommandCount;
+	}
+
+	@Override
+	public String getCommandName(int index)
+	{
+		return nameString(nameIndex(index));
+	}
+
+	@Override
+	public int getOpcode(int index, String[] commandSet)
+	{
+		return getOpcodes(commandSet)[nameIndex(index)];
+	}
+
+	@Override
+	public int getLineNumber(int index)
+	{
+		return image.getInt(commandsOffset + index * COMMAND_SIZE + 8);
+	}
+
+	@Override
+	public String getLine(int index)
+	{
+		int line = image.getInt(commandsOffset + index * COMMAND_SIZE + 12);
+		if (line >= 0)
+			return readString(line);
+		return lineSource != null ? lineSource.getLine(getLineNumber(index)) : null;
+	}
+
+	@Override
+	public int getArgumentCount(int index)
+	{
+		int next = index + 1 < imageCommandCount ? getArgumentOffset(index + 1) : imageArgumentCount;
+		return next - getArgumentOffset(index);
+	}
+
+	@Override
+	public int getArgumentOffset(int index)
+	{
+		return image.getInt(commandsOffset + index * COMMAND_SIZE + 4);
+	}
+
+	@Override
+	public Type getArgumentType(int position)
+	{
+		return TYPES[getConstantType(getArgumentConstant(position))];
+	}
+
+	@Override
+	public String getArgumentValue(int position)
+	{
+		return getConstantValue(getArgumentConstant(position));
+	}
+
+	@Override
+	public long getArgumentLong(int position)
+	{
+		return getConstantLong(getArgumentConstant(position));
+	}
+
+	@Override
+	public double getArgumentDouble(int position)
+	{
+		return getConstantDouble(getArgumentConstant(position));
+	}
+
+	@Override
+	public int getArgumentSlot(int position)
+	{
+		return getConstantSlot(getArgumentConstant(position));
+	}
+
+	@Override
+	public int getArgumentLabelIndex(int position)
+	{
+		return getConstantLabelIndex(getArgumentConstant(position));
+	}
+
+	@Override
+	boolean areLabelsLinked()
+	{
+		return imageLabelsLinked;
+	}
+
+	@Override
+	int getArgumentConstant(int position)
+	{
+		return image.getInt(argumentsOffset + position * 4);
+	}
+
+	@Override
+	int getConstantCount()
+	{
+		return imageConstantCount;
+	}
+
+	@Override
+	int getConstantType(int constant)
+	{
+		return image.getInt(constantsOffset + constant * CONSTANT_SIZE);
+	}
+
+	@Override
+	String getConstantValue(int constant)
+	{
+		String out = constantStrings[constant];
+		if (out == null)
+			constantStrings[constant] = out = readString(image.getInt(constantsOffset + constant * CONSTANT_SIZE + 4)).intern();
+		return out;
+	}
+
+	@Override
+	long getConstantLong(int constant)
+	{
+		return image.getLong(constantsOffset + constant * CONSTANT_SIZE + 8);
+	}
+
+	@Override
+	double getConstantDouble(int constant)
+	{
+		return image.getDouble(constantsOffset + constant * CONSTANT_SIZE + 16);
+	}
+
+	@Override
+	int getConstantSlot(int constant)
+	{
+		return image.getInt(constantsOffset + constant * CONSTANT_SIZE + 24);
+	}
+
+	@Override
+	int getConstantLabelIndex(int constant)
+	{
+		return image.getInt(constantsOffset + constant * CONSTANT_SIZE + 28);
+	}
+
+}
@@ -7,8 +7,9 @@
  ******************************************************************************/
 package com.blackrook.script.simple;
 
+import java.util.Arrays;
+
 import com.blackrook.commons.linkedlist.Stack;
-import com.blackrook.commons.list.List;
 
 /**
  * Abstract class for all interpreters of SimpleScripts.
@@ -21,18 +22,65 @@ public abstract class SimpleScriptInterpreter
 {
 	/** Starting script macro. */
 	protected static final int SCRIPT_START = -1;
+	/** Initial capacity of the call stack. */
+	private static final int CALL_STACK_CAPACITY = 16;
+	/** Default amount of steps between deadline checks. */
+	private static final int DEADLINE_CHECK_INTERVAL = 64;
+	/** The origin of monotonic time. */
+	private static final long TIME_ORIGIN = System.nanoTime();
+	
+	/** The current context's script (null if there is no context). */
+	private SimpleScript script;
+	/** The current context's current command index. */
+	private int currentIndex;
+	/** The current context's next command index. */
+	private int nextIndex;
+	
+	/** The scripts of the contexts under the current one. */
+	private SimpleScript[] callScripts;
+	/** The current command indices of the contexts under the current one. */
+	private int[] callCurrentIndices;
+	/** The next command indices (return addresses) of the contexts under the current one. */
+	private int[] callNextIndices;
+	/** The amount of contexts under the current one. */
+	private int callDepth;
+	/** Maximum amount of contexts under the current one. */
+	private int maxCallDepth;
 	
-	/** The context stack for this interpreter. */
-	protected Stack<Context> contextStack;
 	/** Runaway limit. */
 	private int runawayLimit;
 	/** Current amount of commands executed. */
 	private int commandCount;
 	/** Should this break on next step? */
 	private boolean doBreak;
+	/** Did the last budgeted go() run out of budget before a break or the end? */
+	private boolean preempted;
+	/** Amount of steps between deadline checks. */
+	private int deadlineCheckInterval;
+	/** Are break, runaway and budget checks only done at safepoints? */
+	private boolean safepointMode;
+	/** Does the next command need a full step (safepoint)? */
+	private boolean safepoint;
+	/** The time supplied by {@link #setTime(long)}. */
+	private long suppliedTime;
+	/** Was a time supplied? */
+	private boolean timeSupplied;
+	/** The engine interpreter type that this was created for, if any (for pooling). */
+	SimpleScriptEngine.InterpreterType engineType;
 	
-	/** List of interpreter listeners. */
-	private List<SimpleScriptInterpreterListener> listeners;
+	/** No listeners. */
+	private static final SimpleScriptInterpreterListener[] NO_LISTENERS = new SimpleScriptInterpreterListener[0];
+	/** No listener intervals. */
+	private static final int[] NO_INTERVALS = new int[0];
+
+	/** Interpreter listeners. */
+	private SimpleScriptInterpreterListener[] listeners;
+	/** Amount of steps between calls to each listener's steppedForward(). */
+	private int[] listenerIntervals;
+	/** Amount of steps left until each listener's next steppedForward(). */
+	private int[] listenerCountdowns;
+	/** Are there any listeners? */
+	private boolean listening;
 	
 	/**
 	 * Default constructor for all SimpleScriptInterpreters.
@@ -44,7 +92,23 @@ public abstract class SimpleScriptInterpreter
 	 */
 	public SimpleScriptInterpreter()
 	{
-		listeners = new List<SimpleScriptInterpreterListener>(2);
+		listeners = NO_LISTENERS;
+		listenerIntervals = NO_INTERVALS;
+		listenerCountdowns = NO_INTERVALS;
+		listening = false;
+		script = null;
+		callScripts = new SimpleScript[CALL_STACK_CAPACITY];
+		callCurrentIndices = new int[CALL_STACK_CAPACITY];
+		callNextIndices = new int[CALL_STACK_CAPACITY];
+		callDepth = 0;
+		maxCallDepth = 0;
+		preempted = false;
+		deadlineCheckInterval = DEADLINE_CHECK_INTERVAL;
+		safepointMode = false;
+		safepoint = true;
+		suppliedTime = 0L;
+		timeSupplied = false;
+		engineType = null;
 	}
 	
 	/**
@@ -70,7 +134,11 @@ public abstract class SimpleScriptInterpreter
 	{
 		resetBreak();
 		resetCommandCount();
-		contextStack = new Stack<Context>();
+		preempted = false;
+		safepoint = true;
+		Arrays.fill(callScripts, 0, callDepth, null);
+		callDepth = 0;
+		script = null;
 	}
 	
 	/**
@@ -109,32 +177,128 @@ public abstract class SimpleScriptInterpreter
 		pushContext(script, SCRIPT_START, index);
 	}
 
+	/**
+	 * Puts this interpreter back into the state of a new one, without a script, so that it can
+	 * be reused (see {@link SimpleScriptEngine#setInterpreterPoolSize(String, int)}).
+	 * The context stack is cleared, and listeners, limits, and settings are set back to their defaults.
+	 * <p>
+	 * Subclasses that keep their own state should override this, and call <code>super.reset()</code>.
+	 * @since 2.3.0
+	 */
+	public void reset()
+	{
+		initialize();
+		listeners = NO_LISTENERS;
+		listenerIntervals = NO_INTERVALS;
+		listenerCountdowns = NO_INTERVALS;
+		listening = false;
+		maxCallDepth = 0;
+		runawayLimit = 0;
+		deadlineCheckInterval = DEADLINE_CHECK_INTERVAL;
+		safepointMode = false;
+		resetTime();
+	}
+
 	/**
 	 * Adds a {@link SimpleScriptInterpreterListener} to this interpreter.
+	 * <p>
+	 * An interpreter with no listeners does no work for them while stepping.
 	 */
 	public void addListener(SimpleScriptInterpreterListener listener)
 	{
-		listeners.add(listener);
+		addListener(listener, 1);
+	}
+	
+	/**
+	 * Adds a {@link SimpleScriptInterpreterListener} to this interpreter
+	 * that is only told about every Nth step, for cheap monitoring.
+	 * The listener is told about every start, end and break.
+	 * @param listener the listener.
+	 * @param interval the amount of steps between calls to the listener's 
+	 * {@link SimpleScriptInterpreterListener#steppedForward(SimpleScriptInterpreter)} (1 or less is every step).
+	 * @since 2.3.0
+	 */
+	public void addListener(SimpleScriptInterpreterListener listener, int interval)
+	{
+		int n = listeners.length;
+		listeners = Arrays.copyOf(listeners, n + 1);
+		listenerIntervals = Arrays.copyOf(listenerIntervals, n + 1);
+		listenerCountdowns = Arrays.copyOf(listenerCountdowns, n + 1);
+		listeners[n] = listener;
+		listenerIntervals[n] = Math.max(interval, 1);
+		listenerCountdowns[n] = listenerIntervals[n];
+		listening = true;
+		safepoint = true;
 	}
 	
 	/**
 	 * Removes a {@link SimpleScriptInterpreterListener} from this interpreter.
+	 * The first listener that is equal to the provided one is removed.
 	 */
 	public void removeListener(SimpleScriptInterpreterListener listener)
 	{
-		listeners.remove(listener);
+		for (int i = 0; i < listeners.length; i++)
+		{
+			if (listener == null ? listeners[i] != null : !listener.equals(listeners[i]))
+				continue;
+			
+			int n = listeners.length - 1;
+			SimpleScriptInterpreterListener[] newListeners = new SimpleScriptInterpreterListener[n];
+			int[] newIntervals = new int[n];
+			int[] newCountdowns = new int[n];
+			System.arraycopy(listeners, 0, newListeners, 0, i);
+			System.arraycopy(listeners, i + 1, newListeners, i, n - i);
+			System.arraycopy(listenerIntervals, 0, newIntervals, 0, i);
+			System.arraycopy(listenerIntervals, i + 1, newIntervals, i, n - i);
+			System.arraycopy(listenerCountdowns, 0, newCountdowns, 0, i);
+			System.arraycopy(listenerCountdowns, i + 1, newCountdowns, i, n - i);
+			listeners = newListeners;
+			listenerIntervals = newIntervals;
+			listenerCountdowns = newCountdowns;
+			listening = n > 0;
+			return;
+		}
 	}
 	
 	/**
 	 * Pushes a context onto the context stack.
+	 * If this interpreter has a command set (see {@link #getCommandSet()}), 
+	 * the script's opcodes are resolved against it, if they were not already.
+	 * <p>
+	 * The context stack is a set of preallocated arrays that grow as needed, 
+	 * so pushing and popping contexts does not create any objects.
 	 * @param script		the script to interpret.
 	 * @param startIndex	the starting command index.
 	 * @param nextIndex		the next command index.
+	 * @throws SimpleScriptRuntimeException if this would put more contexts on the stack than the maximum call depth allows.
 	 */
 	public void pushContext(SimpleScript script, int startIndex, int nextIndex)
 	{
-		Context context = new Context(script, startIndex, nextIndex);
-		contextStack.push(context);
+		String[] commandSet = getCommandSet();
+		if (commandSet != null && !script.hasOpcodes(commandSet))
+			script.resolveOpcodes(commandSet);
+		
+		if (this.script != null)
+		{
+			if (maxCallDepth > 0 && callDepth >= maxCallDepth)
+				throw new SimpleScriptRuntimeException("Call stack overflow: more than "+maxCallDepth+" nested calls.", this);
+			if (callDepth == callScripts.length)
+			{
+				int capacity = callDepth * 2;
+				callScripts = Arrays.copyOf(callScripts, capacity);
+				callCurrentIndices = Arrays.copyOf(callCurrentIndices, capacity);
+				callNextIndices = Arrays.copyOf(callNextIndices, capacity);
+			}
+			callScripts[callDepth] = this.script;
+			callCurrentIndices[callDepth] = this.currentIndex;
+			callNextIndices[callDepth] = this.nextIndex;
+			callDepth++;
+		}
+		
+		this.script = script;
+		this.currentIndex = startIndex;
+		this.nextIndex = nextIndex;
+		safepoint = true;
 	}
 	
 	/**
@@ -142,11 +306,11 @@ public abstract class SimpleScriptInterpreter
 	 * of the topmost (current) context's script. The new context's next index is
 	 * the provided index.
 	 * @param startIndex	the starting command index.
+	 * @throws SimpleScriptRuntimeException if this would put more contexts on the stack than the maximum call depth allows.
 	 */
 	public void pushSubroutine(int startIndex)
 	{
-		Context context = contextStack.peek();
-		pushContext(context.script, 0, startIndex);
+		pushContext(script, 0, startIndex);
 	}
 	
 	/**
@@ -156,19 +320,58 @@ public abstract class SimpleScriptInterpreter
 	 */
 	public boolean popContext()
 	{
-		if (contextStack.size() == 1)
+		if (callDepth == 0)
 			return false;
-		contextStack.pop();
+		callDepth--;
+		script = callScripts[callDepth];
+		currentIndex = callCurrentIndices[callDepth];
+		nextIndex = callNextIndices[callDepth];
+		callScripts[callDepth] = null;
+		safepoint = true;
 		return true;
 	}
 	
+	/**
+	 * Returns the amount of contexts under the current one on the context stack
+	 * (the amount of subroutine calls that have not returned).
+	 * @since 2.3.0
+	 */
+	public int getCallDepth()
+	{
+		return callDepth;
+	}
+	
+	/**
+	 * Sets the maximum amount of contexts that can be under the current one on the context stack.
+	 * Pushing a context past this throws a {@link SimpleScriptRuntimeException}.
+	 * Setting this to 0 or less implies no limit, which is the default.
+	 * @param depth the new maximum depth (0 or less is no limit).
+	 * @since 2.3.0
+	 */
+	public void setMaxCallDepth(int depth)
+	{
+		maxCallDepth = depth;
+	}
+	
+	/**
+	 * Returns the maximum amount of contexts that can be under the current one on the context stack.
+	 * @return the maximum depth, or 0 or less if there is no limit.
+	 * @since 2.3.0
+	 */
+	public int getMaxCallDepth()
+	{
+		return maxCallDepth;
+	}
+	
 	/**
 	 * Sets the next command index for the current context.
 	 * @param index	the next index.
 	 */
 	public void setNextCommandIndex(int index)
 	{
-		contextStack.peek().nextIndex = index;
+		if (index <= currentIndex)
+			safepoint = true;
+		nextIndex = index;
 	}
 	
 	/**
@@ -182,7 +385,7 @@ public abstract class SimpleScriptInterpreter
 		int index = getCommandIndexByLabel(label);
 		if (index == -1)
 			throw new SimpleScriptRuntimeException("Invalid label requested by script: '"+label+"'", this);
-		contextStack.peek().nextIndex = index;
+		setNextCommandIndex(index);
 	}
 	
 	/**
@@ -191,16 +394,61 @@ public abstract class SimpleScriptInterpreter
 	 */
 	public int getCommandIndexByLabel(String label)
 	{
-		Context context = contextStack.peek();
-		return context.script.getIndexByLabel(label);
+		return script.getIndexByLabel(label);
+	}
+	
+	/**
+	 * Builds the shared state of the scripts on the context stack that is otherwise built 
+	 * as it is needed (resolved opcodes and kept Commands), so that interpreters that share 
+	 * a script and run on other threads do not build it at the same time.
+	 */
+	void prepareScripts()
+	{
+		if (script == null)
+			return;
+		prepareScript(script);
+		for (int i = 0; i < callDepth; i++)
+			prepareScript(callScripts[i]);
+	}
+	
+	/** Resolves a script's opcodes against this interpreter's command set, and creates its kept Commands. */
+	private void prepareScript(SimpleScript script)
+	{
+		String[] commandSet = getCommandSet();
+		if (commandSet != null && !script.hasOpcodes(commandSet))
+			script.resolveOpcodes(commandSet);
+		script.prepareCommandViews();
 	}
 	
 	/**
 	 * Returns the topmost (active) context in this interpreter.
+	 * Contexts are not kept as objects, so this creates a new one, which does not change as the interpreter runs.
+	 * This is meant for tools and error reporting, not for commands: see {@link #getCommandIndexByLabel(String)}, 
+	 * {@link #setNextCommandIndex(int)} and {@link #getCallDepth()}.
+	 * @return a copy of the context, or null if there is no context.
 	 */
 	public Context getCurrentContext()
 	{
-		return contextStack.peek();
+		return script != null ? new Context(script, currentIndex, nextIndex) : null;
+	}
+
+	/**
+	 * Returns a copy of this interpreter's context stack, with the current context on top.
+	 * Changing the copy does not change this interpreter.
+	 * @return a new stack of new contexts (empty if there is no context).
+	 * @deprecated Since 2.3.0, contexts are not kept on a stack of Context objects, 
+	 * so this creates all of them. Use {@link #getCurrentContext()} and {@link #getCallDepth()}.
+	 */
+	@Deprecated
+	protected Stack<Context> getContextStack()
+	{
+		Stack<Context> out = new Stack<Context>();
+		if (script == null)
+			return out;
+		for (int i = 0; i < callDepth; i++)
+			out.push(new Context(callScripts[i], callCurrentIndices[i], callNextIndices[i]));
+		out.push(new Context(script, currentIndex, nextIndex));
+		return out;
 	}
 
 	/**
@@ -234,6 +482,50 @@ public abstract class SimpleScriptInterpreter
 	public void setBreak()
 	{
 		doBreak = true;
+		safepoint = true;
+	}
+	
+	/**
+	 * Sets if this interpreter only checks if it should break, is at its runaway limit, or 
+	 * is out of budget at safepoints: before commands that follow backward jumps, subroutine 
+	 * calls and returns, and requests for a safepoint (like {@link #setBreak()}). Commands 
+	 * in between are executed in a tight loop, without those checks. 
+	 * The tight loop stops at the runaway limit, the step budget, and the deadline check interval,
+	 * so those are kept exactly as they are on every step: go(5) executes at most five commands. 
+	 * Only a break is noticed late, at the next safepoint. 
+	 * <p>
+	 * Subclasses whose {@link #shouldBreak()} becomes true because of a command must call 
+	 * {@link #requestSafepoint()} when that happens. 
+	 * If any listeners are attached, every step is checked, as usual. This is off by default.
+	 * @param safepointMode true to only check at safepoints, false to check on every step.
+	 * @since 2.3.0
+	 */
+	public void setSafepointMode(boolean safepointMode)
+	{
+		this.safepointMode = safepointMode;
+	}
+	
+	/**
+	 * Returns true if this interpreter only checks if it should break, is at its runaway limit, or 
+	 * is out of budget at safepoints.
+	 * @see #setSafepointMode(boolean)
+	 * @since 2.3.0
+	 */
+	public boolean isSafepointMode()
+	{
+		return safepointMode;
+	}
+	
+	/**
+	 * Makes the interpreter do a full step, checking if it should break, 
+	 * is at its runaway limit, or is out of budget, before the next command. 
+	 * This only matters in safepoint mode.
+	 * @see #setSafepointMode(boolean)
+	 * @since 2.3.0
+	 */
+	public void requestSafepoint()
+	{
+		safepoint = true;
 	}
 	
 	/**
@@ -245,6 +537,63 @@ public abstract class SimpleScriptInterpreter
 		return doBreak;
 	}
 
+	/**
+	 * Returns the time that this interpreter is waiting until, if it is suspended until a 
+	 * certain time. A {@link SimpleScriptEngine} does not call go() on it until then.
+	 * <p>
+	 * By default, this returns -1. Interpreters that wait on a clock should override this.
+	 * @return the time in milliseconds, in {@link #getTime()} time, or -1 if not waiting on a clock.
+	 * @since 2.3.0
+	 */
+	public long getWaitDeadline()
+	{
+		return -1L;
+	}
+
+	/**
+	 * Returns the current time, in milliseconds, for interpreters that measure time.
+	 * This is the time supplied by {@link #setTime(long)}, or if none was, a monotonic clock
+	 * that starts at 0 (see {@link #getMonotonicTime()}).
+	 * @since 2.3.0
+	 */
+	public long getTime()
+	{
+		return timeSupplied ? suppliedTime : getMonotonicTime();
+	}
+
+	/**
+	 * Supplies the current time, in milliseconds, that this interpreter reads from {@link #getTime()},
+	 * until it is supplied again or {@link #resetTime()} is called. 
+	 * {@link SimpleScriptEngine}s supply their tick time before each call to go(). 
+	 * Supplied times should not go backward, and should be 0 or more.
+	 * @param time the time.
+	 * @since 2.3.0
+	 */
+	public void setTime(long time)
+	{
+		suppliedTime = time;
+		timeSupplied = true;
+	}
+
+	/**
+	 * Makes {@link #getTime()} read the monotonic clock again, instead of the last supplied time.
+	 * @since 2.3.0
+	 */
+	public void resetTime()
+	{
+		timeSupplied = false;
+	}
+
+	/**
+	 * Returns the time of the default monotonic clock, in milliseconds.
+	 * This is based on {@link System#nanoTime()}, and starts at 0 when the SimpleScriptInterpreter class is loaded.
+	 * @since 2.3.0
+	 */
+	public static long getMonotonicTime()
+	{
+		return (System.nanoTime() - TIME_ORIGIN) / 1000000L;
+	}
+
 	/**
 	 * Resets the breaking trigger.
 	 * <p>
@@ -264,46 +613,50 @@ public abstract class SimpleScriptInterpreter
 	 * <li>Check if we are at the runaway limit. If so, throw exception.</li>
 	 * <li>Set, in the current context, the next index to the current one.</li>
 	 * <li>Increments, in the current context, the next index.</li>
-	 * <li>Calls executeCommand() with the current command (if any exists, else return false).</li>
+	 * <li>Calls executeCommand() with the current command index (if any command exists there, else return false).</li>
 	 * <li>Increments the command count.</li>
 	 * </ul>
 	 * @return true upon successful step. false if interpretation should stop (by break or end is reached). 
 	 */
 	public boolean stepForward()
 	{
-		if (contextStack.isEmpty())
+		if (script == null)
 		{
-			fireEndedInterpret();
+			if (listening)
+				fireEndedInterpret();
 			return false;
 		}
 		
 		if (shouldBreak())
 		{
 			resetBreak();
-			fireBreakInterpret();
+			if (listening)
+				fireBreakInterpret();
 			return false;
 		}
 		
 		if (runawayLimit > 0 && commandCount >= runawayLimit)
 			throw new SimpleScriptRunawayException("Caught runaway script after "+runawayLimit+" steps.", this);
 		
-		Context context = contextStack.peek();
-		if (context.currentIndex == SCRIPT_START)
+		if (listening && currentIndex == SCRIPT_START)
 			fireStartedInterpret();
 		
-		context.currentIndex = context.nextIndex;
-		context.nextIndex++;
-		fireSteppedForward();
+		currentIndex = nextIndex;
+		nextIndex++;
+		if (listening)
+			fireSteppedForward();
 		
-		Command command = context.script.getCommand(context.currentIndex);
-		if (command == null)
+		SimpleScript script = this.script;
+		int index = currentIndex;
+		if (index < 0 || index >= script.getCommandCount())
 		{
-			fireEndedInterpret();
+			if (listening)
+				fireEndedInterpret();
 			return false;
 		}
 		
-		if (!executeCommand(command))
-			throw new SimpleScriptRuntimeException("Unknown or unsupported command '"+command.getName()+"'.", this);
+		if (!executeCommand(script, index))
+			throw new SimpleScriptRuntimeException("Unknown or unsupported command '"+script.getCommandName(index)+"'.", this);
 		commandCount++;
 		return true;
 	}
@@ -314,8 +667,7 @@ public abstract class SimpleScriptInterpreter
 	 */
 	public boolean isActive()
 	{
-		Context context = contextStack.peek();
-		return context.script.getCommand(context.currentIndex) != null;
+		return script != null && currentIndex >= 0 && currentIndex < script.getCommandCount();
 	}
 
 	/**
@@ -325,10 +677,162 @@ public abstract class SimpleScriptInterpreter
 	 */
 	public void go()
 	{
+		preempted = false;
+		if (safepointMode)
+		{
+			go(0, 0L, false);
+			return;
+		}
 		resetCommandCount();
 		while (stepForward()) ;
 	}
 	
+	/**
+	 * Tells this interpreter to keep stepping forward until the end of this script is reached,
+	 * it breaks, or it has stepped forward a certain amount of times, whichever comes first.
+	 * If it runs out of steps, it is preempted, and the next budgeted call to go() carries on 
+	 * where it left off, without resetting the command count for the runaway limit.
+	 * At least one step is always taken.
+	 * @param maxSteps the maximum amount of steps (0 or less is no limit).
+	 * @return true if this was preempted, false if it broke or reached the end.
+	 * @since 2.3.0
+	 */
+	public boolean go(int maxSteps)
+	{
+		return go(maxSteps, 0L, false);
+	}
+	
+	/**
+	 * Tells this interpreter to keep stepping forward until the end of this script is reached,
+	 * it breaks, or a deadline passes, whichever comes first. 
+	 * The time is checked every so many steps (see {@link #setDeadlineCheckInterval(int)}).
+	 * If the deadline passes, it is preempted, and the next budgeted call to go() carries on 
+	 * where it left off, without resetting the command count for the runaway limit.
+	 * At least one step is always taken.
+	 * @param deadline the deadline, in {@link System#nanoTime()} time.
+	 * @return true if this was preempted, false if it broke or reached the end.
+	 * @since 2.3.0
+	 */
+	public boolean goUntil(long deadline)
+	{
+		return go(0, deadline, true);
+	}
+	
+	/**
+	 * Tells this interpreter to keep stepping forward until the end of this script is reached,
+	 * it breaks, it has stepped forward a certain amount of times, or a deadline passes, 
+	 * whichever comes first.
+	 * @param maxSteps the maximum amount of steps (0 or less is no limit).
+	 * @param deadline the deadline, in {@link System#nanoTime()} time.
+	 * @return true if this was preempted, false if it broke or reached the end.
+	 * @see #go(int)
+	 * @see #goUntil(long)
+	 * @since 2.3.0
+	 */
+	public boolean goUntil(int maxSteps, long deadline)
+	{
+		return go(maxSteps, deadline, true);
+	}
+	
+	/** Steps forward within a budget. */
+	boolean go(int maxSteps, long deadline, boolean timed)
+	{
+		if (!preempted)
+			resetCommandCount();
+		preempted = false;
+		
+		int steps = 0;
+		int check = deadlineCheckInterval;
+		while (true)
+		{
+			safepoint = false;
+			if (!stepForward())
+				return false;
+			int run = 1;
+			if (safepointMode && !listening)
+			{
+				// stay within the step budget, the next deadline check, and the runaway limit.
+				int limit = Integer.MAX_VALUE;
+				if (maxSteps > 0)
+					limit = maxSteps - steps - 1;
+				if (timed)
+					limit = Math.min(limit, check - 1);
+				if (runawayLimit > 0)
+					limit = Math.min(limit, runawayLimit - commandCount);
+				run += runToSafepoint(limit);
+			}
+			if (maxSteps > 0 && (steps += run) >= maxSteps)
+				return preempted = true;
+			if (timed && (check -= run) <= 0)
+			{
+				if (System.nanoTime() - deadline >= 0)
+					return preempted = true;
+				check = deadlineCheckInterval;
+			}
+		}
+	}
+	
+	/**
+	 * Executes commands in the current context, without any of the checks in stepForward(), 
+	 * until a safepoint is requested, the end of the script is reached, or the limit is reached.
+	 * @param limit the maximum amount of commands to execute.
+	 * @return the amount of commands executed.
+	 */
+	private int runToSafepoint(int limit)
+	{
+		SimpleScript script = this.script;
+		int run = 0;
+		while (!safepoint && run < limit)
+		{
+			int index = nextIndex;
+			if (index < 0 || index >= script.getCommandCount())
+				break;
+			currentIndex = index;
+			nextIndex = index + 1;
+			if (!executeCommand(script, index))
+				throw new SimpleScriptRuntimeException("Unknown or unsupported command '"+script.getCommandName(index)+"'.", this);
+			commandCount++;
+			run++;
+		}
+		return run;
+	}
+	
+	/**
+	 * Returns true if the last budgeted call to go() ran out of budget 
+	 * before this interpreter broke or reached the end of the script.
+	 * @since 2.3.0
+	 */
+	public boolean isPreempted()
+	{
+		return preempted;
+	}
+	
+	/**
+	 * Sets the amount of steps between checks of the time in {@link #goUntil(long)}.
+	 * Lower values stop closer to the deadline, at the cost of more calls to {@link System#nanoTime()}.
+	 * By default, this is 64.
+	 * @param steps the amount of steps (at least 1).
+	 * @since 2.3.0
+	 */
+	public void setDeadlineCheckInterval(int steps)
+	{
+		deadlineCheckInterval = Math.max(steps, 1);
+	}
+	
+	/**
+	 * Returns the set of command names that this interpreter understands, in opcode order.
+	 * If this returns a non-null array, scripts are resolved against it when they are pushed 
+	 * onto the context stack, and {@link #executeCommand(SimpleScript, int)} can dispatch on
+	 * {@link SimpleScript#getOpcode(int, String[])}. The same array instance must be returned each time.
+	 * <p>
+	 * By default, this returns null (no command set).
+	 * @since 2.3.0
+	 */
+	protected String[] getCommandSet()
+	{
+		return null;
+	}
+	
 	/**
 	 * Called by stepForward() when the next command needs interpreting.
 	 * May throw SimpleScriptRuntimeException if something HORRIBLE happens.
@@ -339,6 +843,23 @@ public abstract class SimpleScriptInterpreter
 	 */
 	public abstract boolean executeCommand(Command command);
 	
+	/**
+	 * Called by stepForward() when the next command needs interpreting, with the
+	 * command's script and index. Interpreters can override this to read the command
+	 * straight from the script's storage, without creating a {@link Command}.
+	 * <p>
+	 * By default, this calls {@link #executeCommand(Command)} with <code>script.getCommand(index)</code>,
+	 * which creates a new Command each time unless the script has {@link SimpleScript#setCommandCaching(boolean)} on.
+	 * @param script	the script that contains the command.
+	 * @param index		the index of the command to interpret.
+	 * @return true if this interpreted the command properly or false otherwise.
+	 * @since 2.3.0
+	 */
+	protected boolean executeCommand(SimpleScript script, int index)
+	{
+		return executeCommand(script.getCommand(index));
+	}
+	
 	/**
 	 * Calls the startedInterpret() method on all bound listeners.
 	 */
@@ -358,12 +879,21 @@ public abstract class SimpleScriptInterpreter
 	}
 
 	/**
-	 * Calls the steppedForward() method on all bound listeners.
+	 * Calls the steppedForward() method on all bound listeners,
+	 * skipping the listeners whose step interval has not passed.
 	 */
 	protected void fireSteppedForward()
 	{
-		for (SimpleScriptInterpreterListener l : listeners)
-			l.steppedForward(this);
+		SimpleScriptInterpreterListener[] listeners = this.listeners;
+		int[] intervals = listenerIntervals;
+		int[] countdowns = listenerCountdowns;
+		for (int i = 0; i < listeners.length; i++)
+		{
+			if (--countdowns[i] > 0)
+				continue;
+			countdowns[i] = intervals[i];
+			listeners[i].steppedForward(this);
+		}
 	}
 	
 	/**
@@ -376,7 +906,7 @@ public abstract class SimpleScriptInterpreter
 	}
 	
 	/**
-	 * Context encapsulation.
+	 * Context encapsulation: a copy of one of an interpreter's contexts.
 	 */
 	public static class Context
 	{
@@ -0,0 +1,27 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.simple;
+
+/**
+ * Creates interpreters for a {@link SimpleScriptEngine}, in place of reflection.
+ * Interpreter constructors that take a SimpleScript fit this, like <code>ControlInterpreter::new</code>.
+ * @author Matthew Tropiano
+ * @since 2.3.0
+ * @see SimpleScriptEngine#setInterpreterFactory(String, SimpleScriptInterpreterFactory)
+ */
+@FunctionalInterface
+public interface SimpleScriptInterpreterFactory
+{
+	/**
+	 * Creates a new interpreter, set to start at the beginning of a script.
+	 * @param script the script to start the interpreter with.
+	 * @return a new interpreter.
+	 */
+	public SimpleScriptInterpreter create(SimpleScript script);
+
+}
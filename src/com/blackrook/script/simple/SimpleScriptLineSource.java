@@ -0,0 +1,26 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.simple;
+
+/**
+ * A source of script lines, by line number, for scripts that do not keep
+ * the source lines of their commands.
+ * @author Matthew Tropiano
+ * @since 2.3.0
+ * @see SimpleScript#setLineSource(SimpleScriptLineSource)
+ */
+public interface SimpleScriptLineSource
+{
+	/**
+	 * Gets a source line, including its newline.
+	 * @param lineNumber	the line number (starting from 1).
+	 * @return the line, or <code>null</code> if there is no such line.
+	 */
+	public String getLine(int lineNumber);
+
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.simple;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * A line source that reads lines out of a line table, which holds the source lines
+ * of a script's commands apart from the script, usually in a file mapped into memory.
+ * Line tables are written by {@link SimpleScriptFactory#writeLineTable(java.io.OutputStream, SimpleScript)}.
+ * <p>
+ * The table starts with a header (magic number, version, amount of lines), followed by
+ * a record per line in line number order (line number, string offset), followed by the
+ * lines as length-prefixed UTF-8 strings. All values are big-endian.
+ * @author Matthew Tropiano
+ * @since 2.3.0
+ */
+final class SimpleScriptLineTable implements SimpleScriptLineSource
+{
+	/** Line table magic number ("BRSL"). */
+	static final int MAGIC = 0x4252534C;
+	/** Line table format version. */
+	static final int VERSION = 1;
+	/** Header size in bytes. */
+	static final int HEADER_SIZE = 3 * 4;
+	/** Line record size in bytes. */
+	static final int LINE_SIZE = 2 * 4;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The table data. */
+	private ByteBuffer table;
+	/** Amount of lines. */
+	private int lineCount;
+	/** Offset of the strings. */
+	private int stringsOffset;
+
+	/**
+	 * Creates a line source from a line table, from the buffer's position to its limit.
+	 * @param buffer the buffer that contains the table.
+	 * @throws IOException if the buffer does not contain a line table of a version that this can read.
+	 */
+	SimpleScriptLineTable(ByteBuffer buffer) throws IOException
+	{
+		table = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+		if (table.capacity() < HEADER_SIZE || table.getInt(0) != MAGIC)
+			throw new IOException("Not a SimpleScript line table.");
+		int version = table.getInt(4);
+		if (version != VERSION)
+			throw new IOException("Unsupported SimpleScript line table version: "+version);
+		lineCount = table.getInt(8);
+		if (lineCount < 0 || lineCount > (table.capacity() - HEADER_SIZE) / LINE_SIZE)
+			throw new IOException("Bad SimpleScript line table count: "+lineCount);
+		stringsOffset = HEADER_SIZE + lineCount * LINE_SIZE;
+	}
+
+	@Override
+	public String getLine(int lineNumber)
+	{
+		int lo = 0;
+		int hi = lineCount - 1;
+		while (lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			int n = table.getInt(HEADER_SIZE + mid * LINE_SIZE);
+			if (n < lineNumber)
+				lo = mid + 1;
+			else if (n > lineNumber)
+				hi = mid - 1;
+			else
+			{
+				int position = stringsOffset + table.getInt(HEADER_SIZE + mid * LINE_SIZE + 4);
+				byte[] b = new byte[table.getInt(position)];
+				for (int i = 0; i < b.length; i++)
+					b[i] = table.get(position + 4 + i);
+				return new String(b, UTF8);
+			}
+		}
+		return null;
+	}
+
+}
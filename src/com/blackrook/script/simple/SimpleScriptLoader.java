@@ -0,0 +1,346 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.simple;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import com.blackrook.commons.list.List;
+
+/**
+ * Loads many SimpleScripts at once, from a directory tree or a zip/jar archive,
+ * parsing them in parallel on a {@link ForkJoinPool} with {@link SimpleScriptFactory#readScript(String, byte[], SimpleScriptDescriptor...)}.
+ * Files and archive entries are read on the calling thread, and each script is parsed on the pool as soon 
+ * as it has been read, so the pool only does parsing and never blocks on I/O.
+ * <p>
+ * Each script is named after its path, relative to the root directory or archive,
+ * using <code>/</code> as the separator. Directories are read in name order, and archives 
+ * in entry order. A script that cannot be read does not stop the
+ * rest from being read: its error is kept in the {@link Result}, along with the
+ * scripts that were read.
+ * <p>
+ * A loader can be used by many threads at once, as long as its settings and descriptors
+ * are not changed while it is loading.
+ * @author Matthew Tropiano
+ * @since 2.3.0
+ */
+public class SimpleScriptLoader
+{
+	/** The pool to parse scripts on. */
+	private ForkJoinPool pool;
+	/** The descriptors to read scripts with. */
+	private SimpleScriptDescriptor[] descriptors;
+	/** The file extensions of scripts to read (if empty, all files are read). */
+	private String[] extensions;
+	/** What the read scripts keep of their source lines. */
+	private SimpleScriptFactory.LineMode lineMode;
+
+	/**
+	 * Creates a new loader that reads scripts on the common ForkJoinPool.
+	 * @param descriptors the descriptors to read the scripts with, if any (see {@link SimpleScriptFactory}).
+	 */
+	public SimpleScriptLoader(SimpleScriptDescriptor ... descriptors)
+	{
+		this(ForkJoinPool.commonPool(), descriptors);
+	}
+
+	/**
+	 * Creates a new loader.
+	 * @param pool the pool to read scripts on.
+	 * @param descriptors the descriptors to read the scripts with, if any (see {@link SimpleScriptFactory}).
+	 */
+	public SimpleScriptLoader(ForkJoinPool pool, SimpleScriptDescriptor ... descriptors)
+	{
+		this.pool = pool;
+		this.descriptors = descriptors;
+		this.extensions = new String[0];
+		this.lineMode = SimpleScriptFactory.LineMode.KEEP;
+	}
+
+	/**
+	 * Sets the file extensions of the files to read as scripts, like <code>"txt"</code>.
+	 * Extensions are NOT case-sensitive. If none are set, all files are read.
+	 * @param extensions the extensions, without the leading dot.
+	 */
+	public void setExtensions(String ... extensions)
+	{
+		this.extensions = extensions;
+	}
+
+	/**
+	 * Sets what the read scripts keep of their source lines. 
+	 * By default, this is {@link SimpleScriptFactory.LineMode#KEEP}.
+	 * @param lineMode the line mode.
+	 * @see SimpleScriptFactory#readScript(String, byte[], SimpleScriptFactory.LineMode, SimpleScriptDescriptor...)
+	 */
+	public void setLineMode(SimpleScriptFactory.LineMode lineMode)
+	{
+		this.lineMode = lineMode;
+	}
+
+	/**
+	 * Reads all scripts in a directory and its subdirectories.
+	 * A file that cannot be read is reported in the result, like a script that cannot be parsed.
+	 * @param directory the root directory.
+	 * @return the result of the load.
+	 * @throws IOException if the directory cannot be read.
+	 */
+	public Result loadDirectory(File directory) throws IOException
+	{
+		if (!directory.isDirectory())
+			throw new IOException(directory.getPath() + " is not a directory.");
+
+		List<Job> jobs = new List<Job>();
+		addDirectory(jobs, directory, "");
+		return run(jobs);
+	}
+
+	/**
+	 * Reads all scripts in a zip or jar archive file.
+	 * @param archive the archive file.
+	 * @return the result of the load.
+	 * @throws IOException if the archive cannot be read.
+	 */
+	public Result loadArchive(File archive) throws IOException
+	{
+		FileInputStream in = null;
+		try {
+			in = new FileInputStream(archive);
+			return loadArchive(in);
+		} finally {
+			if (in != null) in.close();
+		}
+	}
+
+	/**
+	 * Reads all scripts in a zip or jar archive.
+	 * Does not close the InputStream at the end of the read.
+	 * @param in the InputStream to read the archive from.
+	 * @return the result of the load.
+	 * @throws IOException if the archive cannot be read.
+	 */
+	public Result loadArchive(InputStream in) throws IOException
+	{
+		List<Job> jobs = new List<Job>();
+		ZipInputStream zin = new ZipInputStream(in);
+		ZipEntry entry;
+		byte[] buffer = new byte[8192];
+		while ((entry = zin.getNextEntry()) != null)
+		{
+			if (entry.isDirectory() || !accepts(entry.getName()))
+				continue;
+
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			int n;
+			while ((n = zin.read(buffer)) > 0)
+				bos.write(buffer, 0, n);
+			jobs.add(submit(new Job(entry.getName(), bos.toByteArray())));
+		}
+		return run(jobs);
+	}
+
+	/** Reads every script file in a directory tree, and adds a job for each. */
+	private void addDirectory(List<Job> jobs, File directory, String prefix) throws IOException
+	{
+		File[] files = directory.listFiles();
+		if (files == null)
+			throw new IOException("Could not list " + directory.getPath());
+		Arrays.sort(files);
+		for (File f : files)
+		{
+			if (f.isDirectory())
+				addDirectory(jobs, f, prefix + f.getName() + "/");
+			else if (accepts(f.getName()))
+			{
+				Job job = new Job(prefix + f.getName(), null);
+				try {
+					job.data = Files.readAllBytes(f.toPath());
+					submit(job);
+				} catch (IOException e) {
+					job.error = e;
+				}
+				jobs.add(job);
+			}
+		}
+	}
+
+	/** Starts parsing a job's data on the pool. */
+	private Job submit(Job job)
+	{
+		job.future = pool.submit(job);
+		return job;
+	}
+
+	/** Returns true if a file name has one of the accepted extensions. */
+	private boolean accepts(String name)
+	{
+		if (extensions.length == 0)
+			return true;
+		String lower = name.toLowerCase();
+		for (String ext : extensions)
+			if (lower.endsWith("." + ext.toLowerCase()))
+				return true;
+		return false;
+	}
+
+	/** Waits for the submitted jobs and gathers the results, in job order. */
+	private Result run(List<Job> jobs)
+	{
+		Result out = new Result();
+		for (int i = 0; i < jobs.size(); i++)
+		{
+			Job job = jobs.getByIndex(i);
+			if (job.future != null)
+			{
+				try {
+					job.future.get();
+				} catch (ExecutionException e) {
+					job.error = e.getCause();
+				} catch (InterruptedException e) {
+					job.error = e;
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			if (job.error == null)
+			{
+				out.scriptNames.add(job.name);
+				out.scripts.add(job.script);
+			}
+			else
+			{
+				out.errorNames.add(job.name);
+				out.errors.add(job.error);
+			}
+		}
+		return out;
+	}
+
+	/** 
+	 * A single script read. 
+	 * The outcome is kept here rather than thrown, since the pool may rethrow copies of exceptions. 
+	 */
+	private class Job implements Runnable
+	{
+		/** Script name. */
+		private String name;
+		/** Data to parse. */
+		private byte[] data;
+		/** The pending parse, if the data was read. */
+		private Future<?> future;
+		/** The script that was read. */
+		private SimpleScript script;
+		/** The error, if the script could not be read. */
+		private Throwable error;
+
+		Job(String name, byte[] data)
+		{
+			this.name = name;
+			this.data = data;
+		}
+
+		@Override
+		public void run()
+		{
+			try {
+				script = SimpleScriptFactory.readScript(name, data, lineMode, descriptors);
+			} catch (Exception e) {
+				error = e;
+			} finally {
+				data = null;
+			}
+		}
+	}
+
+	/**
+	 * The result of a load: the scripts that were read, and the errors
+	 * for the ones that could not be, both in the order that they were found.
+	 */
+	public static class Result
+	{
+		/** Names of read scripts. */
+		private List<String> scriptNames;
+		/** Read scripts. */
+		private List<SimpleScript> scripts;
+		/** Names of scripts that could not be read. */
+		private List<String> errorNames;
+		/** Errors, by script. */
+		private List<Throwable> errors;
+
+		Result()
+		{
+			scriptNames = new List<String>();
+			scripts = new List<SimpleScript>();
+			errorNames = new List<String>();
+			errors = new List<Throwable>();
+		}
+
+		/** Returns the amount of scripts that were read. */
+		public int getScriptCount()
+		{
+			return scripts.size();
+		}
+
+		/** Returns the name of a script that was read, by index. */
+		public String getScriptName(int index)
+		{
+			return scriptNames.getByIndex(index);
+		}
+
+		/** Returns a script that was read, by index. */
+		public SimpleScript getScript(int index)
+		{
+			return scripts.getByIndex(index);
+		}
+
+		/** Returns the amount of scripts that could not be read. */
+		public int getErrorCount()
+		{
+			return errors.size();
+		}
+
+		/** Returns the name of a script that could not be read, by index. */
+		public String getErrorName(int index)
+		{
+			return errorNames.getByIndex(index);
+		}
+
+		/**
+		 * Returns the reason that a script could not be read, by index.
+		 * This is usually a {@link SimpleScriptParseException} or an {@link IOException}.
+		 */
+		public Throwable getError(int index)
+		{
+			return errors.getByIndex(index);
+		}
+
+		/**
+		 * Adds all of the scripts that were read to an engine, by name.
+		 * This should be called on the thread that uses the engine.
+		 * @param engine the engine to add the scripts to.
+		 * @see SimpleScriptEngine#addScript(String, SimpleScript)
+		 */
+		public void addTo(SimpleScriptEngine engine)
+		{
+			for (int i = 0; i < scripts.size(); i++)
+				engine.addScript(scriptNames.getByIndex(i), scripts.getByIndex(i));
+		}
+
+	}
+
+}
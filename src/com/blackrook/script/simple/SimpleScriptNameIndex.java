@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.simple;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.blackrook.commons.hash.HashMap;
+
+/**
+ * An immutable, case-insensitive index of a fixed set of names, using a minimal-collision
+ * ("hash and displace") perfect hash: each name is hashed into a bucket, and each bucket
+ * has a displacement chosen when the index is built so that its names land in slots
+ * that no other name uses. A lookup is two hashes and one comparison.
+ * <p>
+ * If a name appears more than once (ignoring case), the last one is the one that is indexed.
+ * @author Matthew Tropiano
+ * @since 2.3.0
+ */
+final class SimpleScriptNameIndex
+{
+	/** Indices of command sets, by command set instance. */
+	private static final Map<String[], SimpleScriptNameIndex> COMMAND_SET_INDICES = 
+		Collections.synchronizedMap(new WeakHashMap<String[], SimpleScriptNameIndex>());
+
+	/** Displacements, by bucket. */
+	private int[] displacements;
+	/** Bucket mask. */
+	private int bucketMask;
+	/** Names, by slot. */
+	private String[] slotNames;
+	/** Name indices, by slot (-1 for empty slots). */
+	private int[] slotIndices;
+	/** Slot mask. */
+	private int slotMask;
+
+	/**
+	 * Creates a new index.
+	 * @param names the names to index, by index. Null names are skipped.
+	 */
+	SimpleScriptNameIndex(String[] names)
+	{
+		// last duplicate wins.
+		HashMap<String, Integer> last = new HashMap<String, Integer>();
+		for (int i = 0; i < names.length; i++)
+			if (names[i] != null)
+				last.put(fold(names[i]), i);
+		int count = 0;
+		int[] indices = new int[names.length];
+		for (int i = 0; i < names.length; i++)
+			if (names[i] != null && last.get(fold(names[i])) == i)
+				indices[count++] = i;
+
+		int buckets = 1;
+		while (buckets < count)
+			buckets <<= 1;
+		bucketMask = buckets - 1;
+		displacements = new int[buckets];
+
+		int slots = buckets << 1;
+		slotMask = slots - 1;
+		slotNames = new String[slots];
+		slotIndices = new int[slots];
+		for (int i = 0; i < slots; i++)
+			slotIndices[i] = -1;
+
+		int[] bucketSizes = new int[buckets];
+		int[] bucketOf = new int[count];
+		int maxSize = 0;
+		for (int i = 0; i < count; i++)
+		{
+			bucketOf[i] = hash(names[indices[i]], 0) & bucketMask;
+			maxSize = Math.max(maxSize, ++bucketSizes[bucketOf[i]]);
+		}
+
+		// names grouped by bucket.
+		int[] bucketStarts = new int[buckets + 1];
+		for (int b = 0; b < buckets; b++)
+			bucketStarts[b + 1] = bucketStarts[b] + bucketSizes[b];
+		int[] bucketNames = new int[count];
+		int[] fill = new int[buckets];
+		for (int i = 0; i < count; i++)
+			bucketNames[bucketStarts[bucketOf[i]] + fill[bucketOf[i]]++] = indices[i];
+
+		// place the largest buckets first.
+		int[] members = new int[maxSize];
+		int[] memberSlots = new int[maxSize];
+		for (int size = maxSize; size > 0; size--) for (int b = 0; b < buckets; b++)
+		{
+			if (bucketSizes[b] != size)
+				continue;
+			int n = size;
+			System.arraycopy(bucketNames, bucketStarts[b], members, 0, n);
+
+			int d = 0;
+			boolean placed = false;
+			while (!placed)
+			{
+				d++;
+				placed = true;
+				for (int m = 0; placed && m < n; m++)
+				{
+					int slot = hash(names[members[m]], d) & slotMask;
+					placed = slotIndices[slot] == -1;
+					for (int k = 0; placed && k < m; k++)
+						placed = memberSlots[k] != slot;
+					memberSlots[m] = slot;
+				}
+			}
+
+			displacements[b] = d;
+			for (int m = 0; m < n; m++)
+			{
+				slotNames[memberSlots[m]] = names[members[m]];
+				slotIndices[memberSlots[m]] = members[m];
+			}
+		}
+	}
+
+	/**
+	 * Gets the index of a command set, which is built once per command set instance.
+	 * @param commandSet the command set.
+	 * @return the index.
+	 */
+	static SimpleScriptNameIndex forCommandSet(String[] commandSet)
+	{
+		SimpleScriptNameIndex out = COMMAND_SET_INDICES.get(commandSet);
+		if (out == null)
+			COMMAND_SET_INDICES.put(commandSet, out = new SimpleScriptNameIndex(commandSet));
+		return out;
+	}
+
+	/**
+	 * Gets the index of a name.
+	 * @param name the name (NOT case-sensitive).
+	 * @return the index, or -1 if the name is not in this index.
+	 */
+	int get(String name)
+	{
+		int slot = hash(name, displacements[hash(name, 0) & bucketMask]) & slotMask;
+		String s = slotNames[slot];
+		return s != null && matches(s, name) ? slotIndices[slot] : -1;
+	}
+
+	/** Returns true if two names are the same, ignoring case. */
+	private static boolean matches(String a, String b)
+	{
+		if (a.length() != b.length())
+			return false;
+		for (int i = 0; i < a.length(); i++)
+			if (Character.toLowerCase(a.charAt(i)) != Character.toLowerCase(b.charAt(i)))
+				return false;
+		return true;
+	}
+
+	/** Returns a name, in lower case. */
+	private static String fold(String name)
+	{
+		char[] c = new char[name.length()];
+		for (int i = 0; i < c.length; i++)
+			c[i] = Character.toLowerCase(name.charAt(i));
+		return new String(c);
+	}
+
+	/** Case-insensitive FNV-1a hash, with a seed. */
+	private static int hash(String name, int seed)
+	{
+		int h = 0x811C9DC5 ^ (seed * 0x9E3779B9);
+		for (int i = 0; i < name.length(); i++)
+		{
+			h ^= Character.toLowerCase(name.charAt(i));
+			h *= 0x01000193;
+		}
+		return h ^ (h >>> 15);
+	}
+
+}
@@ -18,16 +18,28 @@ public class SimpleScriptRuntimeException extends RuntimeException
 
 	/** The script interpreter that this occurred on. */
 	private SimpleScriptInterpreter scriptInterpreter;
+	/** The script that was running when this occurred. */
+	private SimpleScript script;
+	/** The index of the command that was running when this occurred. */
+	private int commandIndex;
 
 	public SimpleScriptRuntimeException()
 	{
 		super("A script runtime exception has occurred!");
+		commandIndex = -1;
 	}
 
 	public SimpleScriptRuntimeException(String message, SimpleScriptInterpreter interpreter)
 	{
 		super(message);
 		scriptInterpreter = interpreter;
+		commandIndex = -1;
+		SimpleScriptInterpreter.Context context = interpreter != null ? interpreter.getCurrentContext() : null;
+		if (context != null)
+		{
+			script = context.getScript();
+			commandIndex = context.getCurrentIndex();
+		}
 	}
 
 	/**
@@ -38,4 +50,57 @@ public class SimpleScriptRuntimeException extends RuntimeException
 		return scriptInterpreter;
 	}
 
+	/**
+	 * The script that was running when this occurred.
+	 * @return the script, or <code>null</code> if not known.
+	 * @since 2.3.0
+	 */
+	public SimpleScript getScript()
+	{
+		return script;
+	}
+
+	/**
+	 * The index of the command that was running when this occurred.
+	 * @return the command index, or -1 if not known.
+	 * @since 2.3.0
+	 */
+	public int getCommandIndex()
+	{
+		return commandIndex;
+	}
+
+	/**
+	 * The source line number of the command that was running when this occurred.
+	 * @return the line number, or -1 if not known.
+	 * @since 2.3.0
+	 */
+	public int getLineNumber()
+	{
+		if (!hasCommand())
+			return -1;
+		return script.getLineNumber(commandIndex);
+	}
+
+	/**
+	 * The source line of the command that was running when this occurred.
+	 * This is looked up when it is asked for, so scripts that do not keep their
+	 * source lines read it from their line source.
+	 * @return the line, or <code>null</code> if not known.
+	 * @see SimpleScript#getLine(int)
+	 * @since 2.3.0
+	 */
+	public String getLine()
+	{
+		if (!hasCommand())
+			return null;
+		return script.getLine(commandIndex);
+	}
+
+	/** Returns true if the command that was running is known. */
+	private boolean hasCommand()
+	{
+		return script != null && commandIndex >= 0 && commandIndex < script.getCommandCount();
+	}
+
 }
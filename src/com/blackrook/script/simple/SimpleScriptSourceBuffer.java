@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.simple;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A line source that reads lines out of script source data, which is usually the
+ * data that the script was read from. Line offsets are found the first time that
+ * a line is asked for, and each line is decoded as it is asked for.
+ * <p>
+ * The buffer's position and limit are not changed, and its contents should not be changed afterward.
+ * @author Matthew Tropiano
+ * @since 2.3.0
+ */
+final class SimpleScriptSourceBuffer implements SimpleScriptLineSource
+{
+	private static final Charset ASCII = Charset.forName("ISO-8859-1");
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** Source data. */
+	private ByteBuffer data;
+	/** Offsets of the start of each line, plus the end of the data. */
+	private int[] lineStarts;
+	/** Amount of lines. */
+	private int lineCount;
+
+	/**
+	 * Creates a new line source.
+	 * @param data the script data, from its position to its limit.
+	 */
+	SimpleScriptSourceBuffer(ByteBuffer data)
+	{
+		this.data = data.duplicate();
+		this.lineStarts = null;
+		this.lineCount = 0;
+	}
+
+	@Override
+	public synchronized String getLine(int lineNumber)
+	{
+		if (lineStarts == null)
+			indexLines();
+		if (lineNumber < 1 || lineNumber > lineCount)
+			return null;
+
+		int start = lineStarts[lineNumber - 1];
+		int end = lineStarts[lineNumber];
+		boolean ascii = true;
+		byte[] b = new byte[end - start];
+		for (int i = 0; i < b.length; i++)
+			ascii &= (b[i] = data.get(start + i)) >= 0;
+		String out = new String(b, ascii ? ASCII : UTF8);
+		return b.length > 0 && b[b.length - 1] == '\n' ? out : out + "\n";
+	}
+
+	/** Finds the start of each line. */
+	private void indexLines()
+	{
+		int position = data.position();
+		int end = data.limit();
+		// skip UTF-8 byte order mark.
+		if (end - position >= 3 && data.get(position) == (byte)0xEF && data.get(position + 1) == (byte)0xBB && data.get(position + 2) == (byte)0xBF)
+			position += 3;
+
+		int[] starts = new int[64];
+		int count = 0;
+		starts[0] = position;
+		while (position < end)
+		{
+			if (data.get(position++) == '\n' || position == end)
+			{
+				if (++count + 1 > starts.length)
+				{
+					int[] n = new int[starts.length * 2];
+					System.arraycopy(starts, 0, n, 0, starts.length);
+					starts = n;
+				}
+				starts[count] = position;
+			}
+		}
+		lineStarts = starts;
+		lineCount = count;
+	}
+
+}
@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.simple;
+
+import com.blackrook.commons.linkedlist.Queue;
+
+/**
+ * A hierarchical timer wheel of interpreters that are waiting until a certain time,
+ * for {@link SimpleScriptEngine}s. Time is in whole units (like milliseconds).
+ * <p>
+ * There are four levels of 64 slots each. Level 0 has a slot for each of the next 64 units of time,
+ * and each slot in the level above covers a whole turn of the level below it. Interpreters
+ * move down a level when the wheel reaches their slot, and come out of level 0 on their deadline.
+ * Deadlines too far ahead for the wheel are kept in a separate list until it gets close enough.
+ * Adding an interpreter and advancing the wheel by one unit are constant-time, 
+ * and spans of time with nothing due in them are skipped over.
+ * @author Matthew Tropiano
+ * @since 2.3.0
+ */
+final class SimpleScriptTimerWheel
+{
+	/** Bits per level. */
+	private static final int LEVEL_BITS = 6;
+	/** Slots per level. */
+	private static final int SLOTS = 1 << LEVEL_BITS;
+	/** Slot index mask. */
+	private static final int SLOT_MASK = SLOTS - 1;
+	/** Amount of levels. */
+	private static final int LEVELS = 4;
+
+	/** Slot entry lists, by level. */
+	private Entry[][] slots;
+	/** Entry counts, by level. */
+	private int[] levelCounts;
+	/** Entries too far ahead for the levels. */
+	private Entry overflow;
+	/** Amount of entries in the wheel. */
+	private int size;
+	/** The current time. Everything due at or before this time has been taken out. */
+	private long time;
+
+	/**
+	 * Creates a new timer wheel.
+	 * @param time the starting time.
+	 */
+	SimpleScriptTimerWheel(long time)
+	{
+		this.slots = new Entry[LEVELS][SLOTS];
+		this.levelCounts = new int[LEVELS];
+		this.overflow = null;
+		this.size = 0;
+		this.time = time;
+	}
+
+	/** Returns the current time of the wheel. */
+	long getTime()
+	{
+		return time;
+	}
+
+	/** Returns the amount of interpreters in the wheel. */
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Adds an interpreter to the wheel.
+	 * @param interpreter the interpreter.
+	 * @param deadline the time that it is due. If this is not after the wheel's current time, 
+	 * it is due on the next advance.
+	 */
+	void add(SimpleScriptInterpreter interpreter, long deadline)
+	{
+		insert(new Entry(interpreter, Math.max(deadline, time + 1)));
+		size++;
+	}
+
+	/** Puts an entry in the slot for its deadline. */
+	private void insert(Entry entry)
+	{
+		long deadline = entry.deadline;
+		for (int level = 0; level < LEVELS; level++)
+		{
+			int shift = LEVEL_BITS * (level + 1);
+			if ((deadline >> shift) == (time >> shift))
+			{
+				int slot = (int)(deadline >> (LEVEL_BITS * level)) & SLOT_MASK;
+				entry.next = slots[level][slot];
+				slots[level][slot] = entry;
+				levelCounts[level]++;
+				return;
+			}
+		}
+		entry.next = overflow;
+		overflow = entry;
+	}
+
+	/**
+	 * Advances the wheel to a time, taking out every interpreter that is due at or before it.
+	 * @param now the time to advance to. If this is not after the wheel's current time, nothing happens.
+	 * @param out the queue to add the due interpreters to.
+	 */
+	void advance(long now, Queue<SimpleScriptInterpreter> out)
+	{
+		while (time < now)
+		{
+			if (size == 0)
+			{
+				time = now;
+				return;
+			}
+
+			// skip to the next time that something can come out of level 0 or move down.
+			long next;
+			if (levelCounts[0] > 0)
+				next = time + 1;
+			else
+			{
+				int level = 1;
+				while (level < LEVELS && levelCounts[level] == 0)
+					level++;
+				next = (time | ((1L << (LEVEL_BITS * level)) - 1)) + 1;
+			}
+			if (next > now)
+			{
+				time = now;
+				return;
+			}
+			time = next;
+
+			if ((time & ((1L << (LEVEL_BITS * LEVELS)) - 1)) == 0)
+			{
+				Entry entry = overflow;
+				overflow = null;
+				reinsert(entry);
+			}
+			for (int level = LEVELS - 1; level > 0; level--)
+				if ((time & ((1L << (LEVEL_BITS * level)) - 1)) == 0)
+					cascade(level);
+
+			int slot = (int)time & SLOT_MASK;
+			Entry entry = slots[0][slot];
+			slots[0][slot] = null;
+			while (entry != null)
+			{
+				Entry n = entry.next;
+				levelCounts[0]--;
+				size--;
+				out.add(entry.interpreter);
+				entry = n;
+			}
+		}
+	}
+
+	/** Moves the entries in the current slot of a level down. */
+	private void cascade(int level)
+	{
+		int slot = (int)(time >> (LEVEL_BITS * level)) & SLOT_MASK;
+		Entry entry = slots[level][slot];
+		slots[level][slot] = null;
+		while (entry != null)
+		{
+			levelCounts[level]--;
+			entry = reinsertOne(entry);
+		}
+	}
+
+	/** Inserts a list of entries again. */
+	private void reinsert(Entry entry)
+	{
+		while (entry != null)
+			entry = reinsertOne(entry);
+	}
+
+	/** Inserts an entry again, and returns the next one in its old list. */
+	private Entry reinsertOne(Entry entry)
+	{
+		Entry n = entry.next;
+		insert(entry);
+		return n;
+	}
+
+	/**
+	 * Returns the earliest deadline in the wheel.
+	 * @return the deadline, or -1 if the wheel is empty.
+	 */
+	long getNextDeadline()
+	{
+		if (size == 0)
+			return -1L;
+
+		// every deadline in a level is later than every deadline in the levels below it,
+		// and slots at or before the current one in a level are empty.
+		for (int level = 0; level < LEVELS; level++)
+		{
+			if (levelCounts[level] == 0)
+				continue;
+			for (int slot = ((int)(time >> (LEVEL_BITS * level)) & SLOT_MASK) + 1; slot < SLOTS; slot++)
+				if (slots[level][slot] != null)
+					return earliest(slots[level][slot]);
+		}
+		return earliest(overflow);
+	}
+
+	/** Returns the earliest deadline in an entry list. */
+	private static long earliest(Entry entry)
+	{
+		long out = Long.MAX_VALUE;
+		for (; entry != null; entry = entry.next)
+			out = Math.min(out, entry.deadline);
+		return out;
+	}
+
+	/** A waiting interpreter. */
+	private static final class Entry
+	{
+		private SimpleScriptInterpreter interpreter;
+		private long deadline;
+		private Entry next;
+
+		Entry(SimpleScriptInterpreter interpreter, long deadline)
+		{
+			this.interpreter = interpreter;
+			this.deadline = deadline;
+			this.next = null;
+		}
+	}
+
+}
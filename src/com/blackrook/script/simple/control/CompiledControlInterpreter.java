@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.simple.control;
+
+import com.blackrook.script.simple.SimpleScript;
+
+/**
+ * A {@link ControlInterpreter} that executes scripts compiled by the {@link ControlCompiler}
+ * instead of interpreting each command as it is reached. It behaves exactly like the
+ * ControlInterpreter, and can be bound to a script type in a
+ * {@link com.blackrook.script.simple.SimpleScriptEngine} in its place.
+ * <p>
+ * Scripts are compiled once, on first use (and again if they are changed), and shared among all interpreters.
+ * @author Matthew Tropiano
+ * @since 2.3.0
+ */
+public class CompiledControlInterpreter extends ControlInterpreter
+{
+	/** The current compiled script. */
+	private CompiledControlScript compiledScript;
+
+	/**
+	 * Creates a new interpreter for scripts that use Control commands.
+	 * The script is compiled if it wasn't already.
+	 * @param script the script to start the interpreter with.
+	 */
+	public CompiledControlInterpreter(SimpleScript script)
+	{
+		super(script);
+		compiledScript = ControlCompiler.getCompiledScript(script);
+	}
+
+	/**
+	 * Creates a new interpreter for scripts that use Control commands.
+	 * @param script the compiled script to start the interpreter with.
+	 */
+	public CompiledControlInterpreter(CompiledControlScript script)
+	{
+		super(script.getScript());
+		compiledScript = script;
+	}
+
+	@Override
+	protected boolean executeCommand(SimpleScript script, int index)
+	{
+		if (legacyDispatch)
+			return super.executeCommand(script, index);
+		if (script != compiledScript.getScript() || !compiledScript.isCurrent())
+			compiledScript = ControlCompiler.getCompiledScript(script);
+		bindVariableSlots(script);
+
+		ControlCompiler.Instruction instruction = compiledScript.getInstruction(index);
+		if (instruction == null)
+			return super.executeCommand(script, index);
+
+		instruction.execute(this);
+		return true;
+	}
+
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.simple.control;
+
+import com.blackrook.script.simple.SimpleScript;
+
+/**
+ * A SimpleScript that has been compiled by the {@link ControlCompiler}
+ * into a series of pre-resolved instructions, one per script command.
+ * @author Matthew Tropiano
+ * @since 2.3.0
+ */
+public class CompiledControlScript
+{
+	/** The script that this was compiled from. */
+	private SimpleScript script;
+	/** The compiled instructions, parallel to the script's command list. */
+	private ControlCompiler.Instruction[] instructions;
+	/** The script's modification count when it was compiled. */
+	private int modificationCount;
+
+	/**
+	 * Creates a new compiled script.
+	 * @param script the source script.
+	 * @param instructions the instructions, parallel to the script's command list.
+	 * @param modificationCount the script's modification count when it was compiled.
+	 */
+	CompiledControlScript(SimpleScript script, ControlCompiler.Instruction[] instructions, int modificationCount)
+	{
+		this.script = script;
+		this.instructions = instructions;
+		this.modificationCount = modificationCount;
+	}
+
+	/**
+	 * Returns the script that this was compiled from.
+	 */
+	public SimpleScript getScript()
+	{
+		return script;
+	}
+
+	/**
+	 * Returns true if the script has not been changed since it was compiled.
+	 * @see SimpleScript#getModificationCount()
+	 */
+	public boolean isCurrent()
+	{
+		return script.getModificationCount() == modificationCount;
+	}
+
+	/**
+	 * Returns the amount of compiled instructions in this script.
+	 */
+	public int getInstructionCount()
+	{
+		return instructions.length;
+	}
+
+	/**
+	 * Gets the instruction at a specific command index.
+	 * @return the instruction or null if the index is out of range.
+	 */
+	ControlCompiler.Instruction getInstruction(int index)
+	{
+		if (index < 0 || index >= instructions.length)
+			return null;
+		return instructions[index];
+	}
+
+}
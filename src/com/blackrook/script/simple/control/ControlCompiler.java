@@ -0,0 +1,522 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.simple.control;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.blackrook.commons.list.List;
+import com.blackrook.script.simple.Command;
+import com.blackrook.script.simple.SimpleScript;
+import com.blackrook.script.simple.SimpleScriptRuntimeException;
+import com.blackrook.script.simple.Command.Argument;
+import com.blackrook.script.simple.control.ControlInterpreter.Value;
+
+import static com.blackrook.script.simple.control.ControlInterpreter.*;
+
+/**
+ * Compiles SimpleScripts that use Control commands into {@link CompiledControlScript}s.
+ * <p>
+ * Each command is turned into an instruction object ahead of time, with its label
+ * targets, literal values and variable names already resolved, so that execution
+ * does not need to look up or re-parse anything. Instructions are kept parallel
+ * to the script's commands, so that labels behave exactly as they do in the {@link ControlInterpreter}.
+ * <p>
+ * Commands that are not Control commands are compiled to nothing, and are left to
+ * the {@link CompiledControlInterpreter}'s fallback. So are <b>wait</b> and <b>break</b>, 
+ * so that they go through {@link ControlInterpreter#doWait(SimpleScript, int)} and
+ * {@link ControlInterpreter#doBreak(SimpleScript, int)}, which subclasses may override.
+ * @author Matthew Tropiano
+ * @since 2.3.0
+ */
+public final class ControlCompiler
+{
+	/** 
+	 * Cache of compiled instructions, by script. 
+	 * Entries do not refer to their scripts, so they are dropped along with them.
+	 */
+	private static final Map<SimpleScript, CacheEntry> COMPILED_CACHE =
+		new WeakHashMap<SimpleScript, CacheEntry>();
+
+	private static final int
+	COMPARE_LESS = 0,
+	COMPARE_GREATER = 1,
+	COMPARE_EQUAL = 2,
+	COMPARE_NOT_EQUAL = 3,
+	COMPARE_LESS_OR_EQUAL = 4,
+	COMPARE_GREATER_OR_EQUAL = 5;
+
+	// Not instantiable.
+	private ControlCompiler() {}
+
+	/**
+	 * Compiles a SimpleScript into a new {@link CompiledControlScript}.
+	 * If the script is changed afterward, the compiled script is no longer current
+	 * (see {@link CompiledControlScript#isCurrent()}).
+	 * @param script the script to compile.
+	 * @return the compiled script.
+	 */
+	public static CompiledControlScript compile(SimpleScript script)
+	{
+		int modificationCount = script.getModificationCount();
+		return new CompiledControlScript(script, compileInstructions(script), modificationCount);
+	}
+
+	/**
+	 * Gets the compiled version of a SimpleScript, compiling it if it was not
+	 * compiled via this method before, or if it was changed since. The compiled 
+	 * instructions are cached until the source script is no longer referenced.
+	 * @param script the script to compile.
+	 * @return the compiled script.
+	 */
+	public static CompiledControlScript getCompiledScript(SimpleScript script)
+	{
+		synchronized (COMPILED_CACHE)
+		{
+			int modificationCount = script.getModificationCount();
+			CacheEntry entry = COMPILED_CACHE.get(script);
+			if (entry == null || entry.modificationCount != modificationCount)
+			{
+				entry = new CacheEntry(compileInstructions(script), modificationCount);
+				COMPILED_CACHE.put(script, entry);
+			}
+			return new CompiledControlScript(script, entry.instructions, modificationCount);
+		}
+	}
+
+	/** Compiles each command of a script into an instruction. */
+	private static Instruction[] compileInstructions(SimpleScript script)
+	{
+		List<Instruction> out = new List<Instruction>();
+		for (int i = 0; i < script.getCommandCount(); i++)
+			out.add(compileCommand(script, script.getOpcode(i, CONTROL_COMMANDS), script.getCommand(i)));
+
+		Instruction[] instructions = new Instruction[out.size()];
+		out.toArray(instructions);
+		return instructions;
+	}
+
+	/** Compiles a single command. */
+	private static Instruction compileCommand(SimpleScript script, int cmdIndex, Command command)
+	{
+		Argument[] args = command.getArguments();
+		switch (cmdIndex)
+		{
+			case COMMAND_GOTO:
+			{
+				Instruction check = checkLength(1, args);
+				if (check != null)
+					return check;
+				check = checkLabel(script, args[0]);
+				if (check != null)
+					return check;
+				return new Goto(script.getIndexByLabel(args[0].getValue()));
+			}
+			case COMMAND_GOSUB:
+			{
+				Instruction check = checkLength(1, args);
+				if (check != null)
+					return check;
+				check = checkLabel(script, args[0]);
+				if (check != null)
+					return check;
+				return new GoSub(script.getIndexByLabel(args[0].getValue()));
+			}
+			case COMMAND_RETURN:
+				return new Return();
+			case COMMAND_END:
+				return new Goto(-1);
+			case COMMAND_PRINT:
+			case COMMAND_PRINTLN:
+			{
+				Instruction check = checkLength(1, args);
+				if (check != null)
+					return check;
+				return new Print(operand(args[0]), cmdIndex == COMMAND_PRINTLN);
+			}
+			case COMMAND_SET:
+			{
+				Instruction check = checkLength(2, args);
+				if (check != null)
+					return check;
+				if (!args[0].isIdentifier())
+					return new Fail("Attempted SET on a non-variable.");
+				return new Set(args[0], operand(args[1]));
+			}
+			case COMMAND_INC:
+			case COMMAND_DEC:
+			{
+				Instruction check = checkLength(1, args);
+				if (check != null)
+					return check;
+				boolean inc = cmdIndex == COMMAND_INC;
+				if (!args[0].isIdentifier())
+					return new Fail("Attempted "+(inc ? "INC" : "DEC")+" on a non-variable.");
+				return new Increment(args[0], inc ? 1 : -1);
+			}
+			case COMMAND_GOLESS:
+				return compileBranch(script, args, COMPARE_LESS);
+			case COMMAND_GOGTR:
+				return compileBranch(script, args, COMPARE_GREATER);
+			case COMMAND_GOEQ:
+				return compileBranch(script, args, COMPARE_EQUAL);
+			case COMMAND_GONEQ:
+				return compileBranch(script, args, COMPARE_NOT_EQUAL);
+			case COMMAND_GOLESSEQ:
+				return compileBranch(script, args, COMPARE_LESS_OR_EQUAL);
+			case COMMAND_GOGTREQ:
+				return compileBranch(script, args, COMPARE_GREATER_OR_EQUAL);
+			case COMMAND_INCGOLESS:
+			case COMMAND_DECGOGTR:
+			{
+				Instruction check = checkLength(4, args);
+				if (check != null)
+					return check;
+				boolean inc = cmdIndex == COMMAND_INCGOLESS;
+				if (!args[0].isIdentifier())
+					return new Fail("Attempted "+(inc ? "INC" : "DEC")+" on a non-variable.");
+				check = checkLabel(script, args[3]);
+				if (check != null)
+					return new Sequence(new Increment(args[0], inc ? 1 : -1), check);
+				return new Sequence(
+					new Increment(args[0], inc ? 1 : -1), 
+					new Branch(operand(args[1]), operand(args[2]), script.getIndexByLabel(args[3].getValue()), inc ? COMPARE_LESS : COMPARE_GREATER)
+				);
+			}
+			case COMMAND_SETGOTO:
+			{
+				Instruction check = checkLength(3, args);
+				if (check != null)
+					return check;
+				if (!args[0].isIdentifier())
+					return new Fail("Attempted SET on a non-variable.");
+				check = checkLabel(script, args[2]);
+				if (check != null)
+					return new Sequence(new Set(args[0], operand(args[1])), check);
+				return new Sequence(new Set(args[0], operand(args[1])), new Goto(script.getIndexByLabel(args[2].getValue())));
+			}
+		}
+		return null;
+	}
+
+	/** Compiles a conditional branch. */
+	private static Instruction compileBranch(SimpleScript script, Argument[] args, int comparison)
+	{
+		Instruction check = checkLength(3, args);
+		if (check != null)
+			return check;
+		check = checkLabel(script, args[2]);
+		if (check != null)
+			return check;
+		return new Branch(operand(args[0]), operand(args[1]), script.getIndexByLabel(args[2].getValue()), comparison);
+	}
+
+	/**
+	 * Checks for the correct amount of necessary arguments.
+	 * Returns an instruction that fails the same way as the interpreter would, or null if okay.
+	 */
+	private static Instruction checkLength(int expected, Argument[] arguments)
+	{
+		if (expected > arguments.length)
+			return new Fail("Expected "+expected+" arguments for command, got "+arguments.length);
+		return null;
+	}
+
+	/**
+	 * Checks if an argument is a valid label.
+	 * Returns an instruction that fails the same way as the interpreter would, or null if okay.
+	 */
+	private static Instruction checkLabel(SimpleScript script, Argument argument)
+	{
+		String label = argument.getValue();
+		if (!argument.isIdentifier())
+			return new Fail("Argument is not an identifier: '"+label+"'");
+		if (script.getIndexByLabel(label) == -1)
+			return new Fail("Invalid label requested by script: '"+label+"'");
+		return null;
+	}
+
+	/** Creates the operand for an argument. */
+	private static Operand operand(Argument argument)
+	{
+		if (argument.isIdentifier())
+			return new Variable(argument);
+		else if (argument.isString())
+			return new Constant(new Value(argument.getValue()));
+		else if (argument.isInteger())
+			return new Constant(new Value(argument.getLong()));
+		else
+			return new Constant(new Value(argument.getDouble()));
+	}
+
+	/**
+	 * A single compiled command.
+	 */
+	static abstract class Instruction
+	{
+		/**
+		 * Executes this instruction.
+		 * @param interpreter the interpreter to execute this on.
+		 */
+		abstract void execute(ControlInterpreter interpreter);
+	}
+
+	/** Cached instructions for a script. */
+	private static final class CacheEntry
+	{
+		private Instruction[] instructions;
+		private int modificationCount;
+
+		CacheEntry(Instruction[] instructions, int modificationCount)
+		{
+			this.instructions = instructions;
+			this.modificationCount = modificationCount;
+		}
+	}
+
+	/**
+	 * A compiled command argument.
+	 */
+	private static abstract class Operand
+	{
+		/**
+		 * Gets the value of this operand. This value must not be altered.
+		 * @param interpreter the interpreter to read variables from.
+		 */
+		abstract Value get(ControlInterpreter interpreter);
+	}
+
+	/** A literal value. */
+	private static final class Constant extends Operand
+	{
+		private Value value;
+
+		Constant(Value value)
+		{
+			this.value = value;
+		}
+
+		@Override
+		Value get(ControlInterpreter interpreter)
+		{
+			return value;
+		}
+	}
+
+	/** A variable value. */
+	private static final class Variable extends Operand
+	{
+		/** Value of undefined variables. */
+		private static final Value UNDEFINED = new Value(0d);
+
+		private Argument argument;
+
+		Variable(Argument argument)
+		{
+			this.argument = argument;
+		}
+
+		@Override
+		Value get(ControlInterpreter interpreter)
+		{
+			Value v = interpreter.findVariable(argument);
+			return v != null ? v : UNDEFINED;
+		}
+	}
+
+	/** Throws a runtime exception when executed. */
+	private static final class Fail extends Instruction
+	{
+		private String message;
+
+		Fail(String message)
+		{
+			this.message = message;
+		}
+
+		@Override
+		void execute(ControlInterpreter interpreter)
+		{
+			throw new SimpleScriptRuntimeException(message, interpreter);
+		}
+	}
+
+	/** GOTO and END. */
+	private static final class Goto extends Instruction
+	{
+		private int target;
+
+		Goto(int target)
+		{
+			this.target = target;
+		}
+
+		@Override
+		void execute(ControlInterpreter interpreter)
+		{
+			interpreter.setNextCommandIndex(target);
+		}
+	}
+
+	/** GOSUB. */
+	private static final class GoSub extends Instruction
+	{
+		private int target;
+
+		GoSub(int target)
+		{
+			this.target = target;
+		}
+
+		@Override
+		void execute(ControlInterpreter interpreter)
+		{
+			interpreter.pushSubroutine(target);
+		}
+	}
+
+	/** RETURN. */
+	private static final class Return extends Instruction
+	{
+		@Override
+		void execute(ControlInterpreter interpreter)
+		{
+			if (!interpreter.popContext())
+				throw new SimpleScriptRuntimeException("RETURN without GOSUB.", interpreter);
+		}
+	}
+
+	/** PRINT and PRINTLN. */
+	private static final class Print extends Instruction
+	{
+		private Operand operand;
+		private boolean newline;
+
+		Print(Operand operand, boolean newline)
+		{
+			this.operand = operand;
+			this.newline = newline;
+		}
+
+		@Override
+		void execute(ControlInterpreter interpreter)
+		{
+			if (newline)
+				System.out.println(operand.get(interpreter));
+			else
+				System.out.print(operand.get(interpreter));
+		}
+	}
+
+	/** SET. */
+	private static final class Set extends Instruction
+	{
+		private Argument variable;
+		private Operand operand;
+
+		Set(Argument variable, Operand operand)
+		{
+			this.variable = variable;
+			this.operand = operand;
+		}
+
+		@Override
+		void execute(ControlInterpreter interpreter)
+		{
+			Value v = operand.get(interpreter);
+			interpreter.variableFor(variable).set(v);
+		}
+	}
+
+	/** INC and DEC. */
+	private static final class Increment extends Instruction
+	{
+		private Argument variable;
+		private long amount;
+
+		Increment(Argument variable, long amount)
+		{
+			this.variable = variable;
+			this.amount = amount;
+		}
+
+		@Override
+		void execute(ControlInterpreter interpreter)
+		{
+			interpreter.addToVariable(variable.getSlot(), variable.getValue(), amount);
+		}
+	}
+
+	/** GOLESS, GOGTR, GOEQ, GONEQ, GOLESSEQ and GOGTREQ. */
+	private static final class Branch extends Instruction
+	{
+		private Operand operand1;
+		private Operand operand2;
+		private int target;
+		private int comparison;
+
+		Branch(Operand operand1, Operand operand2, int target, int comparison)
+		{
+			this.operand1 = operand1;
+			this.operand2 = operand2;
+			this.target = target;
+			this.comparison = comparison;
+		}
+
+		@Override
+		void execute(ControlInterpreter interpreter)
+		{
+			int c = operand1.get(interpreter).compareTo(operand2.get(interpreter));
+			boolean jump;
+			switch (comparison)
+			{
+				case COMPARE_LESS:
+					jump = c < 0;
+					break;
+				case COMPARE_GREATER:
+					jump = c > 0;
+					break;
+				case COMPARE_EQUAL:
+					jump = c == 0;
+					break;
+				case COMPARE_NOT_EQUAL:
+					jump = c != 0;
+					break;
+				case COMPARE_LESS_OR_EQUAL:
+					jump = c <= 0;
+					break;
+				default:
+					jump = c >= 0;
+					break;
+			}
+			if (jump)
+				interpreter.setNextCommandIndex(target);
+		}
+	}
+
+	/** Fused commands: two instructions, executed in one step. */
+	private static final class Sequence extends Instruction
+	{
+		private Instruction first;
+		private Instruction second;
+
+		Sequence(Instruction first, Instruction second)
+		{
+			this.first = first;
+			this.second = second;
+		}
+
+		@Override
+		void execute(ControlInterpreter interpreter)
+		{
+			first.execute(interpreter);
+			second.execute(interpreter);
+		}
+	}
+
+}
@@ -20,8 +20,8 @@ public class ControlDescriptor extends SimpleScriptDescriptor
 	/** Creates a new control script descriptor. */
 	public ControlDescriptor()
 	{
-		setCommandEntry(CONTROL_COMMANDS[COMMAND_GOTO], 1, true, Type.IDENTIFIER);
-		setCommandEntry(CONTROL_COMMANDS[COMMAND_GOSUB], 1, true, Type.IDENTIFIER);
+		setCommandEntry(CONTROL_COMMANDS[COMMAND_GOTO], 1, true, Type.LABEL);
+		setCommandEntry(CONTROL_COMMANDS[COMMAND_GOSUB], 1, true, Type.LABEL);
 		setCommandEntry(CONTROL_COMMANDS[COMMAND_RETURN], 0, true);
 		setCommandEntry(CONTROL_COMMANDS[COMMAND_END], 0, true);
 		setCommandEntry(CONTROL_COMMANDS[COMMAND_PRINT], 1, false, (Type)null);
@@ -29,14 +29,17 @@ public class ControlDescriptor extends SimpleScriptDescriptor
 		setCommandEntry(CONTROL_COMMANDS[COMMAND_SET], 2, true, Type.IDENTIFIER, (Type)null);
 		setCommandEntry(CONTROL_COMMANDS[COMMAND_INC], 1, true, Type.IDENTIFIER);
 		setCommandEntry(CONTROL_COMMANDS[COMMAND_DEC], 1, true, Type.IDENTIFIER);
-		setCommandEntry(CONTROL_COMMANDS[COMMAND_GOLESS], 3, true, (Type)null, (Type)null, Type.IDENTIFIER);
-		setCommandEntry(CONTROL_COMMANDS[COMMAND_GOGTR], 3, true, (Type)null, (Type)null, Type.IDENTIFIER);
-		setCommandEntry(CONTROL_COMMANDS[COMMAND_GOEQ], 3, true, (Type)null, (Type)null, Type.IDENTIFIER);
-		setCommandEntry(CONTROL_COMMANDS[COMMAND_GONEQ], 3, true, (Type)null, (Type)null, Type.IDENTIFIER);
-		setCommandEntry(CONTROL_COMMANDS[COMMAND_GOLESSEQ], 3, true, (Type)null, (Type)null, Type.IDENTIFIER);
-		setCommandEntry(CONTROL_COMMANDS[COMMAND_GOGTREQ], 3, true, (Type)null, (Type)null, Type.IDENTIFIER);
+		setCommandEntry(CONTROL_COMMANDS[COMMAND_GOLESS], 3, true, (Type)null, (Type)null, Type.LABEL);
+		setCommandEntry(CONTROL_COMMANDS[COMMAND_GOGTR], 3, true, (Type)null, (Type)null, Type.LABEL);
+		setCommandEntry(CONTROL_COMMANDS[COMMAND_GOEQ], 3, true, (Type)null, (Type)null, Type.LABEL);
+		setCommandEntry(CONTROL_COMMANDS[COMMAND_GONEQ], 3, true, (Type)null, (Type)null, Type.LABEL);
+		setCommandEntry(CONTROL_COMMANDS[COMMAND_GOLESSEQ], 3, true, (Type)null, (Type)null, Type.LABEL);
+		setCommandEntry(CONTROL_COMMANDS[COMMAND_GOGTREQ], 3, true, (Type)null, (Type)null, Type.LABEL);
 		setCommandEntry(CONTROL_COMMANDS[COMMAND_BREAK], 0, true);
 		setCommandEntry(CONTROL_COMMANDS[COMMAND_WAIT], 1, true);
+		setCommandEntry(CONTROL_COMMANDS[COMMAND_INCGOLESS], 4, true, Type.IDENTIFIER, (Type)null, (Type)null, Type.LABEL);
+		setCommandEntry(CONTROL_COMMANDS[COMMAND_DECGOGTR], 4, true, Type.IDENTIFIER, (Type)null, (Type)null, Type.LABEL);
+		setCommandEntry(CONTROL_COMMANDS[COMMAND_SETGOTO], 3, true, Type.IDENTIFIER, (Type)null, Type.LABEL);
 	}
 	
 }
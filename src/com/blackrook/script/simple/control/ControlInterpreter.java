@@ -7,12 +7,18 @@
  ******************************************************************************/
 package com.blackrook.script.simple.control;
 
+import java.lang.reflect.Method;
+
 import com.blackrook.commons.hash.CaseInsensitiveHashMap;
 import com.blackrook.script.simple.Command;
 import com.blackrook.script.simple.SimpleScript;
+import com.blackrook.script.simple.SimpleScriptDescriptor;
+import com.blackrook.script.simple.SimpleScriptDescriptorSet;
 import com.blackrook.script.simple.SimpleScriptInterpreter;
+import com.blackrook.script.simple.SimpleScriptParseException;
 import com.blackrook.script.simple.SimpleScriptRuntimeException;
 import com.blackrook.script.simple.Command.Argument;
+import com.blackrook.script.simple.Command.Argument.Type;
 
 /**
  * A special interpreter that processes a set of control commands.
@@ -43,6 +49,10 @@ import com.blackrook.script.simple.Command.Argument;
  * <tr><td><b>break</b></td><td>&nbsp;</td><td>Tells the interpreter to break execution of this script until the next go() call.</td></tr>
  * <tr><td><b>wait</b></td><td>value</td><td>Sets the wait time (in milliseconds or calls to go()) for this script's execution, suspending execution until the interpreter's wait condition is met.</td></tr>
  * </table>
+ * <p>
+ * Scripts optimized by the {@link ControlOptimizer} may also contain fused commands 
+ * (<b>#incgoless</b>, <b>#decgogtr</b> and <b>#setgoto</b>), which do the work of two commands in one step.
+ * These cannot be written in a script.
  * 
  * @author Matthew Tropiano
  */
@@ -65,7 +75,10 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 		"golesseq",
 		"gogtreq",
 		"break",
-		"wait"
+		"wait",
+		"#incgoless",
+		"#decgogtr",
+		"#setgoto"
 	};
 
 	protected static final int
@@ -85,25 +98,72 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 	COMMAND_GOLESSEQ = 	13,
 	COMMAND_GOGTREQ = 	14,
 	COMMAND_BREAK = 	15,
-	COMMAND_WAIT = 		16;
+	COMMAND_WAIT = 		16,
+	COMMAND_INCGOLESS =	17,
+	COMMAND_DECGOGTR =	18,
+	COMMAND_SETGOTO =	19;
 	
 	/** Hash table containing the commands. */
-	private static final CaseInsensitiveHashMap<Integer> COMMAND_HASH = 
+	static final CaseInsensitiveHashMap<Integer> COMMAND_HASH = 
 		new CaseInsensitiveHashMap<Integer>()
 		{{
 			for (int i = 0; i < CONTROL_COMMANDS.length; i++)
 				put(CONTROL_COMMANDS[i], i);
 		}};
 
+	/** Names of the methods that took Commands and Arguments before 2.3.0. */
+	private static final String[] LEGACY_METHODS = {
+		"executeCommand", "argumentLengthCheck", "indexLabelCheck",
+		"doGoto", "doGoSub", "doReturn", "doEnd", "doPrint", "doPrintln", "doSet", "doIncrement", "doDecrement",
+		"doGotoLess", "doGotoGreater", "doGotoEqual", "doGotoNotEqual", "doGotoLessOrEqual", "doGotoGreaterOrEqual", "doWait"
+	};
+	
+	/** Does an interpreter class override any of the methods that take Commands and Arguments? */
+	private static final ClassValue<Boolean> LEGACY_DISPATCH = new ClassValue<Boolean>()
+	{
+		@Override
+		protected Boolean computeValue(Class<?> type)
+		{
+			for (Class<?> c = type; c != ControlInterpreter.class; c = c.getSuperclass())
+				for (Method m : c.getDeclaredMethods())
+					if (isLegacyMethod(m))
+						return true;
+			return false;
+		}
+	};
+
+	/** The descriptor that scripts are verified against. */
+	private static final SimpleScriptDescriptor CONTROL_DESCRIPTOR = new SimpleScriptDescriptorSet(new ControlDescriptor());
+
 	/** The variable list. */
 	protected CaseInsensitiveHashMap<Value> variableHash;
+	/** The script that the variable slots are bound to. */
+	protected SimpleScript slotScript;
+	/** The variables, by the slot script's identifier slots (null if not defined). */
+	protected Value[] variableSlots;
 	/** The wait time or length of a break. */
 	protected int waitTime;
 	/** Is the wait time a break count before the script continues via go()? */
 	protected boolean waitTimeIsBreakCount;
 	
-	/** Break time. */
+	/** Break time (see {@link #getTime()}). */
 	protected long breakTime; 
+	/** 
+	 * Was the script of the command being executed verified against this interpreter's descriptor?
+	 * If so, argument checks are skipped.
+	 * @since 2.3.0
+	 */
+	protected boolean verified;
+	
+	/** 
+	 * Does this interpreter's class override a method that takes Commands or Arguments?
+	 * If so, all commands are executed by {@link #executeCommand(Command)}.
+	 */
+	final boolean legacyDispatch;
+	/** Scratch value for reading the first literal argument of a command. */
+	private Value scratch1;
+	/** Scratch value for reading the second literal argument of a command. */
+	private Value scratch2;
 	
 	/**
 	 * Creates a new interpreter for scripts that use Control commands.
@@ -113,11 +173,177 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 	{
 		super(script);
 		variableHash = new CaseInsensitiveHashMap<Value>();
+		slotScript = null;
+		variableSlots = new Value[0];
+		waitTimeIsBreakCount = false;
+		waitTime = 0;
+		breakTime = -1;
+		verified = false;
+		scratch1 = new Value();
+		scratch2 = new Value();
+		legacyDispatch = LEGACY_DISPATCH.get(getClass());
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * All variables are cleared, and any wait is cancelled.
+	 */
+	@Override
+	public void reset()
+	{
+		super.reset();
+		variableHash.clear();
+		slotScript = null;
 		waitTimeIsBreakCount = false;
 		waitTime = 0;
 		breakTime = -1;
+		verified = false;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Subclasses that add commands may override this to return an array 
+	 * that begins with the contents of {@link #CONTROL_COMMANDS}.
+	 */
+	@Override
+	protected String[] getCommandSet()
+	{
+		return CONTROL_COMMANDS;
+	}
+	
+	/**
+	 * Returns the descriptor that this interpreter's scripts should be verified against
+	 * (see {@link #verify(SimpleScript, SimpleScriptDescriptor)}). Commands in scripts that 
+	 * were verified against it are run without checking their arguments.
+	 * <p>
+	 * By default, this returns {@link #getControlDescriptor()}.
+	 * Subclasses that add commands may override this to return a {@link SimpleScriptDescriptorSet}
+	 * that merges a {@link ControlDescriptor} with the descriptor for their commands. 
+	 * The same instance must be returned each time.
+	 * @since 2.3.0
+	 */
+	protected SimpleScriptDescriptor getDescriptor()
+	{
+		return CONTROL_DESCRIPTOR;
+	}
+	
+	/**
+	 * Returns the shared, immutable descriptor for Control commands.
+	 * @since 2.3.0
+	 */
+	public static SimpleScriptDescriptor getControlDescriptor()
+	{
+		return CONTROL_DESCRIPTOR;
+	}
+	
+	/**
+	 * Verifies a script for ControlInterpreters, against {@link #getControlDescriptor()}.
+	 * @param script the script to verify.
+	 * @throws SimpleScriptParseException if anything is wrong, listing every problem by line.
+	 * @see #verify(SimpleScript, SimpleScriptDescriptor)
+	 * @since 2.3.0
+	 */
+	public static void verify(SimpleScript script)
+	{
+		verify(script, CONTROL_DESCRIPTOR);
+	}
+	
+	/**
+	 * Verifies a script for ControlInterpreters against a descriptor 
+	 * (see {@link SimpleScript#verify(SimpleScriptDescriptor)}), so that interpreters
+	 * whose descriptor is the same instance (see {@link #getDescriptor()}) run its commands 
+	 * without checking their arguments.
+	 * <p>
+	 * This also follows the script's control flow from its first command, and fails if a 
+	 * RETURN can be reached without a GOSUB. Jumps that subclasses add are not followed, 
+	 * and scripts started at other labels are not checked from there. RETURN is still checked
+	 * when it is run, so if only this check fails, the script is still marked as verified.
+	 * @param script the script to verify.
+	 * @param descriptor the descriptor to verify against.
+	 * @throws SimpleScriptParseException if anything is wrong, listing every problem by line.
+	 * @since 2.3.0
+	 */
+	public static void verify(SimpleScript script, SimpleScriptDescriptor descriptor)
+	{
+		script.verify(descriptor);
+
+		int count = script.getCommandCount();
+		boolean[] visited = new boolean[count];
+		int[] pending = new int[count];
+		int pendingCount = 0;
+		StringBuilder errors = null;
+		if (count > 0)
+		{
+			visited[0] = true;
+			pending[pendingCount++] = 0;
+		}
+		while (pendingCount > 0)
+		{
+			int index = pending[--pendingCount];
+			Integer opcode = COMMAND_HASH.get(script.getCommandName(index));
+			int next = index + 1;
+			int target = -1;
+			switch (opcode != null ? opcode : -1)
+			{
+				case COMMAND_RETURN:
+					if (errors == null)
+						errors = new StringBuilder();
+					else
+						errors.append('\n');
+					errors.append("Line "+script.getLineNumber(index)+": RETURN can be reached without a GOSUB.");
+					next = -1;
+					break;
+				case COMMAND_END:
+					next = -1;
+					break;
+				case COMMAND_GOTO:
+					next = script.getArgumentLabelIndex(script.getArgumentOffset(index));
+					break;
+				case COMMAND_SETGOTO:
+					next = script.getArgumentLabelIndex(script.getArgumentOffset(index) + 2);
+					break;
+				case COMMAND_INCGOLESS:
+				case COMMAND_DECGOGTR:
+					target = script.getArgumentLabelIndex(script.getArgumentOffset(index) + 3);
+					break;
+				case COMMAND_GOLESS:
+				case COMMAND_GOGTR:
+				case COMMAND_GOEQ:
+				case COMMAND_GONEQ:
+				case COMMAND_GOLESSEQ:
+				case COMMAND_GOGTREQ:
+					target = script.getArgumentLabelIndex(script.getArgumentOffset(index) + 2);
+					break;
+				// GOSUB continues on the next command; its subroutine is not followed.
+			}
+			if (next >= 0 && next < count && !visited[next])
+			{
+				visited[next] = true;
+				pending[pendingCount++] = next;
+			}
+			if (target >= 0 && target < count && !visited[target])
+			{
+				visited[target] = true;
+				pending[pendingCount++] = target;
+			}
+		}
+
+		if (errors != null)
+			throw new SimpleScriptParseException(errors.toString());
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Control commands are usually executed by {@link #executeCommand(SimpleScript, int)}
+	 * straight from the script's storage, without Commands. If a subclass overrides this method,
+	 * or any of the deprecated methods that take Commands or Arguments, every command is
+	 * passed to this method instead, as it was before 2.3.0 (and scripts run that way should
+	 * have {@link SimpleScript#setCommandCaching(boolean)} on).
+	 * Subclasses that add commands should override {@link #executeCommand(SimpleScript, int)}.
+	 */
 	@Override
 	public boolean executeCommand(Command command)
 	{
@@ -174,10 +400,97 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 				break;
 			case COMMAND_BREAK:
 				waitTime = 1;
+				requestSafepoint();
 				break;
 			case COMMAND_WAIT:
 				doWait(command);
 				break;
+			case COMMAND_INCGOLESS:
+				doFusedGoto(command, 1L, 1);
+				break;
+			case COMMAND_DECGOGTR:
+				doFusedGoto(command, -1L, -1);
+				break;
+			case COMMAND_SETGOTO:
+				doSetGoto(command);
+				break;
+		}
+		
+		return true;
+	}
+	
+	@Override
+	protected boolean executeCommand(SimpleScript script, int index)
+	{
+		bindVariableSlots(script);
+		verified = script.isVerified(getDescriptor());
+		if (legacyDispatch)
+			return super.executeCommand(script, index);
+		
+		switch (script.getOpcode(index, getCommandSet()))
+		{
+			case COMMAND_GOTO:
+				doGoto(script, index);
+				break;
+			case COMMAND_GOSUB:
+				doGoSub(script, index);
+				break;
+			case COMMAND_RETURN:
+				doReturn(script, index);
+				break;
+			case COMMAND_END:
+				doEnd(script, index);
+				break;
+			case COMMAND_PRINT:
+				doPrint(script, index);
+				break;
+			case COMMAND_PRINTLN:
+				doPrintln(script, index);
+				break;
+			case COMMAND_SET:
+				doSet(script, index);
+				break;
+			case COMMAND_INC:
+				doIncrement(script, index);
+				break;
+			case COMMAND_DEC:
+				doDecrement(script, index);
+				break;
+			case COMMAND_GOLESS:
+				doGotoLess(script, index);
+				break;
+			case COMMAND_GOGTR:
+				doGotoGreater(script, index);
+				break;
+			case COMMAND_GOEQ:
+				doGotoEqual(script, index);
+				break;
+			case COMMAND_GONEQ:
+				doGotoNotEqual(script, index);
+				break;
+			case COMMAND_GOLESSEQ:
+				doGotoLessOrEqual(script, index);
+				break;
+			case COMMAND_GOGTREQ:
+				doGotoGreaterOrEqual(script, index);
+				break;
+			case COMMAND_BREAK:
+				doBreak(script, index);
+				break;
+			case COMMAND_WAIT:
+				doWait(script, index);
+				break;
+			case COMMAND_INCGOLESS:
+				doIncrementGotoLess(script, index);
+				break;
+			case COMMAND_DECGOGTR:
+				doDecrementGotoGreater(script, index);
+				break;
+			case COMMAND_SETGOTO:
+				doSetGoto(script, index);
+				break;
+			default:
+				return super.executeCommand(script, index);
 		}
 		
 		return true;
@@ -211,9 +524,7 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 	 */
 	public void setVariable(String name, String value)
 	{
-		Value v = new Value();
-		v.set(value);
-		variableHash.put(name, v);
+		variableFor(name).set(value);
 	}
 	
 	/**
@@ -224,9 +535,7 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 	 */
 	public void setVariable(String name, double value)
 	{
-		Value v = new Value();
-		v.set(value);
-		variableHash.put(name, v);
+		variableFor(name).set(value);
 	}
 	
 	/**
@@ -237,9 +546,7 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 	 */
 	public void setVariable(String name, long value)
 	{
-		Value v = new Value();
-		v.set(value);
-		variableHash.put(name, v);
+		variableFor(name).set(value);
 	}
 	
 	/**
@@ -250,9 +557,108 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 	 */
 	public void setVariable(String name, Value value)
 	{
-		Value v = new Value();
-		v.set(value);
-		variableHash.put(name, v);
+		variableFor(name).set(value);
+	}
+	
+	/**
+	 * Gets the value holder for a variable, creating it if it does not exist.
+	 * Variable names are case-insensitive.
+	 * @param name	the name of the variable.
+	 */
+	protected Value variableFor(String name)
+	{
+		Value v = variableHash.get(name);
+		if (v == null)
+		{
+			v = new Value();
+			variableHash.put(name, v);
+			if (slotScript != null)
+			{
+				int slot = slotScript.getIdentifierSlot(name);
+				if (slot >= 0 && slot < variableSlots.length)
+					variableSlots[slot] = v;
+			}
+		}
+		return v;
+	}
+	
+	/**
+	 * Gets the value holder for a variable named by an identifier argument of
+	 * the current script, creating it if it does not exist.
+	 * @param argument the identifier argument.
+	 * @since 2.3.0
+	 */
+	protected Value variableFor(Argument argument)
+	{
+		return variableFor(argument.getSlot(), argument.getValue());
+	}
+	
+	/**
+	 * Gets the value holder for a variable named by an identifier of
+	 * the current script, creating it if it does not exist.
+	 * @param slot the identifier's slot in the current script.
+	 * @param name the identifier.
+	 * @since 2.3.0
+	 */
+	protected Value variableFor(int slot, String name)
+	{
+		if (slot < 0 || slot >= variableSlots.length)
+			return variableFor(name);
+		
+		Value v = variableSlots[slot];
+		if (v == null)
+		{
+			v = new Value();
+			variableHash.put(name, v);
+			variableSlots[slot] = v;
+		}
+		return v;
+	}
+	
+	/**
+	 * Gets the value holder for a variable named by an identifier argument of
+	 * the current script.
+	 * @param argument the identifier argument.
+	 * @return the value, or null if the variable is not defined.
+	 * @since 2.3.0
+	 */
+	protected Value findVariable(Argument argument)
+	{
+		return findVariable(argument.getSlot(), argument.getValue());
+	}
+	
+	/**
+	 * Gets the value holder for a variable named by an identifier of
+	 * the current script.
+	 * @param slot the identifier's slot in the current script.
+	 * @param name the identifier.
+	 * @return the value, or null if the variable is not defined.
+	 * @since 2.3.0
+	 */
+	protected Value findVariable(int slot, String name)
+	{
+		if (slot < 0 || slot >= variableSlots.length)
+			return variableHash.get(name);
+		return variableSlots[slot];
+	}
+	
+	/**
+	 * Binds the variable slots to a script's identifier slots, if they are not bound to it already,
+	 * so that variables named by the script's arguments can be accessed by slot.
+	 * This is called before each command is executed, using the current context's script.
+	 * @param script the script to bind to.
+	 * @since 2.3.0
+	 */
+	protected void bindVariableSlots(SimpleScript script)
+	{
+		if (script == slotScript && variableSlots.length == script.getIdentifierCount())
+			return;
+		
+		Value[] slots = new Value[script.getIdentifierCount()];
+		for (int i = 0; i < slots.length; i++)
+			slots[i] = variableHash.get(script.getIdentifier(i));
+		slotScript = script;
+		variableSlots = slots;
 	}
 	
 	/**
@@ -263,9 +669,10 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 	 */
 	public Value getVariable(String name)
 	{
-		if (!variableHash.containsKey(name))
+		Value v = variableHash.get(name);
+		if (v == null)
 			return new Value(0d);
-		return variableHash.get(name);
+		return v;
 	}
 	
 	/**
@@ -273,15 +680,71 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 	 * its variable value if it is an identifier.
 	 */
 	public Value getArgumentValue(Argument argument)
+	{
+		return getArgumentValue(argument, new Value());
+	}
+	
+	/**
+	 * Gets the value of an argument, resolving its variable value if it is an identifier,
+	 * without creating a new value. Literal and undefined variable values are copied into 
+	 * <code>scratch</code>, using the argument's pre-parsed constant, so the returned
+	 * value is only valid until <code>scratch</code> is used again.
+	 * @param argument the argument to read.
+	 * @param scratch the value to copy literals into.
+	 * @return the variable's value or <code>scratch</code>.
+	 * @since 2.3.0
+	 */
+	protected Value getArgumentValue(Argument argument, Value scratch)
 	{
 		if (argument.isIdentifier())
-			return getVariable(argument.getValue());
+		{
+			Value v = findVariable(argument);
+			if (v != null)
+				return v;
+			scratch.set(0d);
+		}
 		else if (argument.isString())
-			return new Value(argument.getValue());
+			scratch.set(argument.getValue());
 		else if (argument.isInteger())
-			return new Value(argument.getInt());
+			scratch.set(argument.getLong());
 		else
-			return new Value(argument.getDouble());
+			scratch.set(argument.getDouble());
+		return scratch;
+	}
+	
+	/**
+	 * Gets the value of a command argument in a script, like {@link #getArgumentValue(Argument, Value)}, 
+	 * reading it straight from the script's storage.
+	 * @param script the script (the current context's script).
+	 * @param position the argument position in the script.
+	 * @param scratch the value to copy literals into.
+	 * @return the variable's value or <code>scratch</code>.
+	 * @see SimpleScript#getArgumentOffset(int)
+	 * @since 2.3.0
+	 */
+	protected Value getArgumentValue(SimpleScript script, int position, Value scratch)
+	{
+		switch (script.getArgumentType(position))
+		{
+			case IDENTIFIER:
+			{
+				Value v = findVariable(script.getArgumentSlot(position), script.getArgumentValue(position));
+				if (v != null)
+					return v;
+				scratch.set(0d);
+				break;
+			}
+			case STRING:
+				scratch.set(script.getArgumentValue(position));
+				break;
+			case INTEGER:
+				scratch.set(script.getArgumentLong(position));
+				break;
+			default:
+				scratch.set(script.getArgumentDouble(position));
+				break;
+		}
+		return scratch;
 	}
 	
 	@Override
@@ -290,12 +753,25 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 		if (waitTime > 0)
 		{
 			if (breakTime == -1)
-				breakTime = System.currentTimeMillis();
+				breakTime = getTime();
 			return true;
 		}
 		return false;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * If the wait time is millisecond based, this is the time that the current wait ends.
+	 */
+	@Override
+	public long getWaitDeadline()
+	{
+		if (waitTimeIsBreakCount || waitTime <= 0 || breakTime == -1)
+			return -1L;
+		return breakTime + waitTime;
+	}
+
 	@Override
 	public void resetBreak()
 	{
@@ -303,7 +779,7 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 			waitTime--;
 		else
 		{
-			long bt = System.currentTimeMillis();
+			long bt = getTime();
 			int time = (int)(bt - breakTime);
 			waitTime -= time;
 			if (waitTime <= 0) bt = -1;
@@ -314,84 +790,376 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 	/** 
 	 * Checks for the correct amount of necessary arguments.
 	 * Throws a runtime exception otherwise. 
+	 * Does nothing if the script was verified.
+	 */
+	protected void argumentLengthCheck(int expected, int count)
+	{
+		if (!verified && expected > count)
+			throw new SimpleScriptRuntimeException("Expected "+expected+" arguments for command, got "+count, this);
+	}
+	
+	/** 
+	 * Gets the target index from a label argument, using the argument's resolved label index if it has one.
+	 * Throws exceptions if the argument is not an identifier nor a valid label. 
+	 * Label arguments in verified scripts always have resolved label indices.
 	 */
+	protected int indexLabelCheck(SimpleScript script, int position)
+	{
+		int linked = script.getArgumentLabelIndex(position);
+		if (linked >= 0)
+			return linked;
+		String label = script.getArgumentValue(position);
+		if (script.getArgumentType(position) != Type.IDENTIFIER)
+			throw new SimpleScriptRuntimeException("Argument is not an identifier: '"+label+"'", this);
+		int index = getCommandIndexByLabel(label);
+		if (index == -1)
+			throw new SimpleScriptRuntimeException("Invalid label requested by script: '"+label+"'", this);
+		return index;
+	}
+	
+	/** Performs the GOTO command. */
+	protected void doGoto(SimpleScript script, int index)
+	{
+		argumentLengthCheck(1, script.getArgumentCount(index));
+		setNextCommandIndex(indexLabelCheck(script, script.getArgumentOffset(index)));
+	}
+	
+	/** Performs the GOSUB command. */
+	protected void doGoSub(SimpleScript script, int index)
+	{
+		argumentLengthCheck(1, script.getArgumentCount(index));
+		pushSubroutine(indexLabelCheck(script, script.getArgumentOffset(index)));
+	}
+	
+	/** Performs the RETURN command. */
+	protected void doReturn(SimpleScript script, int index)
+	{
+		if (!popContext())
+			throw new SimpleScriptRuntimeException("RETURN without GOSUB.", this);
+	}
+	
+	/** Performs the END command. */
+	protected void doEnd(SimpleScript script, int index)
+	{
+		setNextCommandIndex(-1);
+	}
+	
+	/** Performs the PRINT command. */
+	protected void doPrint(SimpleScript script, int index)
+	{
+		argumentLengthCheck(1, script.getArgumentCount(index));
+		System.out.print(getArgumentValue(script, script.getArgumentOffset(index), scratch1));
+	}
+	
+	/** Performs the PRINTLN command. */
+	protected void doPrintln(SimpleScript script, int index)
+	{
+		argumentLengthCheck(1, script.getArgumentCount(index));
+		System.out.println(getArgumentValue(script, script.getArgumentOffset(index), scratch1));
+	}
+	
+	/** Performs the SET command. */
+	protected void doSet(SimpleScript script, int index)
+	{
+		argumentLengthCheck(2, script.getArgumentCount(index));
+		int var = script.getArgumentOffset(index);
+		if (!verified && script.getArgumentType(var) != Type.IDENTIFIER)
+			throw new SimpleScriptRuntimeException("Attempted SET on a non-variable.", this);
+		else
+		{
+			Value v = getArgumentValue(script, var + 1, scratch1);
+			variableFor(script.getArgumentSlot(var), script.getArgumentValue(var)).set(v);
+		}
+	}
+	
+	/** Performs the INC command. */
+	protected void doIncrement(SimpleScript script, int index)
+	{
+		argumentLengthCheck(1, script.getArgumentCount(index));
+		int var = script.getArgumentOffset(index);
+		if (!verified && script.getArgumentType(var) != Type.IDENTIFIER)
+			throw new SimpleScriptRuntimeException("Attempted INC on a non-variable.", this);
+		else
+			addToVariable(script.getArgumentSlot(var), script.getArgumentValue(var), 1L);
+	}
+	
+	/** Performs the DEC command. */
+	protected void doDecrement(SimpleScript script, int index)
+	{
+		argumentLengthCheck(1, script.getArgumentCount(index));
+		int var = script.getArgumentOffset(index);
+		if (!verified && script.getArgumentType(var) != Type.IDENTIFIER)
+			throw new SimpleScriptRuntimeException("Attempted DEC on a non-variable.", this);
+		else
+			addToVariable(script.getArgumentSlot(var), script.getArgumentValue(var), -1L);
+	}
+
+	/** 
+	 * Adds an amount to a variable for INC and DEC, setting it to the amount if it is not defined.
+	 * Integer variables stay integers, anything else is added to as a double.
+	 */
+	void addToVariable(int slot, String name, long amount)
+	{
+		Value v = findVariable(slot, name);
+		if (v == null)
+			variableFor(slot, name).set(amount);
+		else if (v.type == Value.TYPE_INTEGER)
+			v.add(amount);
+		else
+			v.add((double)amount);
+	}
+	
+	/** 
+	 * Compares the first two arguments of a command.
+	 * @return a negative number, zero, or a positive number if the first is less than, equal to, or greater than the second. 
+	 */
+	private int compareArguments(SimpleScript script, int position)
+	{
+		Value v1 = getArgumentValue(script, position, scratch1);
+		Value v2 = getArgumentValue(script, position + 1, scratch2);
+		return v1.compareTo(v2);
+	}
+
+	/** Performs the GOLESS command. */
+	protected void doGotoLess(SimpleScript script, int index)
+	{
+		argumentLengthCheck(3, script.getArgumentCount(index));
+		int args = script.getArgumentOffset(index);
+		int target = indexLabelCheck(script, args + 2);
+		if (compareArguments(script, args) < 0)
+			setNextCommandIndex(target);
+	}
+	
+	/** Performs the GOGTR command. */
+	protected void doGotoGreater(SimpleScript script, int index)
+	{
+		argumentLengthCheck(3, script.getArgumentCount(index));
+		int args = script.getArgumentOffset(index);
+		int target = indexLabelCheck(script, args + 2);
+		if (compareArguments(script, args) > 0)
+			setNextCommandIndex(target);
+	}
+	
+	/** Performs the GOEQ command. */
+	protected void doGotoEqual(SimpleScript script, int index)
+	{
+		argumentLengthCheck(3, script.getArgumentCount(index));
+		int args = script.getArgumentOffset(index);
+		int target = indexLabelCheck(script, args + 2);
+		if (compareArguments(script, args) == 0)
+			setNextCommandIndex(target);
+	}
+	
+	/** Performs the GOLESSEQ command. */
+	protected void doGotoLessOrEqual(SimpleScript script, int index)
+	{
+		argumentLengthCheck(3, script.getArgumentCount(index));
+		int args = script.getArgumentOffset(index);
+		int target = indexLabelCheck(script, args + 2);
+		if (compareArguments(script, args) <= 0)
+			setNextCommandIndex(target);
+	}
+	
+	/** Performs the GOGTREQ command. */
+	protected void doGotoGreaterOrEqual(SimpleScript script, int index)
+	{
+		argumentLengthCheck(3, script.getArgumentCount(index));
+		int args = script.getArgumentOffset(index);
+		int target = indexLabelCheck(script, args + 2);
+		if (compareArguments(script, args) >= 0)
+			setNextCommandIndex(target);
+	}
+	
+	/** Performs the GONEQ command. */
+	protected void doGotoNotEqual(SimpleScript script, int index)
+	{
+		argumentLengthCheck(3, script.getArgumentCount(index));
+		int args = script.getArgumentOffset(index);
+		int target = indexLabelCheck(script, args + 2);
+		if (compareArguments(script, args) != 0)
+			setNextCommandIndex(target);
+	}
+	
+	/** 
+	 * Performs the fused INC and GOLESS command: 
+	 * <code>#incgoless variable, value1, value2, label</code>.
+	 * @since 2.3.0
+	 */
+	protected void doIncrementGotoLess(SimpleScript script, int index)
+	{
+		argumentLengthCheck(4, script.getArgumentCount(index));
+		int args = script.getArgumentOffset(index);
+		if (!verified && script.getArgumentType(args) != Type.IDENTIFIER)
+			throw new SimpleScriptRuntimeException("Attempted INC on a non-variable.", this);
+		addToVariable(script.getArgumentSlot(args), script.getArgumentValue(args), 1L);
+		int target = indexLabelCheck(script, args + 3);
+		if (compareArguments(script, args + 1) < 0)
+			setNextCommandIndex(target);
+	}
+	
+	/** 
+	 * Performs the fused DEC and GOGTR command: 
+	 * <code>#decgogtr variable, value1, value2, label</code>.
+	 * @since 2.3.0
+	 */
+	protected void doDecrementGotoGreater(SimpleScript script, int index)
+	{
+		argumentLengthCheck(4, script.getArgumentCount(index));
+		int args = script.getArgumentOffset(index);
+		if (!verified && script.getArgumentType(args) != Type.IDENTIFIER)
+			throw new SimpleScriptRuntimeException("Attempted DEC on a non-variable.", this);
+		addToVariable(script.getArgumentSlot(args), script.getArgumentValue(args), -1L);
+		int target = indexLabelCheck(script, args + 3);
+		if (compareArguments(script, args + 1) > 0)
+			setNextCommandIndex(target);
+	}
+	
+	/** 
+	 * Performs the fused SET and GOTO command: 
+	 * <code>#setgoto variable, value, label</code>.
+	 * @since 2.3.0
+	 */
+	protected void doSetGoto(SimpleScript script, int index)
+	{
+		argumentLengthCheck(3, script.getArgumentCount(index));
+		int var = script.getArgumentOffset(index);
+		if (!verified && script.getArgumentType(var) != Type.IDENTIFIER)
+			throw new SimpleScriptRuntimeException("Attempted SET on a non-variable.", this);
+		Value v = getArgumentValue(script, var + 1, scratch1);
+		variableFor(script.getArgumentSlot(var), script.getArgumentValue(var)).set(v);
+		setNextCommandIndex(indexLabelCheck(script, var + 2));
+	}
+	
+	/** Performs the BREAK command. */
+	protected void doBreak(SimpleScript script, int index)
+	{
+		waitTime = 1;
+		requestSafepoint();
+	}
+	
+	/** Performs the WAIT command. */
+	protected void doWait(SimpleScript script, int index)
+	{
+		argumentLengthCheck(1, script.getArgumentCount(index));
+		waitTime = (int)getArgumentValue(script, script.getArgumentOffset(index), scratch1).toDouble();
+		requestSafepoint();
+	}
+	
+	/** 
+	 * Checks for the correct amount of necessary arguments.
+	 * Throws a runtime exception otherwise. 
+	 * @deprecated Since 2.3.0. Use {@link #argumentLengthCheck(int, int)}.
+	 */
+	@Deprecated
 	protected void argumentLengthCheck(int expected, Argument[] arguments)
 	{
-		if (expected > arguments.length)
-			throw new SimpleScriptRuntimeException("Expected "+expected+" arguments for command, got "+arguments.length, this);
+		argumentLengthCheck(expected, arguments.length);
 	}
 	
 	/** 
-	 * Gets the target index from a label.
+	 * Gets the target index from a label argument, using the argument's resolved label index if it has one.
 	 * Throws exceptions if the argument is not an identifier nor a valid label. 
+	 * @deprecated Since 2.3.0. Use {@link #indexLabelCheck(SimpleScript, int)}.
 	 */
+	@Deprecated
 	protected int indexLabelCheck(Argument argument)
 	{
+		if (argument.getLabelIndex() >= 0)
+			return argument.getLabelIndex();
 		String label = argument.getValue();
 		if (!argument.isIdentifier())
 			throw new SimpleScriptRuntimeException("Argument is not an identifier: '"+label+"'", this);
-		int index = getCommandIndexByLabel(argument.getValue());
+		int index = getCommandIndexByLabel(label);
 		if (index == -1)
 			throw new SimpleScriptRuntimeException("Invalid label requested by script: '"+label+"'", this);
 		return index;
 	}
 	
-	/** Performs the GOTO command. */
+	/** 
+	 * Performs the GOTO command.
+	 * @deprecated Since 2.3.0. Use {@link #doGoto(SimpleScript, int)}.
+	 */
+	@Deprecated
 	protected void doGoto(Command command)
 	{
 		argumentLengthCheck(1, command.getArguments());
-		int index = indexLabelCheck(command.getArguments()[0]);
-		setNextCommandIndex(index);
+		setNextCommandIndex(indexLabelCheck(command.getArguments()[0]));
 	}
 	
-	/** Performs the GOSUB command. */
+	/** 
+	 * Performs the GOSUB command.
+	 * @deprecated Since 2.3.0. Use {@link #doGoSub(SimpleScript, int)}.
+	 */
+	@Deprecated
 	protected void doGoSub(Command command)
 	{
 		argumentLengthCheck(1, command.getArguments());
-		int index = indexLabelCheck(command.getArguments()[0]);
-		pushSubroutine(index);
+		pushSubroutine(indexLabelCheck(command.getArguments()[0]));
 	}
 	
-	/** Performs the RETURN command. */
+	/** 
+	 * Performs the RETURN command.
+	 * @deprecated Since 2.3.0. Use {@link #doReturn(SimpleScript, int)}.
+	 */
+	@Deprecated
 	protected void doReturn(Command command)
 	{
 		if (!popContext())
 			throw new SimpleScriptRuntimeException("RETURN without GOSUB.", this);
 	}
 	
-	/** Performs the END command. */
+	/** 
+	 * Performs the END command.
+	 * @deprecated Since 2.3.0. Use {@link #doEnd(SimpleScript, int)}.
+	 */
+	@Deprecated
 	protected void doEnd(Command command)
 	{
 		setNextCommandIndex(-1);
 	}
 	
-	/** Performs the PRINT command. */
+	/** 
+	 * Performs the PRINT command.
+	 * @deprecated Since 2.3.0. Use {@link #doPrint(SimpleScript, int)}.
+	 */
+	@Deprecated
 	protected void doPrint(Command command)
 	{
 		argumentLengthCheck(1, command.getArguments());
-		System.out.print(getArgumentValue(command.getArguments()[0]));
+		System.out.print(getArgumentValue(command.getArguments()[0], scratch1));
 	}
 	
-	/** Performs the PRINTLN command. */
+	/** 
+	 * Performs the PRINTLN command.
+	 * @deprecated Since 2.3.0. Use {@link #doPrintln(SimpleScript, int)}.
+	 */
+	@Deprecated
 	protected void doPrintln(Command command)
 	{
 		argumentLengthCheck(1, command.getArguments());
-		System.out.println(getArgumentValue(command.getArguments()[0]));
+		System.out.println(getArgumentValue(command.getArguments()[0], scratch1));
 	}
 	
-	/** Performs the SET command. */
+	/** 
+	 * Performs the SET command.
+	 * @deprecated Since 2.3.0. Use {@link #doSet(SimpleScript, int)}.
+	 */
+	@Deprecated
 	protected void doSet(Command command)
 	{
 		argumentLengthCheck(2, command.getArguments());
 		Argument var = command.getArguments()[0];
-		Argument var2 = command.getArguments()[1];
 		if (!var.isIdentifier())
 			throw new SimpleScriptRuntimeException("Attempted SET on a non-variable.", this);
 		else
-			setVariable(var.getValue(), getArgumentValue(var2));
+			variableFor(var).set(getArgumentValue(command.getArguments()[1], scratch1));
 	}
 	
-	/** Performs the INC command. */
+	/** 
+	 * Performs the INC command.
+	 * @deprecated Since 2.3.0. Use {@link #doIncrement(SimpleScript, int)}.
+	 */
+	@Deprecated
 	protected void doIncrement(Command command)
 	{
 		argumentLengthCheck(1, command.getArguments());
@@ -399,21 +1167,14 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 		if (!var.isIdentifier())
 			throw new SimpleScriptRuntimeException("Attempted INC on a non-variable.", this);
 		else
-		{
-			if (!variableHash.containsKey(var.getValue()))
-				setVariable(var.getValue(), 1);
-			else
-			{
-				Value v = variableHash.get(var.getValue());
-				if (v.type == Value.TYPE_INTEGER)
-					v.add(1);
-				else
-					v.add(1d);
-			}
-		}
+			addToVariable(var.getSlot(), var.getValue(), 1L);
 	}
 	
-	/** Performs the DEC command. */
+	/** 
+	 * Performs the DEC command.
+	 * @deprecated Since 2.3.0. Use {@link #doDecrement(SimpleScript, int)}.
+	 */
+	@Deprecated
 	protected void doDecrement(Command command)
 	{
 		argumentLengthCheck(1, command.getArguments());
@@ -421,100 +1182,168 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 		if (!var.isIdentifier())
 			throw new SimpleScriptRuntimeException("Attempted DEC on a non-variable.", this);
 		else
-		{
-			if (!variableHash.containsKey(var.getValue()))
-				setVariable(var.getValue(), -1);
-			else
-			{
-				Value v = variableHash.get(var.getValue());
-				if (v.type == Value.TYPE_INTEGER)
-					v.add(-1);
-				else
-					v.add(-1d);
-			}
-		}
+			addToVariable(var.getSlot(), var.getValue(), -1L);
+	}
+	
+	/** 
+	 * Compares two arguments.
+	 * @return a negative number, zero, or a positive number if the first is less than, equal to, or greater than the second. 
+	 */
+	private int compareArguments(Argument argument1, Argument argument2)
+	{
+		Value v1 = getArgumentValue(argument1, scratch1);
+		Value v2 = getArgumentValue(argument2, scratch2);
+		return v1.compareTo(v2);
 	}
 
-	/** Performs the GOLESS command. */
+	/** 
+	 * Performs the GOLESS command.
+	 * @deprecated Since 2.3.0. Use {@link #doGotoLess(SimpleScript, int)}.
+	 */
+	@Deprecated
 	protected void doGotoLess(Command command)
 	{
 		Argument[] args = command.getArguments();
 		argumentLengthCheck(3, args);
 		int index = indexLabelCheck(args[2]);
-		Value v1 = getArgumentValue(args[0]);
-		Value v2 = getArgumentValue(args[1]);
-		if (v1.compareTo(v2) < 0)
+		if (compareArguments(args[0], args[1]) < 0)
 			setNextCommandIndex(index);
 	}
 	
-	/** Performs the GOGTR command. */
+	/** 
+	 * Performs the GOGTR command.
+	 * @deprecated Since 2.3.0. Use {@link #doGotoGreater(SimpleScript, int)}.
+	 */
+	@Deprecated
 	protected void doGotoGreater(Command command)
 	{
 		Argument[] args = command.getArguments();
 		argumentLengthCheck(3, args);
 		int index = indexLabelCheck(args[2]);
-		Value v1 = getArgumentValue(args[0]);
-		Value v2 = getArgumentValue(args[1]);
-		if (v1.compareTo(v2) > 0)
+		if (compareArguments(args[0], args[1]) > 0)
 			setNextCommandIndex(index);
 	}
 	
-	/** Performs the GOEQ command. */
+	/** 
+	 * Performs the GOEQ command.
+	 * @deprecated Since 2.3.0. Use {@link #doGotoEqual(SimpleScript, int)}.
+	 */
+	@Deprecated
 	protected void doGotoEqual(Command command)
 	{
 		Argument[] args = command.getArguments();
 		argumentLengthCheck(3, args);
 		int index = indexLabelCheck(args[2]);
-		Value v1 = getArgumentValue(args[0]);
-		Value v2 = getArgumentValue(args[1]);
-		if (v1.compareTo(v2) == 0)
+		if (compareArguments(args[0], args[1]) == 0)
 			setNextCommandIndex(index);
 	}
 	
-	/** Performs the GOLESSEQ command. */
+	/** 
+	 * Performs the GOLESSEQ command.
+	 * @deprecated Since 2.3.0. Use {@link #doGotoLessOrEqual(SimpleScript, int)}.
+	 */
+	@Deprecated
 	protected void doGotoLessOrEqual(Command command)
 	{
 		Argument[] args = command.getArguments();
 		argumentLengthCheck(3, args);
 		int index = indexLabelCheck(args[2]);
-		Value v1 = getArgumentValue(args[0]);
-		Value v2 = getArgumentValue(args[1]);
-		if (v1.compareTo(v2) <= 0)
+		if (compareArguments(args[0], args[1]) <= 0)
 			setNextCommandIndex(index);
 	}
 	
-	/** Performs the GOGTREQ command. */
+	/** 
+	 * Performs the GOGTREQ command.
+	 * @deprecated Since 2.3.0. Use {@link #doGotoGreaterOrEqual(SimpleScript, int)}.
+	 */
+	@Deprecated
 	protected void doGotoGreaterOrEqual(Command command)
 	{
 		Argument[] args = command.getArguments();
 		argumentLengthCheck(3, args);
 		int index = indexLabelCheck(args[2]);
-		Value v1 = getArgumentValue(args[0]);
-		Value v2 = getArgumentValue(args[1]);
-		if (v1.compareTo(v2) >= 0)
+		if (compareArguments(args[0], args[1]) >= 0)
 			setNextCommandIndex(index);
 	}
 	
-	/** Performs the GONEQ command. */
+	/** 
+	 * Performs the GONEQ command.
+	 * @deprecated Since 2.3.0. Use {@link #doGotoNotEqual(SimpleScript, int)}.
+	 */
+	@Deprecated
 	protected void doGotoNotEqual(Command command)
 	{
 		Argument[] args = command.getArguments();
 		argumentLengthCheck(3, args);
 		int index = indexLabelCheck(args[2]);
-		Value v1 = getArgumentValue(args[0]);
-		Value v2 = getArgumentValue(args[1]);
-		if (v1.compareTo(v2) != 0)
+		if (compareArguments(args[0], args[1]) != 0)
 			setNextCommandIndex(index);
 	}
 	
-	/** Performs the WAIT command. */
+	/** 
+	 * Performs the WAIT command.
+	 * @deprecated Since 2.3.0. Use {@link #doWait(SimpleScript, int)}.
+	 */
+	@Deprecated
 	protected void doWait(Command command)
 	{
 		argumentLengthCheck(1, command.getArguments());
-		waitTime = (int)getArgumentValue(command.getArguments()[0]).toDouble();
+		waitTime = (int)getArgumentValue(command.getArguments()[0], scratch1).toDouble();
+		requestSafepoint();
+	}
+	
+	/** 
+	 * Performs a fused #incgoless or #decgogtr Command.
+	 * @param amount the amount to add to the variable.
+	 * @param sign the sign of the comparison that makes the jump.
+	 */
+	private void doFusedGoto(Command command, long amount, int sign)
+	{
+		Argument[] args = command.getArguments();
+		argumentLengthCheck(4, args);
+		if (!args[0].isIdentifier())
+			throw new SimpleScriptRuntimeException("Attempted "+(amount > 0 ? "INC" : "DEC")+" on a non-variable.", this);
+		addToVariable(args[0].getSlot(), args[0].getValue(), amount);
+		int index = indexLabelCheck(args[3]);
+		if (Integer.signum(compareArguments(args[1], args[2])) == sign)
+			setNextCommandIndex(index);
+	}
+	
+	/** 
+	 * Performs a fused #setgoto Command.
+	 */
+	private void doSetGoto(Command command)
+	{
+		Argument[] args = command.getArguments();
+		argumentLengthCheck(3, args);
+		if (!args[0].isIdentifier())
+			throw new SimpleScriptRuntimeException("Attempted SET on a non-variable.", this);
+		variableFor(args[0]).set(getArgumentValue(args[1], scratch1));
+		setNextCommandIndex(indexLabelCheck(args[2]));
+	}
+	
+	/**
+	 * Returns true if a method is one of the methods that took Commands or Arguments before 2.3.0.
+	 */
+	private static boolean isLegacyMethod(Method method)
+	{
+		boolean named = false;
+		for (String name : LEGACY_METHODS)
+			if (name.equals(method.getName()))
+				named = true;
+		if (!named)
+			return false;
+		for (Class<?> type : method.getParameterTypes())
+			if (type == Command.class || type == Argument.class || type == Argument[].class)
+				return true;
+		return false;
 	}
 	
-	/** Value class. */
+	/** 
+	 * Value class.
+	 * Numeric values are stored as primitives, and their string form is only
+	 * created when it is asked for.
+	 */
 	public static class Value implements Comparable<Value>
 	{
 		public static final byte
@@ -522,14 +1351,19 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 		TYPE_FLOAT = 1,
 		TYPE_INTEGER = 2;
 		
-		protected String value;
 		protected byte type;
+		/** Value, if INTEGER. */
+		protected long longValue;
+		/** Value, if FLOAT. */
+		protected double doubleValue;
+		/** Value, if STRING, or the cached string form of a numeric value (can be null). */
+		protected String stringValue;
 
 		/** Value constructor for ControlInterpreters. */
 		Value()
 		{
-			value = "0";
 			type = TYPE_INTEGER;
+			longValue = 0L;
 		}
 		
 		/** 
@@ -538,29 +1372,67 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 		 */
 		Value(long n)
 		{
-			this();
 			set(n);
 		}
 
 		/** Value constructor for ControlInterpreters. */
 		Value(double d)
 		{
-			this();
 			set(d);
 		}
 		
 		/** Value constructor for ControlInterpreters. */
 		Value(String s)
 		{
-			this();
 			set(s);
 		}
 		
+		/**
+		 * Returns the string form of this value, which used to be kept in the "value" field.
+		 * @deprecated Numeric values are no longer kept as strings, and the "value" field
+		 * was replaced by "longValue", "doubleValue", and "stringValue". Use {@link #toString()}.
+		 */
+		@Deprecated
+		protected String getValue()
+		{
+			return toString();
+		}
+		
+		/**
+		 * Sets this value from a string form, keeping its type, like setting the "value" field used to.
+		 * Numeric types are parsed from the string (the type becomes STRING if it does not parse).
+		 * @deprecated The "value" field was replaced by "longValue", "doubleValue", and "stringValue". 
+		 * Use {@link #set(long)}, {@link #set(double)} or {@link #set(String)}.
+		 */
+		@Deprecated
+		protected void setValue(String v)
+		{
+			try {
+				if (type == TYPE_INTEGER)
+				{
+					longValue = Long.parseLong(v);
+					stringValue = v;
+					return;
+				}
+				else if (type == TYPE_FLOAT)
+				{
+					doubleValue = Double.parseDouble(v);
+					stringValue = v;
+					return;
+				}
+			} catch (NumberFormatException e) {
+				// becomes a string.
+			}
+			set(v);
+		}
+		
 		/** Sets this value using another value. */
 		public void set(Value v)
 		{
 			type = v.type;
-			value = v.value;
+			longValue = v.longValue;
+			doubleValue = v.doubleValue;
+			stringValue = v.stringValue;
 		}
 
 		/** 
@@ -570,21 +1442,23 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 		public void set(long v)
 		{
 			type = TYPE_INTEGER;
-			value = String.valueOf(v);
+			longValue = v;
+			stringValue = null;
 		}
 
 		/** Sets this value using a double. Sets internal type to FLOAT. */
 		public void set(double v)
 		{
 			type = TYPE_FLOAT;
-			value = String.valueOf(v);
+			doubleValue = v;
+			stringValue = null;
 		}
 
 		/** Sets this value using a String. Sets internal type to STRING. */
 		public void set(String v)
 		{
 			type = TYPE_STRING;
-			value = v;
+			stringValue = v;
 		}
 
 		/** 
@@ -594,11 +1468,17 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 		public void add(long v)
 		{
 			if (type == TYPE_INTEGER)
-				value = String.valueOf(toLong() + v);
+			{
+				longValue += v;
+				stringValue = null;
+			}
 			else if (type == TYPE_FLOAT)
-				value = String.valueOf(toDouble() + v);
+			{
+				doubleValue += v;
+				stringValue = null;
+			}
 			else
-				value += v;
+				stringValue += v;
 		}
 
 		/** 
@@ -609,13 +1489,17 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 		{
 			if (type == TYPE_INTEGER)
 			{
-				value = String.valueOf(toDouble() + v);
+				doubleValue = longValue + v;
+				stringValue = null;
 				type = TYPE_FLOAT;
 			}
 			else if (type == TYPE_FLOAT)
-				value = String.valueOf(toDouble() + v);
+			{
+				doubleValue += v;
+				stringValue = null;
+			}
 			else
-				value += v;
+				stringValue += v;
 		}
 
 		/** 
@@ -624,8 +1508,8 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 		 */
 		public void add(String v)
 		{
+			stringValue = toString() + v;
 			type = TYPE_STRING;
-			value += v;
 		}
 
 		/** 
@@ -635,8 +1519,13 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 		 */
 		public long toLong()
 		{
+			if (type == TYPE_INTEGER)
+				return longValue;
+			else if (type == TYPE_FLOAT)
+				return (long)doubleValue;
+			
 			try {
-				return Long.parseLong(value);
+				return Long.parseLong(stringValue);
 			} catch (NumberFormatException e) {
 				double d = toDouble();
 				if (Double.isNaN(d))
@@ -648,8 +1537,13 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 		/** Converts this to a double. */
 		public double toDouble()
 		{
+			if (type == TYPE_INTEGER)
+				return longValue;
+			else if (type == TYPE_FLOAT)
+				return doubleValue;
+			
 			try {
-				return Double.parseDouble(value);
+				return Double.parseDouble(stringValue);
 			} catch (NumberFormatException e) {
 				return Double.NaN;
 			}
@@ -658,20 +1552,27 @@ public class ControlInterpreter extends SimpleScriptInterpreter
 		@Override
 		public String toString()
 		{
-			return value;
+			if (stringValue == null)
+			{
+				if (type == TYPE_INTEGER)
+					stringValue = String.valueOf(longValue);
+				else if (type == TYPE_FLOAT)
+					stringValue = String.valueOf(doubleValue);
+			}
+			return stringValue;
 		}
 
 		@Override
 		public int compareTo(Value v)
 		{
-			if ((type == TYPE_FLOAT || type == TYPE_INTEGER) && (v.type == TYPE_FLOAT || v.type == TYPE_INTEGER))
+			if (type != TYPE_STRING && v.type != TYPE_STRING)
 			{
-				double d1 = Double.parseDouble(value);
-				double d2 = Double.parseDouble(v.value);
+				double d1 = toDouble();
+				double d2 = v.toDouble();
 				return d1 == d2 ? 0 : d1 < d2 ? -1 : 1;
 			}
 			else
-				return value.compareTo(v.value);
+				return toString().compareTo(v.toString());
 		}
 		
 	}
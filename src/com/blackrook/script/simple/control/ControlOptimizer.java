@@ -0,0 +1,445 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.simple.control;
+
+import java.util.Iterator;
+
+import com.blackrook.commons.hash.CaseInsensitiveHashMap;
+import com.blackrook.script.simple.Command;
+import com.blackrook.script.simple.SimpleScript;
+import com.blackrook.script.simple.SimpleScriptDescriptor;
+import com.blackrook.script.simple.SimpleScriptLineSource;
+import com.blackrook.script.simple.SimpleScriptParseException;
+import com.blackrook.script.simple.Command.Argument;
+import com.blackrook.script.simple.Command.Argument.Type;
+import com.blackrook.script.simple.control.ControlInterpreter.Value;
+
+import static com.blackrook.script.simple.control.ControlInterpreter.*;
+
+/**
+ * Optimizes SimpleScripts that use Control commands, into new scripts that do the same thing
+ * in fewer steps.
+ * <p>
+ * The optimizer:
+ * <ul>
+ * <li>Threads jumps: jumps to a <b>goto</b> jump straight to where it goes, a <b>goto</b> to an
+ * <b>end</b> becomes an <b>end</b>, and a <b>goto</b> to the next command is removed.</li>
+ * <li>Folds conditional jumps that compare two literals into a <b>goto</b>, or removes them.</li>
+ * <li>Removes commands that cannot be reached from the start of the script or from a label.</li>
+ * <li>Fuses <b>inc</b> then <b>goless</b>, <b>dec</b> then <b>gogtr</b>, and <b>set</b> then <b>goto</b>
+ * into single commands that the {@link ControlInterpreter} runs in one step.</li>
+ * </ul>
+ * Labels, and the line numbers and lines of the commands that are kept, are preserved, so that
+ * runtime errors still point at the right source lines. Fused commands have the line of the first command
+ * of the pair. Commands are never fused if the second command can be jumped to.
+ * Commands with missing or bad arguments are left alone so that they fail the same way when run.
+ * <p>
+ * Command indices change, so the optimized script should only be started at its
+ * beginning or at a label, and commands that subclasses add should not jump by index.
+ * Jumps to places that have no label are given new labels, named <code>@</code> and a command index.
+ * Fused commands count as one step toward an interpreter's runaway limit.
+ * @author Matthew Tropiano
+ * @since 2.3.0
+ */
+public final class ControlOptimizer
+{
+	/** Prefix for created labels (cannot be read from a script). */
+	private static final String LABEL_PREFIX = "@";
+
+	// Not instantiable.
+	private ControlOptimizer() {}
+
+	/**
+	 * Optimizes a script, linking and verifying the optimized script
+	 * against {@link ControlInterpreter#getControlDescriptor()}.
+	 * @param script the script to optimize. It is not changed.
+	 * @return a new, optimized script.
+	 * @see #optimize(SimpleScript, SimpleScriptDescriptor)
+	 */
+	public static SimpleScript optimize(SimpleScript script)
+	{
+		return optimize(script, getControlDescriptor());
+	}
+
+	/**
+	 * Optimizes a script.
+	 * The optimized script's labels are linked using the descriptor, unless a jump names a label that
+	 * is not defined, and it is verified against the descriptor if the source script was
+	 * (see {@link SimpleScript#isVerified(SimpleScriptDescriptor)}).
+	 * The descriptor should describe the fused commands, like {@link ControlDescriptor} does.
+	 * @param script the script to optimize. It is not changed.
+	 * @param descriptor the descriptor to link and verify the optimized script with.
+	 * @return a new, optimized script.
+	 */
+	public static SimpleScript optimize(SimpleScript script, SimpleScriptDescriptor descriptor)
+	{
+		int count = script.getCommandCount();
+		String[] names = new String[count];
+		int[] opcodes = new int[count];
+		Argument[][] arguments = new Argument[count][];
+		int[] targets = new int[count];
+		boolean[] removed = new boolean[count];
+
+		for (int i = 0; i < count; i++)
+		{
+			names[i] = script.getCommandName(i);
+			Integer opcode = COMMAND_HASH.get(names[i]);
+			opcodes[i] = opcode != null ? opcode : -1;
+			int offset = script.getArgumentOffset(i);
+			Argument[] args = new Argument[script.getArgumentCount(i)];
+			for (int a = 0; a < args.length; a++)
+				args[a] = new Argument(script.getArgumentValue(offset + a), script.getArgumentType(offset + a));
+			arguments[i] = args;
+			targets[i] = resolveTarget(script, opcodes[i], args);
+		}
+
+		foldConstants(names, opcodes, arguments, targets, removed);
+		threadJumps(names, opcodes, arguments, targets, removed);
+		removeDeadCode(script, opcodes, targets, removed);
+		fuse(script, names, opcodes, arguments, targets, removed);
+		return rebuild(script, descriptor, names, opcodes, arguments, targets, removed);
+	}
+
+	/**
+	 * Returns the position of the label argument of a command, or -1 if it does not jump.
+	 */
+	private static int labelPosition(int opcode)
+	{
+		switch (opcode)
+		{
+			case COMMAND_GOTO:
+			case COMMAND_GOSUB:
+				return 0;
+			case COMMAND_GOLESS:
+			case COMMAND_GOGTR:
+			case COMMAND_GOEQ:
+			case COMMAND_GONEQ:
+			case COMMAND_GOLESSEQ:
+			case COMMAND_GOGTREQ:
+			case COMMAND_SETGOTO:
+				return 2;
+			case COMMAND_INCGOLESS:
+			case COMMAND_DECGOGTR:
+				return 3;
+			default:
+				return -1;
+		}
+	}
+
+	/**
+	 * Returns the command index that a jump goes to, or -1 if it does not jump or would fail
+	 * when run. Indices past the end of the script are the end of the script.
+	 */
+	private static int resolveTarget(SimpleScript script, int opcode, Argument[] args)
+	{
+		int position = labelPosition(opcode);
+		// every jump's label is its last required argument.
+		if (position < 0 || args.length <= position || !args[position].isIdentifier())
+			return -1;
+		int index = script.getIndexByLabel(args[position].getValue());
+		if (index < 0)
+			return -1;
+		return Math.min(index, script.getCommandCount());
+	}
+
+	/** Returns the first command at or after an index that was not removed. */
+	private static int effective(boolean[] removed, int index)
+	{
+		while (index < removed.length && removed[index])
+			index++;
+		return index;
+	}
+
+	/** Folds conditional jumps between literals. */
+	private static void foldConstants(String[] names, int[] opcodes, Argument[][] arguments, int[] targets, boolean[] removed)
+	{
+		for (int i = 0; i < opcodes.length; i++)
+		{
+			int opcode = opcodes[i];
+			if (opcode < COMMAND_GOLESS || opcode > COMMAND_GOGTREQ || targets[i] < 0)
+				continue;
+			Argument[] args = arguments[i];
+			if (args[0].isIdentifier() || args[1].isIdentifier())
+				continue;
+
+			int c = literal(args[0]).compareTo(literal(args[1]));
+			boolean jump;
+			switch (opcode)
+			{
+				case COMMAND_GOLESS:
+					jump = c < 0;
+					break;
+				case COMMAND_GOGTR:
+					jump = c > 0;
+					break;
+				case COMMAND_GOEQ:
+					jump = c == 0;
+					break;
+				case COMMAND_GONEQ:
+					jump = c != 0;
+					break;
+				case COMMAND_GOLESSEQ:
+					jump = c <= 0;
+					break;
+				default:
+					jump = c >= 0;
+					break;
+			}
+
+			if (jump)
+			{
+				names[i] = CONTROL_COMMANDS[COMMAND_GOTO];
+				opcodes[i] = COMMAND_GOTO;
+				arguments[i] = new Argument[]{args[2]};
+			}
+			else
+				removed[i] = true;
+		}
+	}
+
+	/** Returns the value of a literal argument, as the interpreter reads it. */
+	private static Value literal(Argument argument)
+	{
+		if (argument.isString())
+			return new Value(argument.getValue());
+		else if (argument.isInteger())
+			return new Value(argument.getLong());
+		else
+			return new Value(argument.getDouble());
+	}
+
+	/** Threads jumps through GOTOs. */
+	private static void threadJumps(String[] names, int[] opcodes, Argument[][] arguments, int[] targets, boolean[] removed)
+	{
+		int count = opcodes.length;
+		for (int i = 0; i < count; i++)
+		{
+			if (removed[i] || targets[i] < 0)
+				continue;
+
+			int target = effective(removed, targets[i]);
+			// the hop limit stops GOTO loops.
+			for (int hops = 0; hops < count && target < count && opcodes[target] == COMMAND_GOTO && targets[target] >= 0; hops++)
+				target = effective(removed, targets[target]);
+			targets[i] = target;
+
+			if (opcodes[i] != COMMAND_GOTO)
+				continue;
+			if (target == count || opcodes[target] == COMMAND_END)
+			{
+				names[i] = CONTROL_COMMANDS[COMMAND_END];
+				opcodes[i] = COMMAND_END;
+				arguments[i] = new Argument[0];
+				targets[i] = -1;
+			}
+			else if (target == effective(removed, i + 1))
+				removed[i] = true;
+		}
+	}
+
+	/** Removes commands that cannot be reached from the start of the script or a label. */
+	private static void removeDeadCode(SimpleScript script, int[] opcodes, int[] targets, boolean[] removed)
+	{
+		int count = opcodes.length;
+		boolean[] reached = new boolean[count + 1];
+		int[] pending = new int[count + 1];
+		int pendingCount = 0;
+
+		reached[count] = true;
+		int start = effective(removed, 0);
+		if (!reached[start])
+		{
+			reached[start] = true;
+			pending[pendingCount++] = start;
+		}
+		Iterator<String> it = script.getLabelNames();
+		while (it.hasNext())
+		{
+			int index = script.getIndexByLabel(it.next());
+			if (index < 0 || index >= count)
+				continue;
+			index = effective(removed, index);
+			if (!reached[index])
+			{
+				reached[index] = true;
+				pending[pendingCount++] = index;
+			}
+		}
+
+		while (pendingCount > 0)
+		{
+			int index = pending[--pendingCount];
+			int next = effective(removed, index + 1);
+			int target = targets[index];
+			switch (opcodes[index])
+			{
+				case COMMAND_END:
+				case COMMAND_RETURN:
+					next = count;
+					break;
+				case COMMAND_GOTO:
+				case COMMAND_SETGOTO:
+					next = target >= 0 ? target : count;
+					target = -1;
+					break;
+				default:
+					// jumps that would fail stop the script.
+					if (labelPosition(opcodes[index]) >= 0 && target < 0)
+						next = count;
+					break;
+			}
+			if (!reached[next])
+			{
+				reached[next] = true;
+				pending[pendingCount++] = next;
+			}
+			if (target >= 0 && !reached[target])
+			{
+				reached[target] = true;
+				pending[pendingCount++] = target;
+			}
+		}
+
+		for (int i = 0; i < count; i++)
+			if (!reached[i])
+				removed[i] = true;
+	}
+
+	/** Fuses pairs of commands. */
+	private static void fuse(SimpleScript script, String[] names, int[] opcodes, Argument[][] arguments, int[] targets, boolean[] removed)
+	{
+		int count = opcodes.length;
+		boolean[] jumpedTo = new boolean[count + 1];
+		for (int i = 0; i < count; i++)
+			if (!removed[i] && targets[i] >= 0)
+				jumpedTo[targets[i]] = true;
+		Iterator<String> it = script.getLabelNames();
+		while (it.hasNext())
+		{
+			int index = script.getIndexByLabel(it.next());
+			if (index >= 0)
+				jumpedTo[effective(removed, Math.min(index, count))] = true;
+		}
+
+		for (int i = 0; i < count; i++)
+		{
+			if (removed[i])
+				continue;
+			int j = effective(removed, i + 1);
+			if (j == count || jumpedTo[j] || targets[j] < 0)
+				continue;
+
+			Argument[] first = arguments[i];
+			Argument[] second = arguments[j];
+			int fused;
+			if (opcodes[i] == COMMAND_INC && opcodes[j] == COMMAND_GOLESS && first.length == 1 && second.length == 3)
+				fused = COMMAND_INCGOLESS;
+			else if (opcodes[i] == COMMAND_DEC && opcodes[j] == COMMAND_GOGTR && first.length == 1 && second.length == 3)
+				fused = COMMAND_DECGOGTR;
+			else if (opcodes[i] == COMMAND_SET && opcodes[j] == COMMAND_GOTO && first.length == 2 && second.length == 1)
+				fused = COMMAND_SETGOTO;
+			else
+				continue;
+			if (!first[0].isIdentifier())
+				continue;
+
+			Argument[] args = new Argument[first.length + second.length];
+			System.arraycopy(first, 0, args, 0, first.length);
+			System.arraycopy(second, 0, args, first.length, second.length);
+			names[i] = CONTROL_COMMANDS[fused];
+			opcodes[i] = fused;
+			arguments[i] = args;
+			targets[i] = targets[j];
+			removed[j] = true;
+		}
+	}
+
+	/** Builds the optimized script. */
+	private static SimpleScript rebuild(SimpleScript script, SimpleScriptDescriptor descriptor, String[] names,
+		int[] opcodes, Argument[][] arguments, int[] targets, boolean[] removed)
+	{
+		int count = opcodes.length;
+		int[] newIndex = new int[count + 1];
+		int newCount = 0;
+		for (int i = 0; i < count; i++)
+		{
+			newIndex[i] = newCount;
+			if (!removed[i])
+				newCount++;
+		}
+		newIndex[count] = newCount;
+
+		SimpleScript out = new SimpleScript();
+		Iterator<String> it = script.getMetaDataKeys();
+		while (it.hasNext())
+		{
+			String key = it.next();
+			out.setMetaData(key, script.getMetaData(key));
+		}
+
+		CaseInsensitiveHashMap<Integer> labels = new CaseInsensitiveHashMap<Integer>();
+		String[] labelAt = new String[newCount + 1];
+		it = script.getLabelNames();
+		while (it.hasNext())
+		{
+			String label = it.next();
+			int index = script.getIndexByLabel(label);
+			if (index >= 0)
+			{
+				index = newIndex[Math.min(index, count)];
+				if (labelAt[index] == null)
+					labelAt[index] = label;
+			}
+			labels.put(label, index);
+		}
+
+		SimpleScriptLineSource lineSource = script.getLineSource();
+		for (int i = 0; i < count; i++)
+		{
+			if (removed[i])
+				continue;
+
+			Argument[] args = arguments[i];
+			if (targets[i] >= 0)
+			{
+				int position = labelPosition(opcodes[i]);
+				int target = newIndex[targets[i]];
+				Integer current = labels.get(args[position].getValue());
+				if (current == null || current != target)
+				{
+					if (labelAt[target] == null)
+					{
+						labelAt[target] = LABEL_PREFIX + target;
+						labels.put(labelAt[target], target);
+					}
+					args = args.clone();
+					args[position] = new Argument(labelAt[target], Type.IDENTIFIER);
+				}
+			}
+			out.addCommand(new Command(names[i], args, lineSource != null ? null : script.getLine(i), script.getLineNumber(i)));
+		}
+
+		it = labels.keyIterator();
+		while (it.hasNext())
+		{
+			String label = it.next();
+			out.setLabel(label, labels.get(label));
+		}
+		out.setLineSource(lineSource);
+
+		try {
+			out.linkLabels(descriptor);
+			if (script.isVerified(descriptor))
+				out.verify(descriptor);
+		} catch (SimpleScriptParseException e) {
+			// left unlinked or unverified: undefined labels fail when they are run, like in the source script.
+		}
+		return out;
+	}
+
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.simple;
+
+import java.util.Random;
+
+/**
+ * Builds SimpleScriptNameIndexes of many sizes, and checks every name (in any case), 
+ * names that are not in them, duplicates, and null names.
+ */
+public class SimpleScriptNameIndexTest
+{
+	private static int failures = 0;
+
+	public static void main(String[] args) throws Exception
+	{
+		Random random = new Random(5678L);
+		for (int size = 0; size <= 300; size += size < 40 ? 1 : 13)
+		{
+			String[] names = new String[size];
+			for (int i = 0; i < size; i++)
+				names[i] = randomName(random);
+			check("size" + size, names);
+		}
+
+		check("control", new String[]{
+			"goto", "gosub", "return", "end", "print", "println", "set", "inc", "dec", "goless", "gogtr", 
+			"goeq", "goneq", "golesseq", "gogtreq", "break", "wait", "#incgoless", "#decgogtr", "#setgoto"
+		});
+		check("duplicates", new String[]{"a", "b", "A", "c", "B", "a"});
+		check("nulls", new String[]{null, "x", null, "y", null});
+		check("similar", new String[]{"ab", "ba", "aB", "abc", "ab_", "a", "b", ""});
+
+		// the index for a command set is built once per instance.
+		String[] commandSet = {"one", "two"};
+		if (SimpleScriptNameIndex.forCommandSet(commandSet) != SimpleScriptNameIndex.forCommandSet(commandSet))
+			fail("forCommandSet", "built more than once");
+
+		System.out.println(failures + " failures.");
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	private static void check(String name, String[] names)
+	{
+		SimpleScriptNameIndex index = new SimpleScriptNameIndex(names);
+		for (int i = 0; i < names.length; i++)
+		{
+			if (names[i] == null)
+				continue;
+			int expected = lastIndexOf(names, names[i]);
+			String[] forms = {names[i], names[i].toUpperCase(), names[i].toLowerCase(), new String(names[i].toCharArray())};
+			for (String form : forms)
+				if (index.get(form) != expected)
+					fail(name, "'" + form + "' is " + index.get(form) + ", expected " + expected);
+		}
+
+		String[] missing = {"missing", "zzzzzzzzzzzz", "gotox", "got", "@", "a b"};
+		for (String m : missing)
+			if (lastIndexOf(names, m) == -1 && index.get(m) != -1)
+				fail(name, "'" + m + "' is " + index.get(m) + ", expected -1");
+	}
+
+	/** Returns the index of the last name that matches, ignoring case. */
+	private static int lastIndexOf(String[] names, String name)
+	{
+		for (int i = names.length - 1; i >= 0; i--)
+			if (names[i] != null && names[i].equalsIgnoreCase(name))
+				return i;
+		return -1;
+	}
+
+	private static String randomName(Random random)
+	{
+		char[] c = new char[1 + random.nextInt(12)];
+		for (int i = 0; i < c.length; i++)
+			c[i] = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789_#".charAt(random.nextInt(64));
+		return new String(c);
+	}
+
+	private static void fail(String name, String message)
+	{
+		System.out.println(name + ": " + message);
+		failures++;
+	}
+
+}
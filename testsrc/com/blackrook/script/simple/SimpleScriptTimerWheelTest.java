@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.simple;
+
+import java.util.IdentityHashMap;
+import java.util.Random;
+
+import com.blackrook.commons.linkedlist.Queue;
+import com.blackrook.script.simple.control.ControlInterpreter;
+
+/**
+ * Adds interpreters to a SimpleScriptTimerWheel at deadlines on every level, on level
+ * boundaries, and past the end of the wheel, and checks that each one comes out on its deadline.
+ */
+public class SimpleScriptTimerWheelTest
+{
+	/** Time covered by the wheel's levels. */
+	private static final long WHEEL_SPAN = 1L << 24;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) throws Exception
+	{
+		// cascades from each level, exactly on and around the level boundaries.
+		long[] boundaries = {63, 64, 65, 4095, 4096, 4097, 262143, 262144, 262145, WHEEL_SPAN - 1, WHEEL_SPAN, WHEEL_SPAN + 1};
+		check("boundaries", 0L, boundaries, new long[]{1, 7, 100, 5000, 300000, WHEEL_SPAN * 4});
+
+		// overflow: far past the end of the wheel, added at a time that is not aligned.
+		long[] overflow = {WHEEL_SPAN * 2 + 5, WHEEL_SPAN * 3, WHEEL_SPAN * 40 + 12345, 1000};
+		check("overflow", 12345L, overflow, new long[]{WHEEL_SPAN, WHEEL_SPAN * 100});
+
+		// deadlines at or before the current time are due on the next advance.
+		check("past", 1000L, new long[]{0, 999, 1000, 1001}, new long[]{1, 1});
+
+		// random deadlines, advanced in random steps, some in one big jump.
+		Random random = new Random(1234L);
+		for (int r = 0; r < 20; r++)
+		{
+			long start = random.nextInt(1 << 20);
+			long[] deadlines = new long[200];
+			for (int i = 0; i < deadlines.length; i++)
+			{
+				long range = 1L << (6 * (1 + random.nextInt(5)));
+				deadlines[i] = start + (long)(random.nextDouble() * range);
+			}
+			long[] steps = new long[50];
+			for (int i = 0; i < steps.length; i++)
+				steps[i] = random.nextBoolean() ? 1 + random.nextInt(64) : 1L << random.nextInt(32);
+			check("random" + r, start, deadlines, steps);
+		}
+
+		System.out.println(failures + " failures.");
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	/**
+	 * Adds interpreters with deadlines to a wheel at a time, advances it by each step in turn 
+	 * (and then to each next deadline until it is empty), and checks when each interpreter comes out.
+	 */
+	private static void check(String name, long start, long[] deadlines, long[] steps)
+	{
+		SimpleScriptTimerWheel wheel = new SimpleScriptTimerWheel(start);
+		IdentityHashMap<SimpleScriptInterpreter, Long> due = new IdentityHashMap<SimpleScriptInterpreter, Long>();
+		for (long deadline : deadlines)
+		{
+			SimpleScriptInterpreter interpreter = new ControlInterpreter(new SimpleScript());
+			wheel.add(interpreter, deadline);
+			due.put(interpreter, Math.max(deadline, start + 1));
+		}
+
+		Queue<SimpleScriptInterpreter> out = new Queue<SimpleScriptInterpreter>();
+		long time = start;
+		int step = 0;
+		while (!due.isEmpty())
+		{
+			long next = nextDeadline(due);
+			if (wheel.getNextDeadline() != next)
+			{
+				fail(name, "next deadline is " + wheel.getNextDeadline() + " at " + time + ", expected " + next);
+				return;
+			}
+
+			time = step < steps.length ? time + steps[step++] : next;
+			wheel.advance(time, out);
+			if (wheel.getTime() != time)
+			{
+				fail(name, "wheel time is " + wheel.getTime() + ", expected " + time);
+				return;
+			}
+			while (!out.isEmpty())
+			{
+				SimpleScriptInterpreter interpreter = out.dequeue();
+				Long deadline = due.remove(interpreter);
+				if (deadline == null)
+				{
+					fail(name, "an interpreter came out twice, at " + time);
+					return;
+				}
+				if (deadline > time)
+				{
+					fail(name, "an interpreter due at " + deadline + " came out early, at " + time);
+					return;
+				}
+			}
+			for (Long deadline : due.values())
+			{
+				if (deadline <= time)
+				{
+					fail(name, "an interpreter due at " + deadline + " did not come out at " + time);
+					return;
+				}
+			}
+			if (wheel.size() != due.size())
+			{
+				fail(name, "wheel size is " + wheel.size() + ", expected " + due.size());
+				return;
+			}
+		}
+		if (wheel.getNextDeadline() != -1L)
+			fail(name, "empty wheel has a next deadline");
+	}
+
+	private static long nextDeadline(IdentityHashMap<SimpleScriptInterpreter, Long> due)
+	{
+		long out = Long.MAX_VALUE;
+		for (Long deadline : due.values())
+			out = Math.min(out, deadline);
+		return out;
+	}
+
+	private static void fail(String name, String message)
+	{
+		System.out.println(name + ": " + message);
+		failures++;
+	}
+
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+
+import com.blackrook.script.simple.SimpleScript;
+import com.blackrook.script.simple.SimpleScriptDescriptor;
+import com.blackrook.script.simple.SimpleScriptFactory;
+import com.blackrook.script.simple.SimpleScriptParseException;
+import com.blackrook.script.simple.control.ControlDescriptor;
+
+/**
+ * Reads the test script and a set of edge cases with both the InputStream parser
+ * and the byte array reader, and checks that both read the same script, or fail with the same errors.
+ */
+public class ByteReaderParityTest
+{
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String[] CASES = {
+		"! type: control\n:start\n\tset x 1\n\tgoto start\n",
+		"\tset x 0x1F\n\tset y 0XAB\n",
+		"\tset x -5\n\tset y -2.5\n\tset z .5\n",
+		"\tset x 1e5\n\tset y 2.5E-3\n\tset z 3e+2\n",
+		"\tprintln \"a\\tb\\\"c\\\\\"\n\tprintln 'single \\'quoted\\''\n",
+		"\tset x 1\r\n\tprintln x\r\n",
+		"\uFEFF\tprintln \"bom\"\n",
+		"\tprintln \"unterminated\n",
+		"\tprintln 1 /* never ends\n\tprintln 2\n",
+		"\tset x /* a comment\nover lines */ 5\n\tprintln x\n",
+		"\tprintln 1 // line comment\n// whole line\n\tprintln 2\n",
+		"\tprintln 1",
+		"\tgoto 5\n\tset 1 2\n",
+		"\tset x 1.5\n\twait \"long\"\n",
+		":\n",
+		"!key value\n",
+		"\tprintln \"\u00e9t\u00e9\"\n",
+	};
+
+	public static void main(String[] args) throws Exception
+	{
+		int failures = 0;
+		SimpleScriptDescriptor[][] descriptorSets = {
+			new SimpleScriptDescriptor[0],
+			new SimpleScriptDescriptor[]{new ControlDescriptor()}
+		};
+
+		byte[] testScript = readAll(ClassLoader.getSystemResourceAsStream("com/blackrook/script/test/testscript.txt"));
+		for (SimpleScriptDescriptor[] descriptors : descriptorSets)
+		{
+			if (!check("testscript.txt", testScript, descriptors))
+				failures++;
+			for (int i = 0; i < CASES.length; i++)
+				if (!check("case" + i, CASES[i].getBytes(UTF8), descriptors))
+					failures++;
+		}
+
+		System.out.println(((CASES.length + 1) * descriptorSets.length) + " reads, " + failures + " differed.");
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	/** Reads a script both ways and compares the results. */
+	private static boolean check(String name, byte[] data, SimpleScriptDescriptor[] descriptors)
+	{
+		String stream, bytes;
+		try {
+			stream = describe(SimpleScriptFactory.readScript(name, new ByteArrayInputStream(data), descriptors));
+		} catch (SimpleScriptParseException e) {
+			stream = "Error: " + e.getMessage();
+		} catch (Exception e) {
+			stream = "Exception: " + e;
+		}
+		try {
+			bytes = describe(SimpleScriptFactory.readScript(name, data, descriptors));
+		} catch (SimpleScriptParseException e) {
+			bytes = "Error: " + e.getMessage();
+		} catch (Exception e) {
+			bytes = "Exception: " + e;
+		}
+
+		if (stream.equals(bytes))
+			return true;
+		System.out.println(name + " (" + descriptors.length + " descriptors) differs.");
+		System.out.println("InputStream:\n" + stream);
+		System.out.println("Bytes:\n" + bytes);
+		return false;
+	}
+	
+	private static String describe(SimpleScript script)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < script.getCommandCount(); i++)
+		{
+			sb.append(script.getLineNumber(i)).append(' ').append(script.getCommandName(i));
+			int offset = script.getArgumentOffset(i);
+			for (int a = 0; a < script.getArgumentCount(i); a++)
+				sb.append(' ').append(script.getArgumentType(offset + a)).append(':').append(script.getArgumentValue(offset + a));
+			sb.append('\n');
+		}
+		Iterator<String> labels = script.getLabelNames();
+		while (labels.hasNext())
+		{
+			String label = labels.next();
+			sb.append(':').append(label).append(' ').append(script.getIndexByLabel(label)).append('\n');
+		}
+		String type = script.getMetaData("type");
+		if (type != null)
+			sb.append("!type ").append(type).append('\n');
+		return sb.toString();
+	}
+	
+	private static byte[] readAll(InputStream in) throws Exception
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = in.read(buffer)) > 0)
+			bos.write(buffer, 0, n);
+		in.close();
+		return bos.toByteArray();
+	}
+
+}
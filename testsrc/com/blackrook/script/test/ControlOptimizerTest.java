@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import com.blackrook.script.simple.SimpleScript;
+import com.blackrook.script.simple.SimpleScriptFactory;
+import com.blackrook.script.simple.control.CompiledControlInterpreter;
+import com.blackrook.script.simple.control.ControlDescriptor;
+import com.blackrook.script.simple.control.ControlInterpreter;
+import com.blackrook.script.simple.control.ControlOptimizer;
+
+/**
+ * Runs scripts before and after the ControlOptimizer, with the ControlInterpreter and the 
+ * CompiledControlInterpreter, and checks that they print the same output and end with the same variables.
+ */
+public class ControlOptimizerTest
+{
+	/** Scripts, and the variables to compare after each runs. */
+	private static final String[][] CASES = {
+		// inc + goless, fused.
+		{"\tset i 0\n:loop\n\tinc i\n\tgoless i 10 loop\n\tprintln i\n\tend\n", "i"},
+		// dec + gogtr, fused, with a float.
+		{"\tset j 20.5\n:down\n\tprintln j\n\tdec j\n\tgogtr j 15 down\n\tprintln \"done\"\n", "j"},
+		// literal comparisons, folded.
+		{"\tgoless 1 2 yes\n\tprintln \"no\"\n:yes\n\tprintln \"yes\"\n\tgoeq \"a\" \"b\" never\n\tprintln \"after\"\n:never\n\tgogtreq 3 3.0 last\n\tprintln \"skipped\"\n:last\n\tprintln \"last\"\n", ""},
+		// jump threading and dead code.
+		{"\tgoto a\n:a\n\tgoto b\n\tprintln \"dead\"\n:b\n\tset x 5\n\tgoto c\n\tset x 6\n:c\n\tprintln x\n\tgoto d\n:d\n\tend\n\tprintln \"dead\"\n", "x"},
+		// set + goto, fused, in a subroutine.
+		{"\tset n 0\n:top\n\tgosub sub\n\tgoless n 3 top\n\tprintln v\n\tend\n:sub\n\tinc n\n\tset v \"str\"\n\tgoto ret\n\tset v \"dead\"\n:ret\n\treturn\n", "n v"},
+		// a fused command that is jumped to in the middle is not fused.
+		{"\tset k 0\n\tgoto mid\n:again\n\tinc k\n:mid\n\tgoless k 4 again\n\tprintln k\n", "k"},
+		// mixed types and string comparisons.
+		{"\tset s \"b\"\n\tset t s\n\tgoneq s t bad\n\tgolesseq \"a\" s ok\n:bad\n\tprintln \"bad\"\n\tend\n:ok\n\tset u 7\n\tdec u\n\tprintln u\n\tprint \"no newline\"\n", "s t u"},
+		// nested loops.
+		{"\tset a 0\n\tset total 0\n:outer\n\tset b 0\n:inner\n\tinc total\n\tinc b\n\tgoless b 5 inner\n\tinc a\n\tgoless a 5 outer\n\tprintln total\n", "a b total"},
+	};
+
+	public static void main(String[] args) throws Exception
+	{
+		int failures = 0;
+		for (int c = 0; c < CASES.length; c++)
+		{
+			SimpleScript script = SimpleScriptFactory.readScript("case"+c, 
+				new ByteArrayInputStream(CASES[c][0].getBytes("UTF-8")), new ControlDescriptor());
+			SimpleScript optimized = ControlOptimizer.optimize(script);
+			String[] variables = CASES[c][1].length() > 0 ? CASES[c][1].split(" ") : new String[0];
+
+			String expected = run(new ControlInterpreter(script), variables);
+			String[] results = {
+				run(new ControlInterpreter(optimized), variables),
+				run(new CompiledControlInterpreter(optimized), variables),
+				run(new CompiledControlInterpreter(script), variables),
+			};
+			for (int r = 0; r < results.length; r++)
+			{
+				if (!expected.equals(results[r]))
+				{
+					System.out.println("case" + c + " run " + r + " differs.");
+					System.out.println("Expected:\n" + expected);
+					System.out.println("Got:\n" + results[r]);
+					failures++;
+				}
+			}
+			if (optimized.getCommandCount() > script.getCommandCount())
+			{
+				System.out.println("case" + c + " grew when optimized.");
+				failures++;
+			}
+		}
+
+		if (!contains(optimize(CASES[0][0]), "#incgoless") 
+				|| !contains(optimize(CASES[1][0]), "#decgogtr") 
+				|| !contains(optimize(CASES[4][0]), "#setgoto"))
+		{
+			System.out.println("Commands were not fused.");
+			failures++;
+		}
+		if (contains(optimize(CASES[5][0]), "#incgoless"))
+		{
+			System.out.println("A command that is jumped to was fused.");
+			failures++;
+		}
+
+		System.out.println(CASES.length + " scripts, " + failures + " failures.");
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	/** Runs an interpreter to the end, and returns its output and variables. */
+	private static String run(ControlInterpreter interpreter, String[] variables)
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(bos, true));
+		try {
+			interpreter.setRunawayLimit(100000);
+			interpreter.go();
+		} finally {
+			System.setOut(out);
+		}
+
+		StringBuilder sb = new StringBuilder(bos.toString());
+		sb.append('\n');
+		for (String v : variables)
+			sb.append(v).append('=').append(interpreter.getVariable(v)).append('\n');
+		return sb.toString();
+	}
+
+	private static SimpleScript optimize(String source) throws Exception
+	{
+		return ControlOptimizer.optimize(SimpleScriptFactory.readScript("source", 
+			new ByteArrayInputStream(source.getBytes("UTF-8")), new ControlDescriptor()));
+	}
+
+	private static boolean contains(SimpleScript script, String command)
+	{
+		for (int i = 0; i < script.getCommandCount(); i++)
+			if (script.getCommandName(i).equalsIgnoreCase(command))
+				return true;
+		return false;
+	}
+
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.test;
+
+import java.io.ByteArrayInputStream;
+
+import com.blackrook.script.simple.Command;
+import com.blackrook.script.simple.Command.Argument;
+import com.blackrook.script.simple.SimpleScript;
+import com.blackrook.script.simple.SimpleScriptFactory;
+import com.blackrook.script.simple.SimpleScriptHandlerInterpreter;
+import com.blackrook.script.simple.SimpleScriptHandlerRegistry;
+
+/**
+ * Runs scripts on a SimpleScriptHandlerInterpreter, and checks that scripts and registries 
+ * that are changed after they are bound run the right handlers.
+ */
+public class HandlerRegistryTest
+{
+	/** What the handlers ran. */
+	private static StringBuilder trace = new StringBuilder();
+	
+	public static void main(String[] args) throws Exception
+	{
+		SimpleScriptHandlerRegistry registry = new SimpleScriptHandlerRegistry();
+		registry.setHandler("foo", (interpreter, script, index) -> trace.append("foo "));
+		registry.setHandler("bar", (interpreter, script, index) -> trace.append("bar "));
+		
+		SimpleScript script = SimpleScriptFactory.readScript("test", 
+			new ByteArrayInputStream("\tfoo\n\tbar\n".getBytes("UTF-8")));
+		SimpleScriptHandlerInterpreter interpreter = new SimpleScriptHandlerInterpreter(registry, script);
+		
+		int failures = 0;
+		failures += check(interpreter, script, "foo bar ");
+		
+		// same command count, different command.
+		script.removeCommand(0, script.getCommand(0));
+		script.addCommand(0, new Command("bar", new Argument[0], "\tbar", 1));
+		failures += check(interpreter, script, "bar bar ");
+		failures += check(new SimpleScriptHandlerInterpreter(registry, script), script, "bar bar ");
+		
+		// more commands.
+		script.addCommand(new Command("foo", new Argument[0], "\tfoo", 3));
+		failures += check(interpreter, script, "bar bar foo ");
+		
+		// changed registry.
+		registry.setHandler("bar", (interpreter2, script2, index) -> trace.append("baz "));
+		failures += check(interpreter, script, "baz baz foo ");
+		
+		System.out.println(failures + " failures.");
+	}
+	
+	/** Runs a script from the start, and checks what the handlers ran. */
+	private static int check(SimpleScriptHandlerInterpreter interpreter, SimpleScript script, String expected)
+	{
+		trace.setLength(0);
+		interpreter.setScript(script);
+		interpreter.go();
+		if (!expected.equals(trace.toString()))
+		{
+			System.out.println("Expected \"" + expected + "\", got \"" + trace + "\".");
+			return 1;
+		}
+		return 0;
+	}
+
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.blackrook.script.simple.SimpleScript;
+import com.blackrook.script.simple.SimpleScriptFactory;
+import com.blackrook.script.simple.control.ControlDescriptor;
+
+/**
+ * Parses the test script from InputStreams on many threads at once, which 
+ * all share the same lexer kernel, and checks that every parse matches one done alone.
+ */
+public class ParseConcurrencyTest
+{
+	private static final int THREADS = 8;
+	private static final int PARSES = 200;
+
+	public static void main(String[] args) throws Exception
+	{
+		final byte[] data = readAll(ClassLoader.getSystemResourceAsStream("com/blackrook/script/test/testscript.txt"));
+		final String expected = describe(parse(data));
+		final AtomicInteger failures = new AtomicInteger(0);
+		
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++)
+		{
+			threads[t] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					try {
+						for (int i = 0; i < PARSES; i++)
+							if (!expected.equals(describe(parse(data))))
+								failures.incrementAndGet();
+					} catch (Exception e) {
+						e.printStackTrace();
+						failures.incrementAndGet();
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads)
+			t.join();
+
+		System.out.println((THREADS * PARSES) + " parses, " + failures.get() + " failed.");
+		if (failures.get() > 0)
+			System.exit(1);
+	}
+
+	private static SimpleScript parse(byte[] data) throws Exception
+	{
+		return SimpleScriptFactory.readScript("testscript.txt", new ByteArrayInputStream(data), new ControlDescriptor());
+	}
+	
+	private static String describe(SimpleScript script)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < script.getCommandCount(); i++)
+			sb.append(script.getLineNumber(i)).append(' ').append(script.getCommand(i)).append('\n');
+		Iterator<String> labels = script.getLabelNames();
+		while (labels.hasNext())
+		{
+			String label = labels.next();
+			sb.append(label).append(' ').append(script.getIndexByLabel(label)).append('\n');
+		}
+		return sb.toString();
+	}
+	
+	private static byte[] readAll(InputStream in) throws Exception
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = in.read(buffer)) > 0)
+			bos.write(buffer, 0, n);
+		in.close();
+		return bos.toByteArray();
+	}
+
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2014 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.script.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+import com.blackrook.script.simple.SimpleScript;
+import com.blackrook.script.simple.SimpleScriptDescriptor;
+import com.blackrook.script.simple.SimpleScriptFactory;
+import com.blackrook.script.simple.SimpleScriptImage;
+import com.blackrook.script.simple.control.ControlDescriptor;
+import com.blackrook.script.simple.control.ControlInterpreter;
+
+/**
+ * Writes scripts as binary scripts and script images, reads them back, and checks that 
+ * they have the same commands, arguments, labels, metadata and lines, and run the same.
+ */
+public class RoundTripTest
+{
+	private static final String EXTRA = 
+		"! type: control\n" +
+		"! version: 3\n" +
+		":start\n" +
+		"\tset i 0\n" +
+		"\tset f -2.5e2\n" +
+		"\tset h 0x10\n" +
+		"\tset s \"string \u00e9\"\n" +
+		":loop\n" +
+		"\tinc i\n" +
+		"\tgoless i 3 loop\n" +
+		"\tgosub show\n" +
+		"\tend\n" +
+		":show\n" +
+		"\tprintln i\n\tprintln f\n\tprintln h\n\tprintln s\n" +
+		"\treturn\n";
+
+	public static void main(String[] args) throws Exception
+	{
+		int failures = 0;
+		byte[] testScript = readAll(ClassLoader.getSystemResourceAsStream("com/blackrook/script/test/testscript.txt"));
+		byte[][] sources = {testScript, EXTRA.getBytes("UTF-8")};
+		SimpleScriptDescriptor[][] descriptorSets = {
+			new SimpleScriptDescriptor[0],
+			new SimpleScriptDescriptor[]{new ControlDescriptor()}
+		};
+
+		File file = File.createTempFile("roundtrip", ".img");
+		file.deleteOnExit();
+		for (int s = 0; s < sources.length; s++) for (SimpleScriptDescriptor[] descriptors : descriptorSets)
+		{
+			String name = "source" + s + " (" + descriptors.length + " descriptors)";
+			SimpleScript script = SimpleScriptFactory.readScript("source" + s, new ByteArrayInputStream(sources[s]), descriptors);
+			String expected = describe(script) + run(script);
+
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			SimpleScriptFactory.writeBinaryScript(bos, script);
+			SimpleScript binary = SimpleScriptFactory.readBinaryScript(new ByteArrayInputStream(bos.toByteArray()));
+			failures += compare(name + " binary", expected, describe(binary) + run(binary));
+
+			bos = new ByteArrayOutputStream();
+			SimpleScriptFactory.writeScriptImage(bos, script);
+			SimpleScriptImage image = new SimpleScriptImage(ByteBuffer.wrap(bos.toByteArray()));
+			failures += compare(name + " image", expected, describe(image) + run(image));
+
+			FileOutputStream fos = new FileOutputStream(file);
+			try {
+				SimpleScriptFactory.writeScriptImage(fos, binary);
+			} finally {
+				fos.close();
+			}
+			SimpleScriptImage mapped = SimpleScriptFactory.mapScriptImage(file);
+			failures += compare(name + " mapped image of binary", expected, describe(mapped) + run(mapped));
+
+			// verifying must work on images, whether their labels were linked or not.
+			try {
+				ControlInterpreter.verify(image);
+			} catch (Exception e) {
+				System.out.println(name + " image did not verify: " + e);
+				failures++;
+			}
+		}
+
+		System.out.println((sources.length * descriptorSets.length * 3) + " round trips, " + failures + " failures.");
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	private static int compare(String name, String expected, String result)
+	{
+		if (expected.equals(result))
+			return 0;
+		System.out.println(name + " differs.");
+		System.out.println("Expected:\n" + expected);
+		System.out.println("Got:\n" + result);
+		return 1;
+	}
+	
+	/** Runs a script to the end with a ControlInterpreter, and returns its output. */
+	private static String run(SimpleScript script)
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(bos, true));
+		try {
+			ControlInterpreter interpreter = new ControlInterpreter(script);
+			interpreter.setRunawayLimit(100000);
+			interpreter.go();
+		} finally {
+			System.setOut(out);
+		}
+		return bos.toString();
+	}
+	
+	private static String describe(SimpleScript script)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < script.getCommandCount(); i++)
+		{
+			sb.append(script.getLineNumber(i)).append(' ').append(script.getCommandName(i));
+			int offset = script.getArgumentOffset(i);
+			for (int a = 0; a < script.getArgumentCount(i); a++)
+			{
+				int p = offset + a;
+				sb.append(' ').append(script.getArgumentType(p)).append(':').append(script.getArgumentValue(p));
+				sb.append('/').append(script.getArgumentLong(p)).append('/').append(script.getArgumentDouble(p));
+				sb.append('/').append(script.getArgumentSlot(p)).append('/').append(script.getArgumentLabelIndex(p));
+			}
+			sb.append(" | ").append(script.getLine(i)).append('\n');
+		}
+		Iterator<String> labels = script.getLabelNames();
+		while (labels.hasNext())
+		{
+			String label = labels.next();
+			sb.append(':').append(label).append(' ').append(script.getIndexByLabel(label)).append('\n');
+		}
+		Iterator<String> keys = script.getMetaDataKeys();
+		while (keys.hasNext())
+		{
+			String key = keys.next();
+			sb.append('!').append(key).append(' ').append(script.getMetaData(key)).append('\n');
+		}
+		for (int i = 0; i < script.getIdentifierCount(); i++)
+			sb.append('$').append(script.getIdentifier(i)).append('\n');
+		return sb.toString();
+	}
+	
+	private static byte[] readAll(InputStream in) throws Exception
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = in.read(buffer)) > 0)
+			bos.write(buffer, 0, n);
+		in.close();
+		return bos.toByteArray();
+	}
+
+}